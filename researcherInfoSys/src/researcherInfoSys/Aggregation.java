@@ -0,0 +1,50 @@
+package researcherInfoSys;
+
+/**
+ * The ways of combining the similarities of a researcher to the members of a
+ * group into one indicator value, for
+ * {@link TopicModel#getGroupResult group recommendation}.
+ *
+ * @author james
+ */
+public enum Aggregation {
+
+    /**
+     * Similarity to the mean topic distribution of the members, scored like a
+     * single researcher whose interests are those of all members.
+     */
+    CENTROID("the group centroid"),
+    /**
+     * Similarity to the most similar member, favouring researchers close to
+     * anyone in the group.
+     */
+    MAX("the most similar member"),
+    /**
+     * Similarity to the least similar member, favouring researchers close to
+     * everyone in the group.
+     */
+    MIN("the least similar member");
+
+    /**
+     * The title to be displayed.
+     */
+    private final String title;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param title the title to be displayed
+     */
+    private Aggregation(String title) {
+        this.title = title;
+    }
+
+    /**
+     * Get the title to be displayed.
+     *
+     * @return the title
+     */
+    public String getTitle() {
+        return title;
+    }
+}
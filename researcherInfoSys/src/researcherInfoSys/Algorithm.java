@@ -0,0 +1,86 @@
+package researcherInfoSys;
+
+/**
+ * The recommendation algorithms supported by the system. Each algorithm knows
+ * the title and the indicator name used when displaying its result, and
+ * whether a smaller indicator value means a more similar researcher.
+ *
+ * @author james
+ */
+public enum Algorithm {
+
+    /**
+     * Similarity measured by predictive conditional probability in the
+     * {@link TopicModel topic model}.
+     */
+    PROBABILITY("predictive conditional probability", "Probability", false),
+    /**
+     * Similarity measured by KL divergence of topic distributions.
+     */
+    KL("KL divergence (asymmetric)", "KL value", true),
+    /**
+     * Similarity measured by Jensen-Shannon divergence of topic
+     * distributions.
+     */
+    JS("Jensen-Shannon divergence (symmetric)", "JS value", true),
+    /**
+     * Similarity measured by cosine similarity of topic distributions.
+     */
+    COSINE("cosine similarity", "Cos-similarity", false),
+    /**
+     * Researchers in the same cluster of the {@link KmeansModel K-means model}.
+     */
+    KMEANS("K-means clustering", "Cluster", false);
+
+    /**
+     * The algorithm title and the indicator title to be displayed.
+     */
+    private final String title, indicator;
+
+    /**
+     * It is <code>true</code> if smaller indicator values are better.
+     */
+    private final boolean ascend;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param title the algorithm title to be displayed
+     * @param indicator the indicator title to be displayed
+     * @param ascend is <code>true</code> if smaller indicator values are
+     * better
+     */
+    private Algorithm(String title, String indicator, boolean ascend) {
+        this.title = title;
+        this.indicator = indicator;
+        this.ascend = ascend;
+    }
+
+    /**
+     * Get the algorithm title to be displayed.
+     *
+     * @return the algorithm title
+     */
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * Get the indicator title to be displayed.
+     *
+     * @return the indicator title
+     */
+    public String getIndicator() {
+        return indicator;
+    }
+
+    /**
+     * Check whether the recommend list is arranged in the way that indicator
+     * values are ascending.
+     *
+     * @return <code>true</code> if smaller indicator values are better
+     */
+    public boolean isAscend() {
+        return ascend;
+    }
+}
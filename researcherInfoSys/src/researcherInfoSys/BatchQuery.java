@@ -0,0 +1,483 @@
+package researcherInfoSys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs recommendation queries read from a file without the command line menu.
+ * Each line of the query file holds a researcher name, an
+ * {@link Algorithm algorithm} and optionally the number of researchers to be
+ * recommended, separated by tabs. A fourth field
+ * <code>university=VALUE</code> or <code>department=VALUE</code> restricts the
+ * recommended researchers to one {@link Facets facet} value, for example:
+ * <pre>
+ * John Smith	cosine	10
+ * Jane Doe	kl
+ * Jane Doe	js	5	university=Stanford University
+ * </pre>
+ * Queries run in parallel against one shared model, while their results are
+ * streamed as TSV or JSON lines in the order of the query file. Lines which
+ * are blank or start with <code>#</code> are skipped.
+ *
+ * @author james
+ */
+public class BatchQuery {
+
+    /**
+     * The maximum number of queries submitted ahead of the one being written,
+     * per thread, which bounds the memory held by finished results.
+     */
+    private static final int WINDOW_PER_THREAD = 64;
+
+    /**
+     * A topic model instance shared by all queries.
+     */
+    private final TopicModel tm;
+
+    /**
+     * A K-means model instance shared by all queries, <code>null</code> if no
+     * query uses it.
+     */
+    private final KmeansModel km;
+
+    /**
+     * It is <code>true</code> if results are written as JSON lines instead of
+     * TSV.
+     */
+    private final boolean json;
+
+    /**
+     * The coordinator of shard workers answering topic model queries,
+     * <code>null</code> to scan the topic model in this process.
+     */
+    private ShardCoordinator coordinator = null;
+
+    /**
+     * Constructor with parameter, constructing a new <code>BatchQuery</code>
+     * instance with the models to be shared by all queries.
+     *
+     * @param tm the topic model
+     * @param km the K-means model, <code>null</code> if not needed
+     * @param json is <code>true</code> to write JSON lines instead of TSV
+     */
+    public BatchQuery(TopicModel tm, KmeansModel km, boolean json) {
+        this.tm = tm;
+        this.km = km;
+        this.json = json;
+    }
+
+    /**
+     * Answer topic model queries through shard workers instead of scanning
+     * the topic model in this process.
+     *
+     * @param coordinator the coordinator of the shard workers
+     */
+    public void setCoordinator(ShardCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    /**
+     * Build the models needed by a query file, run all its queries and report
+     * the throughput.
+     *
+     * @param queryFile the path of the query file
+     * @param outputFile the path of the result file, <code>null</code> or
+     * <code>-</code> for the standard output
+     * @param json is <code>true</code> to write JSON lines instead of TSV
+     * @param threads the number of queries run at the same time
+     */
+    public static void run(String queryFile, String outputFile, boolean json, int threads) {
+        ArrayList<Query> queries;
+        try {
+            queries = readQueries(queryFile);
+        } catch (IOException e) {
+            System.err.println("Failed loading query file - " + e.getMessage());
+            return;
+        }
+        boolean needKmeans = false;
+        for (Query q : queries) {
+            needKmeans |= q.algorithm == Algorithm.KMEANS;
+        }
+        TopicModel tm = TopicModel.load();
+        String matrixFile = Config.getString(Config.TOPIC_MATRIX_FILE, null);
+        KmeansModel km = null;
+        if (needKmeans) {
+            System.err.println("Clustering using K-Means algorithm......");
+            km = new KmeansModel(Config.getInt(Config.CLUSTERS_NUM, 100), tm.createArff("data/topicDistribution.arff"));
+            km.publish();
+        }
+        ShardCoordinator coordinator = null;
+        int shards = Config.getInt(Config.SHARDS, 1);
+        if (shards > 1) {
+            try {
+                System.err.println("Starting " + shards + " shard workers......");
+                coordinator = ShardCoordinator.launch(tm, matrixFile != null ? matrixFile : "data/topicMatrix.bin", shards, Config.getInt(Config.SHARD_BASE_PORT, 7700));
+            } catch (IOException e) {
+                System.err.println("Failed starting shard workers, scanning in process - " + e.getMessage());
+            }
+        }
+        boolean toStdout = outputFile == null || outputFile.equals("-");
+        // closing the writer must not close the standard output
+        OutputStream stdout = new FilterOutputStream(System.out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(toStdout ? stdout : new FileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+            long start = System.nanoTime();
+            BatchQuery batch = new BatchQuery(tm, km, json);
+            batch.setCoordinator(coordinator);
+            int lines = batch.execute(queries, out, threads);
+            double seconds = (System.nanoTime() - start) / 1E9;
+            System.err.format("Processed %d queries (%d result lines) in %.3fs, %.1f queries/s using %d threads\n",
+                    queries.size(), lines, seconds, queries.size() / seconds, threads);
+            System.err.println(RecommendCache.getStatistics());
+            if (coordinator != null) {
+                System.err.println(coordinator.getFallbacks() + " shards scanned locally after worker failures");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed writing results - " + e.getMessage());
+        } finally {
+            if (coordinator != null) {
+                coordinator.close();
+            }
+        }
+    }
+
+    /**
+     * Run queries in parallel and write their results in the order of the
+     * list. At most a bounded window of queries is in flight, so results are
+     * flushed while later queries are still running.
+     *
+     * @param queries the queries to be run
+     * @param out the writer receiving the results
+     * @param threads the number of queries run at the same time
+     * @return the number of lines written
+     * @throws IOException if writing fails
+     */
+    public int execute(ArrayList<Query> queries, Writer out, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ArrayDeque<Future<String>> window = new ArrayDeque<>();
+        int lines = 0, windowSize = threads * WINDOW_PER_THREAD;
+        try {
+            for (Query q : queries) {
+                window.add(pool.submit(() -> answer(q)));
+                if (window.size() >= windowSize) {
+                    lines += write(window.poll(), out);
+                }
+            }
+            while (!window.isEmpty()) {
+                lines += write(window.poll(), out);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        out.flush();
+        return lines;
+    }
+
+    /**
+     * Wait for a query and write its result.
+     *
+     * @param future the running query
+     * @param out the writer receiving the results
+     * @return the number of lines written
+     * @throws IOException if writing fails or the query was interrupted
+     */
+    private static int write(Future<String> future, Writer out) throws IOException {
+        String str;
+        try {
+            str = future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for query", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Query failed - " + e.getCause(), e.getCause());
+        }
+        out.write(str);
+        int lines = 0;
+        for (int i = 0; i < str.length(); i++) {
+            if (str.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Answer one query for every researcher with the queried name. A
+     * researcher the topic model was built without, such as one added by a
+     * {@link DeltaUpdate delta update} since, gets a
+     * <code>NOT_IN_MODEL</code> line instead of results, so one such query
+     * does not stop the batch.
+     *
+     * @param q the query
+     * @return the formatted result lines
+     */
+    private String answer(Query q) {
+        StringBuilder sb = new StringBuilder();
+        LinkedList<Researcher> researcherList = Researcher.getResearcherInfo(q.name);
+        if (researcherList == null) {
+            if (json) {
+                sb.append("{\"query\":").append(q.lineNum).append(",\"name\":").append(quote(q.name))
+                        .append(",\"algorithm\":\"").append(q.algorithm.name().toLowerCase()).append("\",\"found\":false}\n");
+            } else {
+                sb.append(q.lineNum).append('\t').append(clean(q.name)).append("\t\t").append(q.algorithm.name().toLowerCase()).append("\tNOT_FOUND\n");
+            }
+            return sb.toString();
+        }
+        for (Researcher r : researcherList) {
+            if (q.algorithm != Algorithm.KMEANS && tm.getRow(r) < 0) {
+                if (json) {
+                    sb.append("{\"query\":").append(q.lineNum).append(",\"name\":").append(quote(r.getName()))
+                            .append(",\"id\":").append(r.getId()).append(",\"algorithm\":\"").append(q.algorithm.name().toLowerCase())
+                            .append("\",\"found\":true,\"inModel\":false}\n");
+                } else {
+                    sb.append(q.lineNum).append('\t').append(clean(r.getName())).append('\t').append(r.getId()).append('\t')
+                            .append(q.algorithm.name().toLowerCase()).append("\tNOT_IN_MODEL\n");
+                }
+                continue;
+            }
+            RecommendResult result = q.algorithm == Algorithm.KMEANS ? km.getRecommendResult(r, q.k)
+                    : q.filter != null ? tm.getFilteredResult(r, q.algorithm, q.k, q.filter)
+                    : coordinator != null ? coordinator.getRecommendResult(r, q.algorithm, q.k) : tm.getRecommendResult(r, q.algorithm, q.k);
+            if (json) {
+                appendJson(sb, q, result);
+            } else {
+                appendTsv(sb, q, result);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append a result as TSV, one line per recommended researcher: query line
+     * number, owner name, owner id, algorithm, rank, name, university,
+     * department and indicator value.
+     *
+     * @param sb the buffer to be appended to
+     * @param q the query
+     * @param result the recommendation result
+     */
+    private static void appendTsv(StringBuilder sb, Query q, RecommendResult result) {
+        Researcher owner = result.getOwner();
+        for (int i = 0; i < result.size(); i++) {
+            Researcher r = result.getResearchers().get(i);
+            sb.append(q.lineNum).append('\t').append(clean(owner.getName())).append('\t').append(owner.getId()).append('\t')
+                    .append(q.algorithm.name().toLowerCase()).append('\t').append(i + 1).append('\t')
+                    .append(clean(r.getName())).append('\t').append(clean(r.getUniversity())).append('\t')
+                    .append(clean(r.getDepartment())).append('\t').append(result.getValues().get(i)).append('\n');
+        }
+    }
+
+    /**
+     * Append a result as one JSON line.
+     *
+     * @param sb the buffer to be appended to
+     * @param q the query
+     * @param result the recommendation result
+     */
+    private static void appendJson(StringBuilder sb, Query q, RecommendResult result) {
+        Researcher owner = result.getOwner();
+        sb.append("{\"query\":").append(q.lineNum).append(",\"name\":").append(quote(owner.getName()))
+                .append(",\"id\":").append(owner.getId()).append(",\"algorithm\":\"").append(q.algorithm.name().toLowerCase())
+                .append("\",\"found\":true,\"results\":[");
+        for (int i = 0; i < result.size(); i++) {
+            Researcher r = result.getResearchers().get(i);
+            double value = result.getValues().get(i);
+            sb.append(i == 0 ? "" : ",").append("{\"rank\":").append(i + 1).append(",\"name\":").append(quote(r.getName()))
+                    .append(",\"id\":").append(r.getId()).append(",\"university\":").append(quote(r.getUniversity()))
+                    .append(",\"department\":").append(quote(r.getDepartment()))
+                    .append(",\"value\":").append(Double.isFinite(value) ? String.valueOf(value) : "null").append('}');
+        }
+        sb.append("]}\n");
+    }
+
+    /**
+     * Quote and escape a String as a JSON String.
+     *
+     * @param str the String to be quoted
+     * @return the JSON String
+     */
+    private static String quote(String str) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (char c : str.toCharArray()) {
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * Replace tabs and line breaks which would break a TSV line.
+     *
+     * @param str the String to be cleaned
+     * @return the cleaned String
+     */
+    private static String clean(String str) {
+        return str.replaceAll("[\\t\\r\\n]", " ");
+    }
+
+    /**
+     * Read and validate all queries of a query file.
+     *
+     * @param queryFile the path of the query file
+     * @return the queries in file order
+     * @throws IOException if the file cannot be read
+     */
+    public static ArrayList<Query> readQueries(String queryFile) throws IOException {
+        ArrayList<Query> queries = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(queryFile), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNum = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNum++;
+                if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                try {
+                    Algorithm algorithm = fields.length > 1 ? Algorithm.valueOf(fields[1].trim().toUpperCase()) : Algorithm.COSINE;
+                    int k = fields.length > 2 ? Integer.parseInt(fields[2].trim()) : RecommendResult.DEFAULT_LEN;
+                    if (k <= 0) {
+                        throw new IllegalArgumentException("K must be positive");
+                    }
+                    int[] filter = fields.length > 3 ? parseFilter(fields[3]) : null;
+                    if (filter != null && algorithm == Algorithm.KMEANS) {
+                        throw new IllegalArgumentException("facet filters need a topic model algorithm");
+                    }
+                    queries.add(new Query(lineNum, fields[0], algorithm, k, filter));
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipped invalid query at line " + lineNum + " - " + e.getMessage());
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Parse a facet filter of a query.
+     *
+     * @param str the filter, <code>university=VALUE</code> or
+     * <code>department=VALUE</code>
+     * @return the ids of the researchers passing the filter
+     */
+    private static int[] parseFilter(String str) {
+        int eq = str.indexOf('=');
+        String facet = eq < 0 ? "" : str.substring(0, eq).trim().toLowerCase();
+        switch (facet) {
+            case "university":
+                return Facets.get().university.getPosting(str.substring(eq + 1));
+            case "department":
+                return Facets.get().department.getPosting(str.substring(eq + 1));
+            default:
+                throw new IllegalArgumentException("expected university=VALUE or department=VALUE - " + str);
+        }
+    }
+
+    /**
+     * A query read from the query file.
+     */
+    public static class Query {
+
+        /**
+         * The line number of the query in the query file.
+         */
+        private final int lineNum;
+
+        /**
+         * The researcher name.
+         */
+        private final String name;
+
+        /**
+         * The algorithm used for recommendation.
+         */
+        private final Algorithm algorithm;
+
+        /**
+         * The number of researchers to be recommended.
+         */
+        private final int k;
+
+        /**
+         * The ids of the researchers which may be recommended,
+         * <code>null</code> for all researchers.
+         */
+        private final int[] filter;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param lineNum the line number of the query
+         * @param name the researcher name
+         * @param algorithm the algorithm used for recommendation
+         * @param k the number of researchers to be recommended
+         */
+        public Query(int lineNum, String name, Algorithm algorithm, int k) {
+            this(lineNum, name, algorithm, k, null);
+        }
+
+        /**
+         * Constructor with parameter, restricting the researchers which may
+         * be recommended.
+         *
+         * @param lineNum the line number of the query
+         * @param name the researcher name
+         * @param algorithm the algorithm used for recommendation
+         * @param k the number of researchers to be recommended
+         * @param filter the sorted ids of the researchers which may be
+         * recommended, <code>null</code> for all researchers
+         */
+        public Query(int lineNum, String name, Algorithm algorithm, int k, int[] filter) {
+            this.lineNum = lineNum;
+            this.name = name;
+            this.algorithm = algorithm;
+            this.k = k;
+            this.filter = filter;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package researcherInfoSys;
+
+/**
+ * A limit on the time and the work spent on one recommendation query. A
+ * query given a budget scores candidates until the budget is exhausted and
+ * returns the best researchers found so far, with the
+ * {@link RecommendResult#getCoverage() coverage} of the candidates scored.
+ * The clock is read once every {@link Budget#CHECK_ROWS CHECK_ROWS} rows, so
+ * a query may overrun its deadline by the time of scoring that many rows.
+ *
+ * @author james
+ */
+public class Budget {
+
+    /**
+     * The number of rows scored between two readings of the clock.
+     */
+    public static final int CHECK_ROWS = 32;
+
+    /**
+     * A budget which is never exhausted.
+     */
+    public static final Budget UNLIMITED = new Budget(0, 0);
+
+    /**
+     * The time of the deadline in the units of {@link System#nanoTime()},
+     * meaningless if there is no deadline.
+     */
+    private final long deadline;
+
+    /**
+     * Whether the budget has a deadline.
+     */
+    private final boolean timed;
+
+    /**
+     * The maximum number of rows scored, 0 for no limit.
+     */
+    private final long maxRows;
+
+    /**
+     * Constructor with parameter, starting the clock of the deadline.
+     *
+     * @param nanos the time allowed from now in nanoseconds, 0 for no
+     * deadline
+     * @param maxRows the maximum number of rows scored, 0 for no limit
+     */
+    public Budget(long nanos, long maxRows) {
+        this.timed = nanos > 0;
+        this.deadline = System.nanoTime() + nanos;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * Create a budget with a deadline only.
+     *
+     * @param millis the time allowed from now in milliseconds
+     * @return the budget
+     */
+    public static Budget ofMillis(double millis) {
+        return new Budget((long) (millis * 1E6), 0);
+    }
+
+    /**
+     * Check whether the budget is exhausted after scoring a number of rows.
+     *
+     * @param rows the number of rows scored so far by the query
+     * @return <code>true</code> if the query must stop
+     */
+    public boolean isExhausted(long rows) {
+        if (maxRows > 0 && rows >= maxRows) {
+            return true;
+        }
+        return timed && rows % CHECK_ROWS == 0 && System.nanoTime() - deadline >= 0;
+    }
+}
@@ -0,0 +1,210 @@
+package researcherInfoSys;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * The saved state of a topic model build, so that a build interrupted by a
+ * crash or a cancellation resumes where it stopped instead of starting over.
+ * A checkpoint holds the {@link TopicEngine topic engine}, whose state
+ * includes the topic of every token and, for the
+ * {@link SparseLdaEngine built-in engine}, the state of the random numbers,
+ * and the number of iterations done.
+ * <p>
+ * Checkpoints are written to the <code>checkpointDir</code> directory of
+ * {@link Config the settings file}, disabled if it is absent, one file per
+ * build identified by the content of the mallet data file and the settings
+ * of the build, including the number of sampling threads, so builds of other
+ * data or settings never resume each other.
+ * A checkpoint is written at most every <code>checkpointSeconds</code>
+ * seconds, and never more often than needed to keep the time spent writing
+ * below 1/{@link Checkpoint#OVERHEAD_RATIO OVERHEAD_RATIO} of the build. The
+ * file is written under a temporary name and then renamed, so a crash while
+ * writing leaves the previous checkpoint in place.
+ *
+ * @author james
+ */
+public class Checkpoint {
+
+    /**
+     * The default time between two checkpoints in seconds.
+     */
+    public static final int DEFAULT_SECONDS = 60;
+
+    /**
+     * The minimum ratio between the time spent sampling and the time spent
+     * writing checkpoints.
+     */
+    public static final int OVERHEAD_RATIO = 20;
+
+    /**
+     * The checkpoint file.
+     */
+    private final File file;
+
+    /**
+     * The identity of the build, written into the file.
+     */
+    private final String key;
+
+    /**
+     * The minimum time between two checkpoints in nanoseconds.
+     */
+    private final long interval;
+
+    /**
+     * The time of the last checkpoint or of the start of the build, and the
+     * time spent writing the last checkpoint, in nanoseconds.
+     */
+    private long lastSave = System.nanoTime(), saveNanos = 0;
+
+    /**
+     * The number of iterations done by the engine read back, 0 if none.
+     */
+    private int iterations = 0;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param file the checkpoint file
+     * @param key the identity of the build
+     * @param interval the minimum time between two checkpoints in nanoseconds
+     */
+    private Checkpoint(File file, String key, long interval) {
+        this.file = file;
+        this.key = key;
+        this.interval = interval;
+    }
+
+    /**
+     * Get the checkpoint of a build with the directory and the interval of
+     * {@link Config the settings}.
+     *
+     * @param dataFile the path of the mallet data file
+     * @param settings the settings of the build affecting the model
+     * @return the checkpoint, or <code>null</code> if checkpoints are
+     * disabled or the data file cannot be read
+     */
+    public static Checkpoint of(String dataFile, String settings) {
+        String dir = Config.getString(Config.CHECKPOINT_DIR, null);
+        if (dir == null) {
+            return null;
+        }
+        String key;
+        try {
+            key = Long.toHexString(checksum(dataFile)) + "-" + settings;
+        } catch (IOException e) {
+            System.err.println("Checkpoints disabled - " + e.getMessage());
+            return null;
+        }
+        new File(dir).mkdirs();
+        return new Checkpoint(new File(dir, "topicModel-" + Integer.toHexString(key.hashCode()) + ".ckpt"), key,
+                Config.getInt(Config.CHECKPOINT_SECONDS, DEFAULT_SECONDS) * 1000000000L);
+    }
+
+    /**
+     * Calculate the CRC-32 of the content of a file, which tells whether a
+     * saved model was built from the same data.
+     *
+     * @param fileName the path of the file
+     * @return the checksum
+     * @throws IOException if the file cannot be read
+     */
+    static long checksum(String fileName) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = new FileInputStream(fileName)) {
+            byte[] buffer = new byte[65536];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Read the engine of the last checkpoint of the build, if any.
+     *
+     * @return the engine, or <code>null</code> if there is no usable
+     * checkpoint
+     */
+    public TopicEngine load() {
+        if (!file.exists()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (!in.readUTF().equals(key)) {
+                return null;
+            }
+            int done = in.readInt();
+            TopicEngine engine = (TopicEngine) in.readObject();
+            iterations = done;
+            return engine;
+        } catch (Exception e) {
+            System.err.println("Ignoring unreadable checkpoint " + file + " - " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the number of iterations done by the engine
+     * {@link Checkpoint#load() read back}.
+     *
+     * @return the number of iterations, 0 if none was read
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * Write a checkpoint if enough time has passed since the last one.
+     *
+     * @param engine the engine, between two iterations
+     * @param done the number of iterations done
+     */
+    public void update(TopicEngine engine, int done) {
+        long now = System.nanoTime();
+        if (now - lastSave >= Math.max(interval, saveNanos * OVERHEAD_RATIO)) {
+            save(engine, done);
+        }
+    }
+
+    /**
+     * Write a checkpoint now.
+     *
+     * @param engine the engine, between two iterations
+     * @param done the number of iterations done
+     */
+    public void save(TopicEngine engine, int done) {
+        long start = System.nanoTime();
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeUTF(key);
+                out.writeInt(done);
+                out.writeObject(engine);
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed writing checkpoint - " + e.getMessage());
+        }
+        lastSave = System.nanoTime();
+        saveNanos = lastSave - start;
+    }
+
+    /**
+     * Delete the checkpoint after the build has finished.
+     */
+    public void delete() {
+        file.delete();
+    }
+}
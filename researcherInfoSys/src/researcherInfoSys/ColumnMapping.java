@@ -0,0 +1,129 @@
+package researcherInfoSys;
+
+import java.util.HashMap;
+
+/**
+ * Maps each attribute of a researcher record to a column of a data file.
+ * A column is given either as a zero-based column number or as a column name,
+ * which is looked up in the header row of a CSV/TSV file or used as the key of
+ * a JSON-lines file. Mappings are read from {@link Config the settings file}
+ * under the keys <code>FORMAT.column.ATTRIBUTE</code>, for example
+ * <code>csv.column.name=2</code> or <code>jsonl.column.topics=topics</code>.
+ *
+ * @author james
+ */
+public class ColumnMapping {
+
+    /**
+     * Index of each attribute in a record.
+     */
+    public static final int NAME = 0, UNIVERSITY = 1, DEPARTMENT = 2, TOPICS = 3, SKILLS = 4;
+
+    /**
+     * Names of the attributes, used as setting keys and default JSON keys.
+     */
+    private static final String[] ATTRIBUTES = {"name", "university", "department", "topics", "skills"};
+
+    /**
+     * Default column numbers of the attributes, matching the layout of the
+     * Excel dataset.
+     */
+    private static final String[] DEFAULT_COLUMNS = {"2", "0", "1", "10", "11"};
+
+    /**
+     * The column of each attribute, as a column number or a column name.
+     */
+    private final String[] columns;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param columns the column of each attribute, in record order
+     */
+    public ColumnMapping(String... columns) {
+        if (columns.length != ATTRIBUTES.length) {
+            throw new IllegalArgumentException("Expected " + ATTRIBUTES.length + " columns, got " + columns.length);
+        }
+        this.columns = columns.clone();
+    }
+
+    /**
+     * Get the mapping of a file format from the settings, falling back to the
+     * column numbers of the Excel dataset, or to the attribute names for
+     * JSON-lines files.
+     *
+     * @param format the file format, such as <code>csv</code>,
+     * <code>tsv</code>, <code>jsonl</code> or <code>xlsx</code>
+     * @return the column mapping
+     */
+    public static ColumnMapping fromConfig(String format) {
+        String[] columns = new String[ATTRIBUTES.length];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Config.getString(format + ".column." + ATTRIBUTES[i], format.equals("jsonl") ? ATTRIBUTES[i] : DEFAULT_COLUMNS[i]);
+        }
+        return new ColumnMapping(columns);
+    }
+
+    /**
+     * Get the JSON key of each attribute.
+     *
+     * @return the keys, in record order
+     */
+    public String[] getKeys() {
+        return columns.clone();
+    }
+
+    /**
+     * Check whether any attribute is mapped by column name, which requires a
+     * header row.
+     *
+     * @return <code>true</code> if a header row is needed
+     */
+    public boolean needsHeader() {
+        for (String column : columns) {
+            if (!isNumber(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Resolve the column number of each attribute.
+     *
+     * @param header the header row, or <code>null</code> if there is none
+     * @return the column number of each attribute, in record order
+     * @throws IllegalArgumentException if a column name is not in the header
+     */
+    public int[] resolve(String[] header) {
+        HashMap<String, Integer> headerIndex = new HashMap<>();
+        if (header != null) {
+            for (int i = 0; i < header.length; i++) {
+                headerIndex.put(header[i].trim().toLowerCase(), i);
+            }
+        }
+        int[] indices = new int[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            if (isNumber(columns[i])) {
+                indices[i] = Integer.parseInt(columns[i]);
+            } else {
+                Integer index = headerIndex.get(columns[i].trim().toLowerCase());
+                if (index == null) {
+                    throw new IllegalArgumentException("Column \"" + columns[i] + "\" not found in header");
+                }
+                indices[i] = index;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Check whether a column is given as a column number.
+     *
+     * @param column the column
+     * @return <code>true</code> if it is a column number
+     */
+    private static boolean isNumber(String column) {
+        return column.matches("\\d+");
+    }
+}
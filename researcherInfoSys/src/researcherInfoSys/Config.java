@@ -0,0 +1,136 @@
+package researcherInfoSys;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * A utility class which keeps the tunable settings of the system in a
+ * properties file, so that values chosen in one run (for example by
+ * {@link ParameterSweep the parameter sweep}) are picked up by later runs.
+ *
+ * @author james
+ */
+public class Config {
+
+    /**
+     * The path of the properties file.
+     */
+    public static final String FILE = "data/config.properties";
+
+    /**
+     * Keys of the settings.
+     */
+    public static final String TOPICS_NUM = "topicsNum", CLUSTERS_NUM = "clustersNum", TOPIC_MATRIX_FILE = "topicMatrixFile",
+            DATA_FILE = "dataFile", SHARDS = "shards", SHARD_BASE_PORT = "shardBasePort",
+            INDEXED_TOPICS = "indexedTopics", PROBE_TOPICS = "probeTopics", SPARSE_TOPICS = "sparseTopics",
+            SCAN_THREADS = "scanThreads", MIN_INTEREST_FREQUENCY = "minInterestFrequency",
+            MAX_INTEREST_RATIO = "maxInterestRatio", WARM_UP = "warmUp", QUANTIZATION = "quantization",
+            RERANK_CANDIDATES = "rerankCandidates", TOPIC_ENGINE = "topicEngine",
+            CHECKPOINT_DIR = "checkpointDir", CHECKPOINT_SECONDS = "checkpointSeconds", DELTA_LOG = "deltaLog";
+
+    /**
+     * The settings loaded from the properties file, <code>null</code> before
+     * the first access.
+     */
+    private static Properties properties = null;
+
+    /**
+     * Get an integer setting.
+     *
+     * @param key the key of the setting
+     * @param defaultValue the value returned if the setting is missing or
+     * invalid
+     * @return the value of the setting
+     */
+    public static synchronized int getInt(String key, int defaultValue) {
+        String value = load().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid setting " + key + "=" + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a floating-point setting.
+     *
+     * @param key the key of the setting
+     * @param defaultValue the value returned if the setting is missing or
+     * invalid
+     * @return the value of the setting
+     */
+    public static synchronized double getDouble(String key, double defaultValue) {
+        String value = load().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid setting " + key + "=" + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get a String setting.
+     *
+     * @param key the key of the setting
+     * @param defaultValue the value returned if the setting is missing
+     * @return the value of the setting
+     */
+    public static synchronized String getString(String key, String defaultValue) {
+        String value = load().getProperty(key);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Set a setting. Call {@link Config#save() save} to persist it.
+     *
+     * @param key the key of the setting
+     * @param value the value of the setting
+     */
+    public static synchronized void set(String key, Object value) {
+        load().setProperty(key, String.valueOf(value));
+    }
+
+    /**
+     * Write all settings back to the properties file.
+     */
+    public static synchronized void save() {
+        try (OutputStream out = new FileOutputStream(FILE)) {
+            load().store(out, "researcherInfoSys settings");
+        } catch (IOException e) {
+            System.err.println("Failed saving settings - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Load the properties file on first access.
+     *
+     * @return the settings
+     */
+    private static Properties load() {
+        if (properties == null) {
+            properties = new Properties();
+            File file = new File(FILE);
+            if (file.exists()) {
+                try (InputStream in = new FileInputStream(file)) {
+                    properties.load(in);
+                } catch (IOException e) {
+                    System.err.println("Failed loading settings - " + e.getMessage());
+                }
+            }
+        }
+        return properties;
+    }
+}
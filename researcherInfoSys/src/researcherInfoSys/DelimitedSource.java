@@ -0,0 +1,175 @@
+package researcherInfoSys;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A {@link RecordSource record source} streaming a CSV or TSV file through a
+ * buffered NIO channel. The first row is the header. Fields may be quoted
+ * with <code>"</code>, in which case they can contain the delimiter, line
+ * breaks and doubled quotes. Malformed UTF-8 is replaced rather than failing
+ * the whole file.
+ *
+ * @author james
+ */
+public class DelimitedSource implements RecordSource {
+
+    /**
+     * The size of the character buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The reader decoding the file channel.
+     */
+    private final Reader reader;
+
+    /**
+     * The field delimiter, <code>,</code> for CSV and a tab for TSV.
+     */
+    private final char delimiter;
+
+    /**
+     * The column number of each attribute.
+     */
+    private final int[] indices;
+
+    /**
+     * The character buffer.
+     */
+    private final char[] buf = new char[BUFFER_SIZE];
+
+    /**
+     * The position of the next character and the number of characters in the
+     * buffer.
+     */
+    private int pos = 0, len = 0;
+
+    /**
+     * The row number of the last record, the header being row 0.
+     */
+    private int rowNum = 0;
+
+    /**
+     * Constructor with parameter, opening a delimited file and reading its
+     * header row.
+     *
+     * @param filePath the path of the file
+     * @param delimiter the field delimiter
+     * @param mapping the column mapping
+     * @throws IOException if the file cannot be read
+     */
+    public DelimitedSource(String filePath, char delimiter, ColumnMapping mapping) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        this.reader = Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE);
+        this.delimiter = delimiter;
+        ArrayList<String> header = readRow();
+        try {
+            this.indices = mapping.resolve(header == null ? null : header.toArray(new String[0]));
+        } catch (IllegalArgumentException e) {
+            reader.close();
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String[] next() throws IOException {
+        ArrayList<String> row;
+        do {
+            row = readRow();
+            if (row == null) {
+                return null;
+            }
+            rowNum++;
+        } while (row.size() == 1 && row.get(0).isEmpty());
+        String[] fields = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            fields[i] = indices[i] < row.size() ? row.get(indices[i]) : "";
+        }
+        return fields;
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Read the fields of the next row.
+     *
+     * @return the fields, or <code>null</code> at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private ArrayList<String> readRow() throws IOException {
+        int c = read();
+        if (c < 0) {
+            return null;
+        }
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false, wasQuoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IOException("Unterminated quoted field at row " + (rowNum + 1));
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        continue;
+                    }
+                } else {
+                    field.append((char) c);
+                }
+            } else if (c < 0 || c == '\n') {
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '\r') {
+                // line break handled at the following '\n', or ignored
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+                wasQuoted = false;
+            } else if (c == '"' && field.length() == 0 && !wasQuoted) {
+                quoted = wasQuoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Read the next character.
+     *
+     * @return the character, or -1 at the end of the file
+     * @throws IOException if the file cannot be read
+     */
+    private int read() throws IOException {
+        if (pos == len) {
+            len = reader.read(buf, 0, BUFFER_SIZE);
+            pos = 0;
+            if (len <= 0) {
+                len = 0;
+                return -1;
+            }
+        }
+        return buf[pos++];
+    }
+}
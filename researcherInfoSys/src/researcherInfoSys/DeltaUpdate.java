@@ -0,0 +1,200 @@
+package researcherInfoSys;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Applies a file of added, modified and removed researcher records to the
+ * {@link Researcher#repository repository of researcher} in place, so the
+ * cost of an update depends on the size of the delta rather than on the size
+ * of the dataset. Each line of a delta file holds an operation followed by
+ * the attributes of a record, separated by tabs:
+ * <pre>
+ * add	NAME	UNIVERSITY	DEPARTMENT	TOPICS	SKILLS
+ * modify	NAME	UNIVERSITY	DEPARTMENT	TOPICS	SKILLS
+ * remove	NAME	UNIVERSITY	DEPARTMENT
+ * </pre>
+ * Researchers are identified by name, university and department, as when the
+ * dataset is loaded. <code>add</code> merges into an existing researcher like
+ * a duplicated record does, <code>modify</code> replaces the interests of a
+ * researcher. The interest postings and the duplicated name statistics are
+ * updated, and the topic vectors of affected researchers are marked
+ * {@link Researcher#getStaleIds() stale} until the topic model is rebuilt.
+ * Lines which are blank or start with <code>#</code> are skipped.
+ * <p>
+ * A delta can be applied to a running system, from the command line menu,
+ * while queries are served. The {@link Facets facets} and the
+ * {@link InterestGraph interest graph} are updated for the researchers and
+ * interests the delta touches only, and only the cached results which can
+ * change are dropped from {@link RecommendCache the recommendation cache}.
+ * If the <code>deltaLog</code> setting of {@link Config the settings file} is
+ * present, applied lines are appended to that file, which is applied again
+ * after the data file is loaded, so updates survive a restart.
+ *
+ * @author james
+ */
+public class DeltaUpdate {
+
+    /**
+     * String for formatting the output.
+     */
+    private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
+
+    /**
+     * Apply a delta file, print a summary and record the applied lines in
+     * the delta log.
+     *
+     * @param filePath the path of the delta file
+     */
+    public static void apply(String filePath) {
+        apply(filePath, System.out, true);
+    }
+
+    /**
+     * Apply a delta file and print a summary. The repository and the
+     * structures derived from it are updated under the locks of the mallet
+     * data file, the facets and the interest graph, so no build of them sees
+     * a delta half applied.
+     *
+     * @param filePath the path of the delta file
+     * @param log the stream receiving the summary
+     * @param record is <code>true</code> to append the applied lines to the
+     * <code>deltaLog</code> of the settings
+     * @return the number of records applied
+     */
+    public static int apply(String filePath, PrintStream log, boolean record) {
+        log.println(S1 + "Applying delta \"" + filePath + "\"......");
+        Timer.start();
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(filePath), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed loading delta file - " + e.getMessage());
+            return 0;
+        }
+        int added = 0, modified = 0, removed = 0;
+        ArrayList<String> applied = new ArrayList<>();
+        LinkedHashSet<Researcher> changed = new LinkedHashSet<>();
+        HashSet<String> touched = new HashSet<>();
+        synchronized (Researcher.class) {
+            synchronized (Facets.class) {
+                synchronized (InterestGraph.class) {
+                    for (int lineNum = 1; lineNum <= lines.size(); lineNum++) {
+                        String line = lines.get(lineNum - 1);
+                        if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                            continue;
+                        }
+                        String[] fields = line.split("\t", -1);
+                        if (fields.length < 4) {
+                            System.err.println("Skipped line " + lineNum + " - expected at least 4 fields");
+                            continue;
+                        }
+                        String topics = fields.length > 4 ? fields[4] : "", skills = fields.length > 5 ? fields[5] : "";
+                        Researcher r;
+                        switch (fields[0].trim().toLowerCase()) {
+                            case "add":
+                                r = Researcher.find(fields[1], fields[2], fields[3]);
+                                touch(touched, r);
+                                r = Researcher.add(new Researcher(fields[1], fields[2], fields[3], Researcher.nextId()));
+                                r.addToInterests(topics);
+                                r.addToInterests(skills);
+                                Researcher.markStale(r.getId());
+                                added++;
+                                break;
+                            case "modify":
+                                r = Researcher.find(fields[1], fields[2], fields[3]);
+                                if (r == null) {
+                                    System.err.println("Skipped line " + lineNum + " - researcher not found");
+                                    continue;
+                                }
+                                touch(touched, r);
+                                r.replaceInterests(topics, skills);
+                                modified++;
+                                break;
+                            case "remove":
+                                r = Researcher.find(fields[1], fields[2], fields[3]);
+                                if (r == null) {
+                                    System.err.println("Skipped line " + lineNum + " - researcher not found");
+                                    continue;
+                                }
+                                touch(touched, r);
+                                Researcher.remove(r);
+                                removed++;
+                                break;
+                            default:
+                                System.err.println("Skipped line " + lineNum + " - unknown operation " + fields[0]);
+                                continue;
+                        }
+                        touch(touched, r);
+                        changed.add(r);
+                        applied.add(line);
+                    }
+                    HashSet<Integer> ids = new HashSet<>();
+                    for (Researcher r : changed) {
+                        ids.add(r.getId());
+                    }
+                    Facets.update(changed);
+                    InterestGraph.update(touched);
+                    RecommendCache.invalidate(ids);
+                }
+            }
+        }
+        if (record && !applied.isEmpty()) {
+            record(filePath, applied);
+        }
+        log.println(S2 + "Delta applied: " + added + " added, " + modified + " modified, " + removed + " removed. " + Timer.getTime());
+        log.println(S3 + Researcher.getStaleIds().size() + " topic vectors are stale until the topic model is rebuilt.");
+        return applied.size();
+    }
+
+    /**
+     * Add the interests of a researcher to the interests touched by a delta.
+     *
+     * @param touched the touched interests, in lower case
+     * @param r the researcher, or <code>null</code>
+     */
+    private static void touch(Set<String> touched, Researcher r) {
+        if (r != null) {
+            for (String interest : r.getInterests()) {
+                touched.add(interest.toLowerCase());
+            }
+        }
+    }
+
+    /**
+     * Append applied lines to the <code>deltaLog</code> of the settings, if
+     * present and other than the file applied.
+     *
+     * @param filePath the path of the delta file applied
+     * @param applied the lines applied
+     */
+    private static void record(String filePath, List<String> applied) {
+        String deltaLog = Config.getString(Config.DELTA_LOG, null);
+        if (deltaLog == null || new File(deltaLog).getAbsoluteFile().equals(new File(filePath).getAbsoluteFile())) {
+            return;
+        }
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(deltaLog, true), StandardCharsets.UTF_8)) {
+            for (String line : applied) {
+                out.write(line + "\n");
+            }
+        } catch (IOException e) {
+            System.err.println("Failed recording delta in " + deltaLog + " - " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package researcherInfoSys;
+
+import java.nio.DoubleBuffer;
+import java.util.stream.IntStream;
+
+/**
+ * Measures divergences between topic distributions of a
+ * {@link TopicMatrix topic matrix} using tables computed once per model: the
+ * base-2 logarithm of every probability and the entropy of every row. With
+ * these tables
+ * <ul>
+ * <li>KL divergence reduces to the negative entropy of the query minus a dot
+ * product, <code>KL(p||q) = sum(p log p) - sum(p log q)</code>, with no
+ * logarithm computed during the scan</li>
+ * <li>Jensen-Shannon divergence, which is symmetric and bounded by 1, only
+ * needs one logarithm per topic for the mixture,
+ * <code>JS(p,q) = H(m) - (H(p) + H(q)) / 2</code> where
+ * <code>m = (p + q) / 2</code></li>
+ * </ul>
+ * Zero probabilities are treated as <code>0 log 0 = 0</code>, and a zero in
+ * the second distribution of KL divergence is replaced by a tiny
+ * probability, so no divergence is ever infinite or NaN.
+ * <p>
+ * The tables of an on-heap matrix are computed onto the heap. Those of an
+ * off-heap matrix are read in place from its file, where
+ * {@link TopicMatrix#toOffHeap(java.lang.String, long) toOffHeap} saved them,
+ * so processes sharing the mapped matrix share its tables as well.
+ *
+ * @author james
+ */
+public class DivergenceEngine {
+
+    /**
+     * The smallest probability whose logarithm is taken.
+     */
+    private static final double MIN_PROB = 1E-300;
+
+    /**
+     * The reciprocal of ln 2, turning natural logarithms into base-2 ones.
+     */
+    private static final double INV_LN2 = 1 / Math.log(2);
+
+    /**
+     * The matrix the tables are computed for.
+     */
+    private final TopicMatrix matrix;
+
+    /**
+     * The number of topics of the matrix.
+     */
+    private final int topicsNum;
+
+    /**
+     * The base-2 logarithm of every probability of an on-heap matrix, in
+     * row-major order, <code>null</code> if the matrix is off-heap.
+     */
+    private final double[] logs;
+
+    /**
+     * The entropy of every row of an on-heap matrix, <code>null</code> if
+     * the matrix is off-heap.
+     */
+    private final double[] entropy;
+
+    /**
+     * The logarithms and the entropies of an off-heap matrix, mapped from its
+     * file, <code>null</code> if the matrix is on the heap.
+     */
+    private final DoubleBuffer logBuffer, entropyBuffer;
+
+    /**
+     * Constructor with parameter, computing the tables of an on-heap matrix,
+     * with rows processed in parallel, or reading those of an off-heap matrix
+     * from its file.
+     *
+     * @param matrix the topic matrix
+     */
+    public DivergenceEngine(TopicMatrix matrix) {
+        this.matrix = matrix;
+        this.topicsNum = matrix.getTopicsNum();
+        this.logBuffer = matrix.getLogTable();
+        this.entropyBuffer = matrix.getEntropyTable();
+        if (logBuffer != null) {
+            logs = null;
+            entropy = null;
+            return;
+        }
+        this.logs = new double[matrix.size() * topicsNum];
+        this.entropy = new double[matrix.size()];
+        IntStream.range(0, matrix.size()).parallel().forEach(row -> {
+            double h = 0;
+            for (int j = 0; j < topicsNum; j++) {
+                double q = matrix.get(row, j);
+                logs[row * topicsNum + j] = log2(q);
+                if (q > 0) {
+                    h -= q * logs[row * topicsNum + j];
+                }
+            }
+            entropy[row] = h;
+        });
+    }
+
+    /**
+     * Get the entropy of a row.
+     *
+     * @param row the row index
+     * @return the entropy in bits
+     */
+    public double getEntropy(int row) {
+        return entropy != null ? entropy[row] : entropyBuffer.get(row);
+    }
+
+    /**
+     * Calculate the entropy of an arbitrary distribution.
+     *
+     * @param p the distribution
+     * @return the entropy in bits
+     */
+    public static double calEntropy(double[] p) {
+        double h = 0;
+        for (double x : p) {
+            if (x > 0) {
+                h -= x * log2(x);
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Calculate the KL divergence of a row from a query distribution, that is
+     * <code>KL(p||q)</code> where <code>q</code> is the row.
+     *
+     * @param p the query distribution
+     * @param pEntropy the entropy of the query distribution
+     * @param row the row index
+     * @return the KL divergence in bits
+     */
+    public double calKL(double[] p, double pEntropy, int row) {
+        double cross = 0;
+        int offset = row * topicsNum;
+        if (logs != null) {
+            for (int j = 0; j < topicsNum; j++) {
+                cross += p[j] * logs[offset + j];
+            }
+        } else {
+            for (int j = 0; j < topicsNum; j++) {
+                cross += p[j] * logBuffer.get(offset + j);
+            }
+        }
+        return -pEntropy - cross;
+    }
+
+    /**
+     * Calculate the Jensen-Shannon divergence between a query distribution
+     * and a row.
+     *
+     * @param p the query distribution
+     * @param pEntropy the entropy of the query distribution
+     * @param row the row index
+     * @return the Jensen-Shannon divergence in bits, between 0 and 1
+     */
+    public double calJS(double[] p, double pEntropy, int row) {
+        double hm = 0;
+        for (int j = 0; j < topicsNum; j++) {
+            double m = (p[j] + matrix.get(row, j)) / 2;
+            if (m > 0) {
+                hm -= m * log2(m);
+            }
+        }
+        return Math.max(0, hm - (pEntropy + getEntropy(row)) / 2);
+    }
+
+    /**
+     * Calculate the base-2 logarithm of a probability.
+     *
+     * @param x the probability
+     * @return the logarithm, finite even if the probability is 0
+     */
+    static double log2(double x) {
+        return Math.log(Math.max(x, MIN_PROB)) * INV_LN2;
+    }
+}
@@ -0,0 +1,225 @@
+package researcherInfoSys;
+
+import cc.mallet.topics.ParallelTopicModel;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * Compares the quality and the cost of the recommendation algorithms offline.
+ * A fraction of the interests of every researcher is held out, and a topic
+ * model and a K-means model are built on the remaining interests. For a
+ * sample of researchers, every algorithm then recommends <code>K</code>
+ * researchers, and a recommended researcher counts as relevant if it has one
+ * of the held-out interests of the researcher queried. The report shows for
+ * each algorithm:
+ * <ul>
+ * <li>recall@K, the relevant researchers found out of the most that
+ * <code>K</code> researchers could hold</li>
+ * <li>nDCG@K with binary relevance, which also rewards relevant researchers
+ * ranked first</li>
+ * <li>the 50th and 99th percentile latency, the throughput of a single
+ * thread and the memory allocated per query</li>
+ * </ul>
+ * The algorithms run with the settings of {@link Config the settings file},
+ * such as candidate generation or sparse topic distributions, and candidate
+ * generation is also measured on its own. The published models and the
+ * mallet data file are left untouched.
+ *
+ * @author james
+ */
+public class EvaluationReport {
+
+    /**
+     * String for formatting the output.
+     */
+    private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
+
+    /**
+     * Default fraction of the interests of each researcher held out.
+     */
+    public static final double DEFAULT_HOLDOUT = 0.2;
+
+    /**
+     * The number of main topics probed by the candidate generation rows.
+     */
+    private static final int CANDIDATE_PROBE = 2;
+
+    /**
+     * Seed of the held-out split, so that runs are comparable.
+     */
+    private static final long SEED = 42;
+
+    /**
+     * The files holding the training data of the evaluation models.
+     */
+    private static final String DATA_FILE = "data/evaluationData.txt", ARFF_FILE = "data/evaluation.arff";
+
+    /**
+     * Topic model algorithms measured.
+     */
+    private static final Algorithm[] ALGORITHMS = {Algorithm.PROBABILITY, Algorithm.KL, Algorithm.JS, Algorithm.COSINE};
+
+    /**
+     * Build the evaluation models, run the measurement and print the report.
+     *
+     * @param samples the number of researchers queried, evenly spread over
+     * the researchers with held-out interests
+     * @param k the number of researchers recommended
+     * @param holdout the fraction of the interests of each researcher held
+     * out, at least one and leaving at least one
+     * @param iterations the number of Gibbs sampling iterations of the topic
+     * model
+     */
+    public static void run(int samples, int k, double holdout, int iterations) {
+        Map<Integer, Set<String>> heldOut = split(holdout);
+        System.out.println(S1 + "Building evaluation models on " + Math.round(100 * (1 - holdout)) + "% of the interests......");
+        Level level = ParallelTopicModel.logger.getLevel();
+        ParallelTopicModel.logger.setLevel(Level.WARNING);
+        TopicModel tm;
+        KmeansModel km;
+        long start = System.nanoTime();
+        try {
+            Researcher.createMalletData(DATA_FILE, heldOut);
+            tm = new TopicModel(DATA_FILE, heldOut, Config.getInt(Config.MIN_INTEREST_FREQUENCY, 1),
+                    Config.getDouble(Config.MAX_INTEREST_RATIO, 1.0), Config.getInt(Config.TOPICS_NUM, 30), iterations, 1, null);
+            km = new KmeansModel(Config.getInt(Config.CLUSTERS_NUM, 100), tm.createArff(ARFF_FILE), ARFF_FILE);
+        } finally {
+            ParallelTopicModel.logger.setLevel(level);
+            new File(DATA_FILE).delete();
+            new File(ARFF_FILE).delete();
+        }
+        ArrayList<Researcher> sample = new ArrayList<>();
+        HashMap<Researcher, int[]> relevant = new HashMap<>();
+        int[] ids = heldOut.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        int step = Math.max(1, ids.length / Math.max(1, samples));
+        for (int i = 0; i < ids.length && sample.size() < samples; i += step) {
+            Researcher r = Researcher.getResearcherById(ids[i]);
+            if (tm.getRow(r) < 0) {
+                continue;
+            }
+            int[] posting = new int[0];
+            for (String interest : heldOut.get(ids[i])) {
+                posting = InterestQuery.union(posting, Researcher.getPosting(interest));
+            }
+            posting = InterestQuery.difference(posting, new int[]{r.getId()});
+            if (posting.length > 0) {
+                sample.add(r);
+                relevant.put(r, posting);
+            }
+        }
+        if (sample.isEmpty()) {
+            System.out.println(S2 + "No researcher of the model shares a held-out interest with another one.");
+            return;
+        }
+        System.out.println(S2 + "Models built in " + String.format("%.3f", (System.nanoTime() - start) / 1E9) + "s, "
+                + heldOut.size() + " researchers with held-out interests, " + sample.size() + " queried, top " + k);
+        System.out.println(S3 + String.format("%-20s %10s %10s %10s %10s %12s %12s", "Algorithm", "Recall@" + k, "nDCG@" + k,
+                "p50(ms)", "p99(ms)", "Queries/s", "Alloc(KB)"));
+        for (Algorithm algorithm : ALGORITHMS) {
+            print(algorithm.name(), sample, relevant, k, r -> tm.getRecommendResult(r, algorithm, k + 1));
+        }
+        print(Algorithm.KMEANS.name(), sample, relevant, k, r -> km.getRecommendResult(r, k + 1));
+        for (Algorithm algorithm : ALGORITHMS) {
+            print(algorithm.name() + "/probe" + CANDIDATE_PROBE, sample, relevant, k,
+                    r -> tm.getCandidateResult(r, algorithm, k + 1, CANDIDATE_PROBE));
+        }
+    }
+
+    /**
+     * Choose the held-out interests of every researcher with at least two
+     * interests.
+     *
+     * @param holdout the fraction of the interests held out
+     * @return the held-out interests, in lower case, by researcher id
+     */
+    static Map<Integer, Set<String>> split(double holdout) {
+        Map<Integer, Set<String>> heldOut = new HashMap<>();
+        Random random = new Random(SEED);
+        for (int id : Researcher.getAllIds()) {
+            List<String> interests = new ArrayList<>(Researcher.getResearcherById(id).getInterests());
+            if (interests.size() < 2) {
+                continue;
+            }
+            Collections.shuffle(interests, random);
+            int n = Math.min(interests.size() - 1, Math.max(1, (int) Math.round(holdout * interests.size())));
+            Set<String> held = new HashSet<>();
+            for (String interest : interests.subList(0, n)) {
+                held.add(interest.toLowerCase());
+            }
+            heldOut.put(id, held);
+        }
+        return heldOut;
+    }
+
+    /**
+     * Measure one algorithm and print its row of the report.
+     *
+     * @param name the name of the row
+     * @param sample the researchers queried
+     * @param relevant the sorted ids of the relevant researchers of each
+     * researcher queried
+     * @param k the number of researchers recommended
+     * @param query the query, returning <code>k + 1</code> researchers as the
+     * researcher queried may be among them
+     */
+    private static void print(String name, ArrayList<Researcher> sample, HashMap<Researcher, int[]> relevant, int k,
+            Function<Researcher, RecommendResult> query) {
+        long[] nanos = new long[sample.size()];
+        long allocated = 0;
+        double recall = 0, ndcg = 0;
+        for (int i = 0; i < sample.size(); i++) {
+            Researcher r = sample.get(i);
+            long bytes = ParameterSweep.allocatedBytes(), start = System.nanoTime();
+            RecommendResult result = query.apply(r);
+            nanos[i] = System.nanoTime() - start;
+            allocated += ParameterSweep.allocatedBytes() - bytes;
+            int[] posting = relevant.get(r);
+            int rank = 0, found = 0;
+            double dcg = 0, idcg = 0;
+            for (Researcher other : result.getResearchers()) {
+                if (other.equals(r) || rank == k) {
+                    continue;
+                }
+                if (Arrays.binarySearch(posting, other.getId()) >= 0) {
+                    found++;
+                    dcg += 1 / DivergenceEngine.log2(rank + 2);
+                }
+                rank++;
+            }
+            for (int j = 0; j < Math.min(k, posting.length); j++) {
+                idcg += 1 / DivergenceEngine.log2(j + 2);
+            }
+            recall += (double) found / Math.min(k, posting.length);
+            ndcg += dcg / idcg;
+        }
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        Arrays.sort(nanos);
+        System.out.println(S3 + String.format("%-20s %10.4f %10.4f %10.3f %10.3f %12.1f %12.1f", name, recall / sample.size(),
+                ndcg / sample.size(), percentile(nanos, 0.5) / 1E6, percentile(nanos, 0.99) / 1E6,
+                sample.size() / Math.max(1E-9, total / 1E9), allocated / 1024.0 / sample.size()));
+    }
+
+    /**
+     * Get a percentile of sorted values, by the nearest rank.
+     *
+     * @param sorted the sorted values
+     * @param p the percentile, between 0 and 1
+     * @return the value at the percentile
+     */
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(p * sorted.length) - 1))];
+    }
+}
@@ -0,0 +1,408 @@
+package researcherInfoSys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Aggregates of the researcher repository by university and by department,
+ * computed once so that facet questions need no scan. Each facet is
+ * dictionary-encoded: every distinct value gets a code, every researcher id
+ * maps to the code of its value, and every code has the sorted posting of
+ * its researcher ids, its researcher count and its most common interests.
+ * Values are matched ignoring case and repeated blanks, like names and
+ * interests.
+ * <p>
+ * The aggregates are an immutable snapshot of the repository, built in
+ * parallel on first use or by the {@link WarmUp warm-up}. After a
+ * {@link DeltaUpdate delta update} the snapshot is
+ * {@link Facets#update(java.util.Collection) updated}: only the values of
+ * the researchers the delta added, modified or removed get their postings,
+ * counts and interests recomputed, the others are shared with the previous
+ * snapshot.
+ *
+ * @author james
+ */
+public class Facets {
+
+    /**
+     * The number of most common interests kept for each facet value.
+     */
+    public static final int TOP_INTERESTS = 10;
+
+    /**
+     * The current snapshot, <code>null</code> before the first build.
+     */
+    private static volatile Facets current = null;
+
+    /**
+     * The university facet.
+     */
+    public final Facet university;
+
+    /**
+     * The department facet.
+     */
+    public final Facet department;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param university the university facet
+     * @param department the department facet
+     */
+    private Facets(Facet university, Facet department) {
+        this.university = university;
+        this.department = department;
+    }
+
+    /**
+     * Get the current snapshot, building it if the repository has not been
+     * aggregated yet. Callers arriving during a build wait for it.
+     *
+     * @return the aggregates
+     */
+    public static Facets get() {
+        Facets facets = current;
+        if (facets == null) {
+            synchronized (Facets.class) {
+                facets = current != null ? current : build();
+            }
+        }
+        return facets;
+    }
+
+    /**
+     * Drop the current snapshot after the repository has changed, so that the
+     * next use rebuilds it.
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Publish a snapshot updated for the researchers a
+     * {@link DeltaUpdate delta update} has added, modified or removed, if a
+     * snapshot has been built. The cost depends on the number of researchers
+     * with the values of those researchers, not on the size of the
+     * repository.
+     *
+     * @param changed the researchers added, modified or removed
+     */
+    public static synchronized void update(Collection<Researcher> changed) {
+        if (current != null && !changed.isEmpty()) {
+            current = new Facets(new Facet(current.university, changed, true), new Facet(current.department, changed, false));
+        }
+    }
+
+    /**
+     * Aggregate the researcher repository and publish the result as the
+     * current snapshot. Both facets, and the interests of all values of a
+     * facet, are aggregated in parallel. The repository must not change
+     * during the build.
+     *
+     * @return the aggregates
+     */
+    public static synchronized Facets build() {
+        int[] ids = Researcher.getAllIds();
+        Researcher[] researchers = new Researcher[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            researchers[i] = Researcher.getResearcherById(ids[i]);
+        }
+        Facet[] facets = Stream.of(true, false).parallel()
+                .map(byUniversity -> new Facet(researchers, byUniversity))
+                .toArray(Facet[]::new);
+        current = new Facets(facets[0], facets[1]);
+        return current;
+    }
+
+    /**
+     * Normalize a facet value for matching.
+     *
+     * @param value the facet value
+     * @return the value in lower case without repeated blanks
+     */
+    private static String normalize(String value) {
+        return value.trim().replaceAll(" +", " ").toLowerCase();
+    }
+
+    /**
+     * The aggregates of one facet, that is of university or of department.
+     */
+    public static class Facet {
+
+        /**
+         * The values of the facet, indexed by code, as first seen.
+         */
+        private final String[] values;
+
+        /**
+         * Map between the normalized value and its code.
+         */
+        private final HashMap<String, Integer> codes;
+
+        /**
+         * The code of each researcher id, -1 for ids not in the repository.
+         */
+        private final int[] codeById;
+
+        /**
+         * The sorted researcher ids of each code.
+         */
+        private final int[][] postings;
+
+        /**
+         * The most common interests of each code with their researcher
+         * counts, most common first.
+         */
+        private final String[][] topInterests;
+        private final int[][] topCounts;
+
+        /**
+         * The codes ordered by researcher count, largest first.
+         */
+        private final Integer[] byCount;
+
+        /**
+         * Constructor with parameter, aggregating researchers by one facet.
+         *
+         * @param researchers the researchers in id order
+         * @param byUniversity is <code>true</code> to aggregate by university,
+         * <code>false</code> by department
+         */
+        Facet(Researcher[] researchers, boolean byUniversity) {
+            codes = new HashMap<>();
+            ArrayList<String> valueList = new ArrayList<>();
+            int maxId = researchers.length == 0 ? 0 : researchers[researchers.length - 1].getId();
+            codeById = new int[maxId + 1];
+            Arrays.fill(codeById, -1);
+            int[] sizes = new int[researchers.length];
+            for (Researcher r : researchers) {
+                String value = byUniversity ? r.getUniversity() : r.getDepartment();
+                Integer code = codes.get(normalize(value));
+                if (code == null) {
+                    code = valueList.size();
+                    codes.put(normalize(value), code);
+                    valueList.add(value);
+                }
+                codeById[r.getId()] = code;
+                sizes[code]++;
+            }
+            values = valueList.toArray(new String[0]);
+            postings = new int[values.length][];
+            for (int code = 0; code < values.length; code++) {
+                postings[code] = new int[sizes[code]];
+                sizes[code] = 0;
+            }
+            for (Researcher r : researchers) {
+                int code = codeById[r.getId()];
+                postings[code][sizes[code]++] = r.getId();
+            }
+            topInterests = new String[values.length][];
+            topCounts = new int[values.length][];
+            IntStream.range(0, values.length).parallel().forEach(this::countInterests);
+            byCount = sortByCount();
+        }
+
+        /**
+         * Constructor with parameter, updating the aggregates of a facet after
+         * some researchers have been added, modified or removed. A value no
+         * researcher has any more keeps its code, with an empty posting.
+         *
+         * @param facet the previous aggregates
+         * @param changed the researchers added, modified or removed
+         * @param byUniversity is <code>true</code> to aggregate by university,
+         * <code>false</code> by department
+         */
+        Facet(Facet facet, Collection<Researcher> changed, boolean byUniversity) {
+            codes = new HashMap<>(facet.codes);
+            ArrayList<String> valueList = new ArrayList<>(Arrays.asList(facet.values));
+            int maxId = facet.codeById.length - 1;
+            for (Researcher r : changed) {
+                maxId = Math.max(maxId, r.getId());
+            }
+            codeById = Arrays.copyOf(facet.codeById, maxId + 1);
+            Arrays.fill(codeById, facet.codeById.length, codeById.length, -1);
+            TreeSet<Integer> touched = new TreeSet<>();
+            for (Researcher r : changed) {
+                int oldCode = facet.getCodeById(r.getId());
+                if (oldCode >= 0) {
+                    touched.add(oldCode);
+                }
+                if (r.isRemoved()) {
+                    codeById[r.getId()] = -1;
+                    continue;
+                }
+                String value = byUniversity ? r.getUniversity() : r.getDepartment();
+                Integer code = codes.get(normalize(value));
+                if (code == null) {
+                    code = valueList.size();
+                    codes.put(normalize(value), code);
+                    valueList.add(value);
+                }
+                codeById[r.getId()] = code;
+                touched.add(code);
+            }
+            values = valueList.toArray(new String[0]);
+            postings = Arrays.copyOf(facet.postings, values.length);
+            topInterests = Arrays.copyOf(facet.topInterests, values.length);
+            topCounts = Arrays.copyOf(facet.topCounts, values.length);
+            for (int code : touched) {
+                TreeSet<Integer> posting = new TreeSet<>();
+                if (postings[code] != null) {
+                    for (int id : postings[code]) {
+                        posting.add(id);
+                    }
+                }
+                for (Researcher r : changed) {
+                    if (codeById[r.getId()] == code) {
+                        posting.add(r.getId());
+                    } else {
+                        posting.remove(r.getId());
+                    }
+                }
+                postings[code] = new int[posting.size()];
+                int i = 0;
+                for (int id : posting) {
+                    postings[code][i++] = id;
+                }
+                countInterests(code);
+            }
+            byCount = sortByCount();
+        }
+
+        /**
+         * Count the interests of the researchers with a value and keep the
+         * most common ones.
+         *
+         * @param code the code of the value
+         */
+        private void countInterests(int code) {
+            HashMap<String, Integer> counts = new HashMap<>();
+            for (int id : postings[code]) {
+                // interests differing only in case are counted once per researcher
+                HashSet<String> held = new HashSet<>();
+                for (String interest : Researcher.getResearcherById(id).getInterests()) {
+                    held.add(interest.toLowerCase());
+                }
+                for (String interest : held) {
+                    counts.merge(interest, 1, Integer::sum);
+                }
+            }
+            ArrayList<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort((a, b) -> !a.getValue().equals(b.getValue()) ? Integer.compare(b.getValue(), a.getValue()) : a.getKey().compareTo(b.getKey()));
+            int n = Math.min(TOP_INTERESTS, entries.size());
+            topInterests[code] = new String[n];
+            topCounts[code] = new int[n];
+            for (int i = 0; i < n; i++) {
+                topInterests[code][i] = entries.get(i).getKey();
+                topCounts[code][i] = entries.get(i).getValue();
+            }
+        }
+
+        /**
+         * Order the codes by researcher count.
+         *
+         * @return the codes, largest first
+         */
+        private Integer[] sortByCount() {
+            Integer[] order = new Integer[values.length];
+            for (int code = 0; code < values.length; code++) {
+                order[code] = code;
+            }
+            Arrays.sort(order, (a, b) -> postings[a].length != postings[b].length ? Integer.compare(postings[b].length, postings[a].length) : Integer.compare(a, b));
+            return order;
+        }
+
+        /**
+         * Get the number of distinct values of the facet.
+         *
+         * @return the number of values
+         */
+        public int size() {
+            return values.length;
+        }
+
+        /**
+         * Get the code of a value.
+         *
+         * @param value the facet value
+         * @return the code, or -1 if no researcher has the value
+         */
+        public int getCode(String value) {
+            Integer code = codes.get(normalize(value));
+            return code == null ? -1 : code;
+        }
+
+        /**
+         * Get the value of a researcher, as a code.
+         *
+         * @param id the researcher id
+         * @return the code, or -1 if the researcher was not aggregated
+         */
+        public int getCodeById(int id) {
+            return id >= 0 && id < codeById.length ? codeById[id] : -1;
+        }
+
+        /**
+         * Get the number of researchers with a value.
+         *
+         * @param value the facet value
+         * @return the number of researchers
+         */
+        public int getCount(String value) {
+            return getPosting(value).length;
+        }
+
+        /**
+         * Get the ids of the researchers with a value.
+         *
+         * @param value the facet value
+         * @return the sorted researcher ids, an empty array if nobody has the
+         * value
+         */
+        public int[] getPosting(String value) {
+            int code = getCode(value);
+            return code < 0 ? new int[0] : postings[code];
+        }
+
+        /**
+         * Get the most common interests of the researchers with a value.
+         *
+         * @param value the facet value
+         * @return the interests mapped to their researcher counts, most common
+         * first
+         */
+        public LinkedHashMap<String, Integer> getTopInterests(String value) {
+            LinkedHashMap<String, Integer> top = new LinkedHashMap<>();
+            int code = getCode(value);
+            if (code >= 0) {
+                for (int i = 0; i < topInterests[code].length; i++) {
+                    top.put(topInterests[code][i], topCounts[code][i]);
+                }
+            }
+            return top;
+        }
+
+        /**
+         * Get the values with the most researchers.
+         *
+         * @param n the number of values
+         * @return the values mapped to their researcher counts, largest first
+         */
+        public LinkedHashMap<String, Integer> getTopValues(int n) {
+            LinkedHashMap<String, Integer> top = new LinkedHashMap<>();
+            for (int i = 0; i < byCount.length && i < n; i++) {
+                top.put(values[byCount[i]], postings[byCount[i]].length);
+            }
+            return top;
+        }
+    }
+}
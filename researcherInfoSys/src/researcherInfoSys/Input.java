@@ -1,17 +1,11 @@
 package researcherInfoSys;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.Scanner;
-import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
-import org.apache.poi.openxml4j.opc.OPCPackage;
-import org.apache.poi.ss.usermodel.DataFormatter;
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
- * A utility class with several static methods to load Excel file and get user
+ * A utility class with several static methods to load data files and get user
  * input.
  *
  * @author james
@@ -23,60 +17,74 @@ public class Input {
      */
     private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
 
-    /**
-     * Constants which store the column number of each required attribute in the
-     * Excel file.
-     */
-    private static final int NAME_COL = 2, UNIVERSITY_COL = 0, DEPARTMENT_COL = 1, TOPIC_COL = 10, SKILL_COL = 11;
-
-    /**
-     * Missing policy parameter used when reading Excel file.
-     */
-    private static final Row.MissingCellPolicy MP = Row.MissingCellPolicy.RETURN_BLANK_AS_NULL;
-
     /**
      * Scanner for keyboard input.
      */
     private static final Scanner KB = new Scanner(System.in);
 
     /**
-     * Read data from a specified Excel file and store into
+     * Read data from a specified file and store into
      * {@link Researcher#repository repository of researcher} after processing.
+     * The format is chosen by the file extension: <code>.csv</code>,
+     * <code>.tsv</code>, <code>.jsonl</code>/<code>.json</code>, or an Excel
+     * file otherwise. Column positions come from
+     * {@link ColumnMapping#fromConfig(java.lang.String) the settings}.
      *
-     * @param filePath the path of the Excel file needed to be loaded
+     * @param filePath the path of the file needed to be loaded
      */
     public static void readFile(String filePath) {
-        System.out.println(S1 + "Loading file \"" + filePath + "\" into memory......");
+        readFile(filePath, System.out);
+    }
+
+    /**
+     * Read data from a specified file like
+     * {@link Input#readFile(java.lang.String) readFile}, printing the
+     * progress and the warnings to a specified stream, such as the standard
+     * error when the standard output carries results.
+     *
+     * @param filePath the path of the file needed to be loaded
+     * @param log the stream receiving the progress messages
+     */
+    public static void readFile(String filePath, PrintStream log) {
+        log.println(S1 + "Loading file \"" + filePath + "\" into memory......");
         Timer.start();
-        DataFormatter formatter = new DataFormatter();
-        try {
-            OPCPackage pkg = OPCPackage.open(new File(filePath));
-            Sheet sheet = new XSSFWorkbook(pkg).getSheetAt(0);
-            pkg.close();
-            System.out.println(S2 + "File loaded. " + Timer.getTime());
-            System.out.println(S1 + "Processing and building up repository......");
+        String lower = filePath.toLowerCase();
+        try (RecordSource source = lower.endsWith(".csv") ? new DelimitedSource(filePath, ',', ColumnMapping.fromConfig("csv"))
+                : lower.endsWith(".tsv") ? new DelimitedSource(filePath, '\t', ColumnMapping.fromConfig("tsv"))
+                : lower.endsWith(".jsonl") || lower.endsWith(".json") ? new JsonLinesSource(filePath, ColumnMapping.fromConfig("jsonl"))
+                : new XlsxSource(filePath, ColumnMapping.fromConfig("xlsx"))) {
+            log.println(S2 + "File opened. " + Timer.getTime());
+            log.println(S1 + "Processing and building up repository......");
             Timer.start();
-            for (int rowNum = 1; rowNum <= sheet.getLastRowNum(); rowNum++) {
-                Row row = sheet.getRow(rowNum);
-                String name = formatter.formatCellValue(row.getCell(NAME_COL, MP));
-                String university = formatter.formatCellValue(row.getCell(UNIVERSITY_COL, MP));
-                String department = formatter.formatCellValue(row.getCell(DEPARTMENT_COL, MP));
-                String topics = formatter.formatCellValue(row.getCell(TOPIC_COL, MP));
-                String skills = formatter.formatCellValue(row.getCell(SKILL_COL, MP));
-                Researcher newResearcher = new Researcher(name, university, department, row.getRowNum());
-                Researcher r = Researcher.add(newResearcher);
-                r.addToInterests(topics);
-                r.addToInterests(skills);
-            }
-        } catch (InvalidFormatException e) {
-            System.err.println("Invalid file format - " + e.getMessage());
+            load(source);
         } catch (IOException e) {
-            System.err.println("File not found - " + e.getMessage());
+            System.err.println("Failed loading file - " + e.getMessage());
         } catch (Exception e) {
             System.err.println(e.getMessage());
         }
-        System.out.println(S2 + "Repository built. " + Timer.getTime());
-        System.out.println(Researcher.getWarningInfo());
+        log.println(S2 + "Repository built. " + Timer.getTime());
+        log.println(Researcher.getWarningInfo());
+    }
+
+    /**
+     * Read all records of a source and store them into
+     * {@link Researcher#repository repository of researcher}.
+     *
+     * @param source the source of records
+     * @return the number of records read
+     * @throws IOException if the source cannot be read
+     */
+    public static int load(RecordSource source) throws IOException {
+        int num = 0;
+        String[] fields;
+        while ((fields = source.next()) != null) {
+            Researcher newResearcher = new Researcher(fields[ColumnMapping.NAME], fields[ColumnMapping.UNIVERSITY], fields[ColumnMapping.DEPARTMENT], source.getRowNum());
+            Researcher r = Researcher.add(newResearcher);
+            r.addToInterests(fields[ColumnMapping.TOPICS]);
+            r.addToInterests(fields[ColumnMapping.SKILLS]);
+            num++;
+        }
+        return num;
     }
 
     /**
@@ -0,0 +1,386 @@
+package researcherInfoSys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * A weighted graph of interests, where two interests are linked if at least
+ * one researcher has both. Each link is weighted by the pointwise mutual
+ * information of the two interests over the researchers,
+ * <code>PMI(a, b) = ln(N * n(a, b) / (n(a) * n(b)))</code>, which is high when
+ * the interests occur together more often than chance.
+ * <p>
+ * The graph is built once from the interest postings, one interest per task
+ * in parallel, and stored as one row of links per interest. Links are sorted
+ * by PMI within each row, those whose pair occurs at least
+ * {@link InterestGraph#MIN_COOCCUR MIN_COOCCUR} times first, so the related
+ * interests of an interest are the head of its row and need no work at query
+ * time. PMI overrates pairs seen only once, which are therefore ranked last.
+ * Rows store <code>ln(n(a, b) / (n(a) * n(b)))</code> and
+ * <code>ln N</code> is added when a link is read, since it shifts every link
+ * alike and leaves the order of the rows unchanged.
+ * <p>
+ * The graph is a snapshot of the repository, built on first use. After a
+ * {@link DeltaUpdate delta update} the snapshot is
+ * {@link InterestGraph#update(java.util.Set) updated}: the rows of the
+ * interests the delta touched are rebuilt from their postings, the rows
+ * linked to them only get the weights of those links recomputed, and every
+ * other row is shared with the previous snapshot.
+ *
+ * @author james
+ */
+public class InterestGraph {
+
+    /**
+     * The number of related interests added to an interest by query
+     * expansion.
+     */
+    public static final int DEFAULT_EXPANSION = 5;
+
+    /**
+     * The number of researchers a pair of interests needs to be ranked among
+     * the related interests by PMI.
+     */
+    public static final int MIN_COOCCUR = 2;
+
+    /**
+     * The current snapshot, <code>null</code> before the first build.
+     */
+    private static volatile InterestGraph current = null;
+
+    /**
+     * The interest of each node, in lower case.
+     */
+    private final String[] interests;
+
+    /**
+     * Map between the interest and its node.
+     */
+    private final HashMap<String, Integer> nodes;
+
+    /**
+     * The number of researchers with the interest of each node.
+     */
+    private final int[] frequency;
+
+    /**
+     * The number of links of each node which occur at least
+     * {@link InterestGraph#MIN_COOCCUR MIN_COOCCUR} times.
+     */
+    private final int[] ranked;
+
+    /**
+     * The target nodes, the number of researchers sharing both interests and
+     * the PMI without <code>ln N</code> of the links of each node.
+     */
+    private final int[][] targets, counts;
+    private final double[][] weights;
+
+    /**
+     * The natural logarithm of the number of researchers.
+     */
+    private final double logResearcherNum;
+
+    /**
+     * The number of links of the graph.
+     */
+    private final int linkNum;
+
+    /**
+     * Constructor with parameter, building the graph of the current
+     * repository.
+     *
+     * @param interests the sorted interests of the repository
+     * @param postings the researcher ids of each interest
+     */
+    private InterestGraph(String[] interests, int[][] postings) {
+        this.interests = interests;
+        nodes = new HashMap<>();
+        frequency = new int[interests.length];
+        for (int i = 0; i < interests.length; i++) {
+            nodes.put(interests[i], i);
+            frequency[i] = postings[i].length;
+        }
+        targets = new int[interests.length][];
+        counts = new int[interests.length][];
+        weights = new double[interests.length][];
+        ranked = new int[interests.length];
+        IntStream.range(0, interests.length).parallel().forEach(i -> link(i, postings[i]));
+        logResearcherNum = Math.log(Researcher.getResearcherNum());
+        linkNum = countLinks();
+    }
+
+    /**
+     * Constructor with parameter, updating a graph after some interests have
+     * been added to or removed from researchers. Interests new to the graph
+     * get a node; interests no researcher holds any more keep theirs, without
+     * links.
+     *
+     * @param graph the previous graph
+     * @param touched the interests whose postings changed, in lower case
+     */
+    private InterestGraph(InterestGraph graph, Set<String> touched) {
+        ArrayList<String> names = new ArrayList<>(Arrays.asList(graph.interests));
+        nodes = new HashMap<>(graph.nodes);
+        for (String interest : touched) {
+            if (!nodes.containsKey(interest)) {
+                nodes.put(interest, names.size());
+                names.add(interest);
+            }
+        }
+        interests = names.toArray(new String[0]);
+        frequency = Arrays.copyOf(graph.frequency, interests.length);
+        targets = Arrays.copyOf(graph.targets, interests.length);
+        counts = Arrays.copyOf(graph.counts, interests.length);
+        weights = Arrays.copyOf(graph.weights, interests.length);
+        ranked = Arrays.copyOf(graph.ranked, interests.length);
+        HashMap<Integer, int[]> postings = new HashMap<>();
+        for (String interest : touched) {
+            int i = nodes.get(interest);
+            postings.put(i, Researcher.getPosting(interest));
+            frequency[i] = postings.get(i).length;
+        }
+        // the links between untouched interests keep their counts, only the
+        // weights of their links to touched interests change
+        HashSet<Integer> neighbors = new HashSet<>();
+        for (int i : postings.keySet()) {
+            if (i < graph.targets.length) {
+                for (int j : graph.targets[i]) {
+                    neighbors.add(j);
+                }
+            }
+            link(i, postings.get(i));
+            for (int j : targets[i]) {
+                neighbors.add(j);
+            }
+        }
+        neighbors.removeAll(postings.keySet());
+        for (int j : neighbors) {
+            setRow(j, targets[j], counts[j]);
+        }
+        logResearcherNum = Math.log(Researcher.getResearcherNum());
+        linkNum = countLinks();
+    }
+
+    /**
+     * Build the links of a node from the interests of the researchers with
+     * its interest.
+     *
+     * @param i the node
+     * @param posting the researcher ids with the interest of the node
+     */
+    private void link(int i, int[] posting) {
+        HashMap<Integer, Integer> cooccur = new HashMap<>();
+        for (int id : posting) {
+            // interests differing only in case are one node, counted once per researcher
+            HashSet<Integer> linked = new HashSet<>();
+            for (String interest : Researcher.getResearcherById(id).getInterests()) {
+                Integer j = nodes.get(interest.toLowerCase());
+                if (j != null && j != i) {
+                    linked.add(j);
+                }
+            }
+            for (int j : linked) {
+                cooccur.merge(j, 1, Integer::sum);
+            }
+        }
+        int[] rowTargets = new int[cooccur.size()], rowCounts = new int[cooccur.size()];
+        int n = 0;
+        for (Map.Entry<Integer, Integer> entry : cooccur.entrySet()) {
+            rowTargets[n] = entry.getKey();
+            rowCounts[n++] = entry.getValue();
+        }
+        setRow(i, rowTargets, rowCounts);
+    }
+
+    /**
+     * Weight and sort the links of a node, storing them as a new row.
+     *
+     * @param i the node
+     * @param rowTargets the target node of each link
+     * @param rowCounts the number of researchers sharing both interests of
+     * each link
+     */
+    private void setRow(int i, int[] rowTargets, int[] rowCounts) {
+        Integer[] order = new Integer[rowTargets.length];
+        double[] rowWeights = new double[rowTargets.length];
+        for (int n = 0; n < order.length; n++) {
+            order[n] = n;
+            rowWeights[n] = Math.log((double) rowCounts[n] / ((double) frequency[i] * frequency[rowTargets[n]]));
+        }
+        Arrays.sort(order, (a, b) -> {
+            boolean ra = rowCounts[a] >= MIN_COOCCUR, rb = rowCounts[b] >= MIN_COOCCUR;
+            if (ra != rb) {
+                return ra ? -1 : 1;
+            }
+            int c = Double.compare(rowWeights[b], rowWeights[a]);
+            return c != 0 ? c : interests[rowTargets[a]].compareTo(interests[rowTargets[b]]);
+        });
+        int[] sortedTargets = new int[order.length], sortedCounts = new int[order.length];
+        double[] sortedWeights = new double[order.length];
+        int rankedNum = 0;
+        for (int n = 0; n < order.length; n++) {
+            sortedTargets[n] = rowTargets[order[n]];
+            sortedCounts[n] = rowCounts[order[n]];
+            sortedWeights[n] = rowWeights[order[n]];
+            if (sortedCounts[n] >= MIN_COOCCUR) {
+                rankedNum++;
+            }
+        }
+        targets[i] = sortedTargets;
+        counts[i] = sortedCounts;
+        weights[i] = sortedWeights;
+        ranked[i] = rankedNum;
+    }
+
+    /**
+     * Count the links of all nodes.
+     *
+     * @return the number of links
+     */
+    private int countLinks() {
+        int n = 0;
+        for (int[] row : targets) {
+            n += row.length;
+        }
+        return n;
+    }
+
+    /**
+     * Get the current snapshot, building it if the repository has changed
+     * since the last build. Callers arriving during a build wait for it.
+     *
+     * @return the interest graph
+     */
+    public static InterestGraph get() {
+        InterestGraph graph = current;
+        if (graph == null) {
+            synchronized (InterestGraph.class) {
+                graph = current != null ? current : build();
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Build the graph of the researcher repository and publish it as the
+     * current snapshot. The repository must not change during the build.
+     *
+     * @return the interest graph
+     */
+    public static synchronized InterestGraph build() {
+        String[] interests = Researcher.getInterestNames();
+        int[][] postings = new int[interests.length][];
+        for (int i = 0; i < interests.length; i++) {
+            postings[i] = Researcher.getPosting(interests[i]);
+        }
+        current = new InterestGraph(interests, postings);
+        return current;
+    }
+
+    /**
+     * Drop the current snapshot after the repository has changed, so that the
+     * next use rebuilds it.
+     */
+    public static void invalidate() {
+        current = null;
+    }
+
+    /**
+     * Publish a snapshot updated for the interests a
+     * {@link DeltaUpdate delta update} has added to or removed from some
+     * researchers, if a snapshot has been built. The cost depends on the
+     * postings of those interests and on the rows linked to them, not on the
+     * size of the repository.
+     *
+     * @param touched the interests whose postings changed, in lower case
+     */
+    public static synchronized void update(Set<String> touched) {
+        if (current != null && !touched.isEmpty()) {
+            current = new InterestGraph(current, touched);
+        }
+    }
+
+    /**
+     * Get the number of links of the graph, each pair of interests counted
+     * in both directions.
+     *
+     * @return the number of links
+     */
+    public int getLinkNum() {
+        return linkNum;
+    }
+
+    /**
+     * Get the most related interests of an interest, with the PMI of each
+     * pair. Only pairs shared by at least
+     * {@link InterestGraph#MIN_COOCCUR MIN_COOCCUR} researchers are
+     * returned.
+     *
+     * @param interest the interest
+     * @param n the maximum number of related interests
+     * @return the related interests mapped to their PMI, most related first
+     */
+    public LinkedHashMap<String, Double> getRelated(String interest, int n) {
+        LinkedHashMap<String, Double> related = new LinkedHashMap<>();
+        Integer node = nodes.get(normalize(interest));
+        if (node != null) {
+            for (int e = 0; e < Math.min(n, ranked[node]); e++) {
+                related.put(interests[targets[node][e]], weights[node][e] + logResearcherNum);
+            }
+        }
+        return related;
+    }
+
+    /**
+     * Expand an interest with its most related interests, for example to
+     * match researchers who describe the same field with other words.
+     *
+     * @param interest the interest
+     * @param n the maximum number of related interests added
+     * @return the interest followed by its related interests
+     */
+    public ArrayList<String> expand(String interest, int n) {
+        ArrayList<String> expansion = new ArrayList<>();
+        expansion.add(normalize(interest));
+        expansion.addAll(getRelated(interest, n).keySet());
+        return expansion;
+    }
+
+    /**
+     * Get the number of researchers sharing two interests, as stored in the
+     * graph.
+     *
+     * @param ia the name of one interest
+     * @param ib the name of another interest
+     * @return the number of researchers with both interests
+     */
+    public int getCooccurNum(String ia, String ib) {
+        Integer a = nodes.get(normalize(ia)), b = nodes.get(normalize(ib));
+        if (a == null || b == null) {
+            return 0;
+        }
+        for (int e = 0; e < targets[a].length; e++) {
+            if (targets[a][e] == b) {
+                return counts[a][e];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Normalize an interest for matching.
+     *
+     * @param interest the interest
+     * @return the interest in lower case without repeated blanks
+     */
+    private static String normalize(String interest) {
+        return interest.trim().replaceAll(" +", " ").toLowerCase();
+    }
+}
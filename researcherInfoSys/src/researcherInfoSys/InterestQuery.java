@@ -0,0 +1,501 @@
+package researcherInfoSys;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A boolean query over the interests of researchers, such as
+ * <code>machine learning AND (genomics OR proteomics) NOT chemistry</code>.
+ * Operators are the upper case words <code>AND</code>, <code>OR</code> and
+ * <code>NOT</code>, with <code>AND</code> binding tighter than
+ * <code>OR</code>; <code>A NOT B</code> means <code>A AND NOT B</code>.
+ * Every other run of words is an interest, matched like
+ * {@link Researcher#getResearcherNumByInterest(java.lang.String) task 4}, and
+ * may be quoted with <code>"</code> if it contains an operator or a
+ * parenthesis. An interest prefixed with <code>~</code>, such as
+ * <code>~data mining</code>, also matches its most related interests in
+ * {@link InterestGraph the interest graph}.
+ * <p>
+ * Queries are evaluated over the sorted posting arrays of
+ * {@link Researcher#getPosting(java.lang.String) the interests}.
+ * Conjunctions intersect their operands from the smallest estimated size
+ * up, evaluate an operand only when the partial result is not empty yet, and
+ * subtract negated operands last. Intersections switch to galloping search
+ * when one side is much smaller than the other.
+ *
+ * @author james
+ */
+public class InterestQuery {
+
+    /**
+     * Ratio of posting sizes above which intersections use galloping search.
+     */
+    private static final int GALLOP_RATIO = 16;
+
+    /**
+     * The root of the parsed expression.
+     */
+    private final Node root;
+
+    /**
+     * The tokens being parsed and the position of the next one.
+     */
+    private final ArrayList<String> tokens;
+    private int pos = 0;
+
+    /**
+     * Constructor with parameter, parsing a query.
+     *
+     * @param query the query
+     * @throws IllegalArgumentException if the query is malformed
+     */
+    public InterestQuery(String query) {
+        tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            throw new IllegalArgumentException("Empty query");
+        }
+        root = parseOr();
+        if (pos < tokens.size()) {
+            throw new IllegalArgumentException("Unexpected \"" + tokens.get(pos) + "\"");
+        }
+    }
+
+    /**
+     * Get the ids of the researchers matching the query.
+     *
+     * @return the sorted researcher ids
+     */
+    public int[] evaluate() {
+        return root.eval();
+    }
+
+    /**
+     * Get the number of researchers matching the query.
+     *
+     * @return the number of matching researchers
+     */
+    public int count() {
+        return evaluate().length;
+    }
+
+    /**
+     * Get one page of the researchers matching the query, in id order.
+     *
+     * @param offset the number of matching researchers to skip
+     * @param limit the maximum number of researchers returned
+     * @return the researchers of the page
+     */
+    public List<Researcher> page(int offset, int limit) {
+        int[] ids = evaluate();
+        ArrayList<Researcher> page = new ArrayList<>();
+        for (int i = Math.max(0, offset); i < ids.length && page.size() < limit; i++) {
+            page.add(Researcher.getResearcherById(ids[i]));
+        }
+        return page;
+    }
+
+    /**
+     * Intersect two sorted arrays of ids.
+     *
+     * @param a one sorted array
+     * @param b another sorted array
+     * @return the sorted ids in both arrays
+     */
+    public static int[] intersect(int[] a, int[] b) {
+        if (a.length > b.length) {
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        int[] res = new int[a.length];
+        int n = 0;
+        if (a.length * GALLOP_RATIO < b.length) {
+            int lo = 0;
+            for (int x : a) {
+                int step = 1, hi = lo;
+                while (hi < b.length && b[hi] < x) {
+                    lo = hi + 1;
+                    hi += step;
+                    step <<= 1;
+                }
+                int idx = Arrays.binarySearch(b, lo, Math.min(hi + 1, b.length), x);
+                if (idx >= 0) {
+                    res[n++] = x;
+                    lo = idx + 1;
+                } else {
+                    lo = -idx - 1;
+                }
+                if (lo >= b.length) {
+                    break;
+                }
+            }
+        } else {
+            for (int i = 0, j = 0; i < a.length && j < b.length;) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    res[n++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return n == res.length ? res : Arrays.copyOf(res, n);
+    }
+
+    /**
+     * Unite two sorted arrays of ids.
+     *
+     * @param a one sorted array
+     * @param b another sorted array
+     * @return the sorted ids in either array
+     */
+    public static int[] union(int[] a, int[] b) {
+        int[] res = new int[a.length + b.length];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                res[n++] = a[i++];
+            } else if (a[i] > b[j]) {
+                res[n++] = b[j++];
+            } else {
+                res[n++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            res[n++] = a[i++];
+        }
+        while (j < b.length) {
+            res[n++] = b[j++];
+        }
+        return n == res.length ? res : Arrays.copyOf(res, n);
+    }
+
+    /**
+     * Subtract a sorted array of ids from another.
+     *
+     * @param a the sorted array to subtract from
+     * @param b the sorted array to be subtracted
+     * @return the sorted ids in the first array but not in the second
+     */
+    public static int[] difference(int[] a, int[] b) {
+        int[] res = new int[a.length];
+        int j = 0, n = 0;
+        for (int x : a) {
+            while (j < b.length && b[j] < x) {
+                j++;
+            }
+            if (j >= b.length || b[j] != x) {
+                res[n++] = x;
+            }
+        }
+        return n == res.length ? res : Arrays.copyOf(res, n);
+    }
+
+    /**
+     * Split a query into parentheses, operators and interests.
+     *
+     * @param query the query
+     * @return the tokens
+     */
+    private static ArrayList<String> tokenize(String query) {
+        ArrayList<String> tokens = new ArrayList<>();
+        StringBuilder term = new StringBuilder();
+        int i = 0;
+        while (i < query.length()) {
+            char c = query.charAt(i);
+            if (c == '(' || c == ')') {
+                flush(term, tokens);
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if (c == '"') {
+                flush(term, tokens);
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated quote");
+                }
+                tokens.add("\"" + query.substring(i + 1, end));
+                i = end + 1;
+            } else if (Character.isWhitespace(c)) {
+                i++;
+            } else {
+                int end = i;
+                while (end < query.length() && !Character.isWhitespace(query.charAt(end)) && "()\"".indexOf(query.charAt(end)) < 0) {
+                    end++;
+                }
+                String word = query.substring(i, end);
+                if (word.equals("AND") || word.equals("OR") || word.equals("NOT")) {
+                    flush(term, tokens);
+                    tokens.add(word);
+                } else {
+                    term.append(term.length() == 0 ? "" : " ").append(word);
+                }
+                i = end;
+            }
+        }
+        flush(term, tokens);
+        return tokens;
+    }
+
+    /**
+     * Turn the words collected so far into an interest token.
+     *
+     * @param term the words collected
+     * @param tokens the tokens
+     */
+    private static void flush(StringBuilder term, ArrayList<String> tokens) {
+        if (term.length() > 0) {
+            tokens.add("\"" + term);
+            term.setLength(0);
+        }
+    }
+
+    /**
+     * Parse a disjunction.
+     *
+     * @return the parsed node
+     */
+    private Node parseOr() {
+        ArrayList<Node> children = new ArrayList<>();
+        children.add(parseAnd());
+        while (accept("OR")) {
+            children.add(parseAnd());
+        }
+        return children.size() == 1 ? children.get(0) : new Or(children);
+    }
+
+    /**
+     * Parse a conjunction, where <code>AND</code> may be left out before
+     * <code>NOT</code> and parentheses.
+     *
+     * @return the parsed node
+     */
+    private Node parseAnd() {
+        ArrayList<Node> children = new ArrayList<>();
+        children.add(parseUnary());
+        while (pos < tokens.size()) {
+            String next = tokens.get(pos);
+            if (accept("AND") || next.equals("NOT") || next.equals("(") || next.startsWith("\"")) {
+                children.add(parseUnary());
+            } else {
+                break;
+            }
+        }
+        return children.size() == 1 ? children.get(0) : new And(children);
+    }
+
+    /**
+     * Parse a negation, a parenthesized query or an interest.
+     *
+     * @return the parsed node
+     */
+    private Node parseUnary() {
+        if (pos >= tokens.size()) {
+            throw new IllegalArgumentException("Unexpected end of query");
+        }
+        String token = tokens.get(pos++);
+        if (token.equals("NOT")) {
+            return new Not(parseUnary());
+        } else if (token.equals("(")) {
+            Node node = parseOr();
+            if (!accept(")")) {
+                throw new IllegalArgumentException("Missing \")\"");
+            }
+            return node;
+        } else if (token.startsWith("\"~")) {
+            ArrayList<Node> children = new ArrayList<>();
+            for (String interest : InterestGraph.get().expand(token.substring(2), InterestGraph.DEFAULT_EXPANSION)) {
+                children.add(new Term(interest));
+            }
+            return children.size() == 1 ? children.get(0) : new Or(children);
+        } else if (token.startsWith("\"")) {
+            return new Term(token.substring(1));
+        }
+        throw new IllegalArgumentException("Unexpected \"" + token + "\"");
+    }
+
+    /**
+     * Consume the next token if it is the expected one.
+     *
+     * @param token the expected token
+     * @return <code>true</code> if it was consumed
+     */
+    private boolean accept(String token) {
+        if (pos < tokens.size() && tokens.get(pos).equals(token)) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * A node of a parsed query.
+     */
+    private abstract static class Node {
+
+        /**
+         * Evaluate the node.
+         *
+         * @return the sorted ids of the matching researchers
+         */
+        abstract int[] eval();
+
+        /**
+         * Estimate the number of matching researchers without evaluating the
+         * node, used to order the operands of a conjunction.
+         *
+         * @return the estimated number of matching researchers
+         */
+        abstract int estimate();
+    }
+
+    /**
+     * An interest.
+     */
+    private static class Term extends Node {
+
+        /**
+         * The posting of the interest.
+         */
+        private final int[] posting;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param interest the interest
+         */
+        Term(String interest) {
+            posting = Researcher.getPosting(interest);
+        }
+
+        @Override
+        int[] eval() {
+            return posting;
+        }
+
+        @Override
+        int estimate() {
+            return posting.length;
+        }
+    }
+
+    /**
+     * A negation, evaluated against all researchers unless it is an operand
+     * of a conjunction.
+     */
+    private static class Not extends Node {
+
+        /**
+         * The negated node.
+         */
+        private final Node child;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param child the negated node
+         */
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        int[] eval() {
+            return difference(Researcher.getAllIds(), child.eval());
+        }
+
+        @Override
+        int estimate() {
+            return Researcher.getResearcherNum() - child.estimate();
+        }
+    }
+
+    /**
+     * A conjunction.
+     */
+    private static class And extends Node {
+
+        /**
+         * The positive operands, smallest estimate first, and the negated
+         * operands.
+         */
+        private final ArrayList<Node> positives = new ArrayList<>(), negatives = new ArrayList<>();
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param children the operands
+         */
+        And(ArrayList<Node> children) {
+            for (Node child : children) {
+                if (child instanceof Not) {
+                    negatives.add(((Not) child).child);
+                } else {
+                    positives.add(child);
+                }
+            }
+            positives.sort(Comparator.comparingInt(Node::estimate));
+            negatives.sort(Comparator.comparingInt(Node::estimate).reversed());
+        }
+
+        @Override
+        int[] eval() {
+            int[] res = positives.isEmpty() ? Researcher.getAllIds() : positives.get(0).eval();
+            for (int i = 1; i < positives.size() && res.length > 0; i++) {
+                res = intersect(res, positives.get(i).eval());
+            }
+            for (int i = 0; i < negatives.size() && res.length > 0; i++) {
+                res = difference(res, negatives.get(i).eval());
+            }
+            return res;
+        }
+
+        @Override
+        int estimate() {
+            return positives.isEmpty() ? Researcher.getResearcherNum() : positives.get(0).estimate();
+        }
+    }
+
+    /**
+     * A disjunction.
+     */
+    private static class Or extends Node {
+
+        /**
+         * The operands.
+         */
+        private final ArrayList<Node> children;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param children the operands
+         */
+        Or(ArrayList<Node> children) {
+            this.children = children;
+        }
+
+        @Override
+        int[] eval() {
+            int[] res = new int[0];
+            for (Node child : children) {
+                res = union(res, child.eval());
+            }
+            return res;
+        }
+
+        @Override
+        int estimate() {
+            long sum = 0;
+            for (Node child : children) {
+                sum += child.estimate();
+            }
+            return (int) Math.min(sum, Researcher.getResearcherNum());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package researcherInfoSys;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+
+/**
+ * A {@link RecordSource record source} streaming a JSON-lines file through a
+ * buffered NIO channel, one JSON object per line. Attributes are looked up by
+ * the keys of the {@link ColumnMapping column mapping}. String values are
+ * used as is, arrays of Strings are joined by commas like the interest lists
+ * of the Excel dataset, and <code>null</code> or missing keys give empty
+ * Strings. Lines which cannot be parsed are reported and skipped.
+ *
+ * @author james
+ */
+public class JsonLinesSource implements RecordSource {
+
+    /**
+     * The size of the character buffer.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The reader decoding the file channel.
+     */
+    private final BufferedReader reader;
+
+    /**
+     * The JSON key of each attribute.
+     */
+    private final String[] keys;
+
+    /**
+     * The line number of the last record.
+     */
+    private int rowNum = 0;
+
+    /**
+     * The line being parsed and the position of the next character in it.
+     */
+    private String line;
+    private int pos;
+
+    /**
+     * Constructor with parameter, opening a JSON-lines file.
+     *
+     * @param filePath the path of the file
+     * @param mapping the column mapping, whose columns are JSON keys
+     * @throws IOException if the file cannot be opened
+     */
+    public JsonLinesSource(String filePath, ColumnMapping mapping) throws IOException {
+        FileChannel channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+        this.reader = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE), BUFFER_SIZE), BUFFER_SIZE);
+        this.keys = mapping.getKeys();
+    }
+
+    @Override
+    public String[] next() throws IOException {
+        while ((line = reader.readLine()) != null) {
+            rowNum++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            pos = 0;
+            try {
+                HashMap<String, String> object = parseObject();
+                String[] fields = new String[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    String value = object.get(keys[i]);
+                    fields[i] = value == null ? "" : value;
+                }
+                return fields;
+            } catch (IllegalArgumentException e) {
+                System.err.println("Skipped line " + rowNum + " - " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Parse a JSON object whose values are flattened into Strings.
+     *
+     * @return the map between each key and its flattened value
+     */
+    private HashMap<String, String> parseObject() {
+        HashMap<String, String> object = new HashMap<>();
+        expect('{');
+        if (peek() == '}') {
+            pos++;
+            return object;
+        }
+        do {
+            String key = parseString();
+            expect(':');
+            object.put(key, parseValue());
+        } while (accept(','));
+        expect('}');
+        return object;
+    }
+
+    /**
+     * Parse a JSON value and flatten it into a String.
+     *
+     * @return the flattened value, <code>null</code> for a JSON null
+     */
+    private String parseValue() {
+        char c = peek();
+        if (c == '"') {
+            return parseString();
+        } else if (c == '[') {
+            pos++;
+            StringBuilder sb = new StringBuilder();
+            if (peek() != ']') {
+                do {
+                    String value = parseValue();
+                    if (value != null && !value.isEmpty()) {
+                        sb.append(sb.length() == 0 ? "" : ", ").append(value);
+                    }
+                } while (accept(','));
+            }
+            expect(']');
+            return sb.toString();
+        } else if (c == '{') {
+            parseObject();
+            return "";
+        }
+        int start = pos;
+        while (pos < line.length() && ",]} \t".indexOf(line.charAt(pos)) < 0) {
+            pos++;
+        }
+        String literal = line.substring(start, pos);
+        if (literal.isEmpty()) {
+            throw new IllegalArgumentException("Unexpected character at " + pos);
+        }
+        return literal.equals("null") ? null : literal;
+    }
+
+    /**
+     * Parse a JSON String.
+     *
+     * @return the unescaped String
+     */
+    private String parseString() {
+        expect('"');
+        StringBuilder sb = new StringBuilder();
+        while (pos < line.length()) {
+            char c = line.charAt(pos++);
+            if (c == '"') {
+                return sb.toString();
+            } else if (c != '\\') {
+                sb.append(c);
+            } else if (pos < line.length()) {
+                char e = line.charAt(pos++);
+                switch (e) {
+                    case 'n':
+                        sb.append('\n');
+                        break;
+                    case 't':
+                        sb.append('\t');
+                        break;
+                    case 'r':
+                        sb.append('\r');
+                        break;
+                    case 'b':
+                        sb.append('\b');
+                        break;
+                    case 'f':
+                        sb.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > line.length()) {
+                            throw new IllegalArgumentException("Invalid escape at " + pos);
+                        }
+                        sb.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        sb.append(e);
+                }
+            }
+        }
+        throw new IllegalArgumentException("Unterminated String");
+    }
+
+    /**
+     * Skip blanks and get the next character without consuming it.
+     *
+     * @return the next character
+     */
+    private char peek() {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+            pos++;
+        }
+        if (pos >= line.length()) {
+            throw new IllegalArgumentException("Unexpected end of line");
+        }
+        return line.charAt(pos);
+    }
+
+    /**
+     * Consume the next character if it is the expected one.
+     *
+     * @param c the expected character
+     * @return <code>true</code> if it was consumed
+     */
+    private boolean accept(char c) {
+        if (peek() == c) {
+            pos++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consume the next character, which must be the expected one.
+     *
+     * @param c the expected character
+     */
+    private void expect(char c) {
+        if (!accept(c)) {
+            throw new IllegalArgumentException("Expected '" + c + "' at " + pos);
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package researcherInfoSys;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
 import weka.clusterers.SimpleKMeans;
 import weka.core.Instances;
 import weka.core.converters.ArffLoader;
@@ -30,6 +32,20 @@ public class KmeansModel {
      */
     private SimpleKMeans KM;
 
+    /**
+     * The cluster of each index of instance, and of each researcher id,
+     * computed once when the model is published or first queried.
+     */
+    private int[] clusters;
+    private HashMap<Integer, Integer> clusterById;
+
+    /**
+     * The version of this model, used to tell its results apart in
+     * {@link RecommendCache the recommendation cache}, 0 until the model is
+     * {@link KmeansModel#publish() published}.
+     */
+    private volatile int version = 0;
+
     /**
      * Constructor with parameter, constructing a new <code>KmeansModel</code>
      * instance with the number of clusters and a researcher catalog.
@@ -40,9 +56,25 @@ public class KmeansModel {
      * {@link Researcher researcher} of each index of instance
      */
     public KmeansModel(int num, Researcher[] catalog) {
+        this(num, catalog, "data/topicDistribution.arff");
+    }
+
+    /**
+     * Constructor with parameter, constructing a new <code>KmeansModel</code>
+     * instance with the number of clusters, a researcher catalog and the Arff
+     * file holding the topic distributions.
+     *
+     * @param num the specified number of the clusters
+     * @param catalog the catalog which helps to retrieve
+     * {@link Researcher researcher}, it stores the corresponding
+     * {@link Researcher researcher} of each index of instance
+     * @param fileName the path of the Arff file written by
+     * {@link TopicModel#createArff(java.lang.String) createArff}
+     */
+    public KmeansModel(int num, Researcher[] catalog, String fileName) {
         this.catalog = catalog;
         try {
-            File file = new File("data/topicDistribution.arff");
+            File file = new File(fileName);
             ArffLoader loader = new ArffLoader();
             loader.setFile(file);
             instanceList = loader.getDataSet();
@@ -54,6 +86,57 @@ public class KmeansModel {
         }
     }
 
+    /**
+     * Make this model the one serving queries, so that its results are kept
+     * in {@link RecommendCache the recommendation cache} and the results of
+     * the previous serving model are dropped. The cluster of every instance
+     * is computed first, so no query pays for it.
+     */
+    void publish() {
+        getClusters();
+        version = RecommendCache.publish(Algorithm.KMEANS);
+    }
+
+    /**
+     * Get the cluster of each index of instance, assigning every instance to
+     * its cluster on first use.
+     *
+     * @return the cluster of each index of instance, -1 for all if
+     * clustering failed
+     */
+    private synchronized int[] getClusters() {
+        if (clusters == null) {
+            int[] assigned = new int[catalog.length];
+            HashMap<Integer, Integer> byId = new HashMap<>();
+            try {
+                for (int i = 0; i < catalog.length; i++) {
+                    assigned[i] = KM.clusterInstance(instanceList.instance(i));
+                    if (catalog[i] != null) {
+                        byId.put(catalog[i].getId(), assigned[i]);
+                    }
+                }
+            } catch (Exception e) {
+                System.err.println("Failed assigning instances to clusters - " + e.getMessage());
+                Arrays.fill(assigned, -1);
+                byId.clear();
+            }
+            clusterById = byId;
+            clusters = assigned;
+        }
+        return clusters;
+    }
+
+    /**
+     * Get the within-cluster sum of squared errors of the clustering. Lower is
+     * better for a fixed number of clusters.
+     *
+     * @return the sum of squared errors, or <code>NaN</code> if clustering
+     * failed
+     */
+    public double getSquaredError() {
+        return KM == null ? Double.NaN : KM.getSquaredError();
+    }
+
     /**
      * Recommend and output similar researchers who are in a same cluster with a
      * specified researcher.
@@ -61,22 +144,86 @@ public class KmeansModel {
      * @param owner the specified researcher needing recommendations
      */
     public void recommend(Researcher owner) {
-        try {
-            int ownerClusterNo = -1;
-            for (int i = 0; i < catalog.length; i++) {
-                if (catalog[i]!=null && catalog[i].equals(owner)) {
-                    ownerClusterNo = KM.clusterInstance(instanceList.instance(i));
-                    break;
-                }
+        RecommendResult result = getRecommendResult(owner, catalog.length);
+        for (Researcher r : result.getResearchers()) {
+            System.out.format("        %s (%s - %s)\n", r.getName(), r.getUniversity(), r.getDepartment());
+            System.out.println("        Interests\t\t" + r.getInterestsStr() + "\n");
+        }
+    }
+
+    /**
+     * Get at most <code>k</code> researchers who are in a same cluster with a
+     * specified researcher, without printing them. The indicator value of each
+     * researcher is the cluster number. The result is served from
+     * {@link RecommendCache the recommendation cache} when this model is
+     * published and has answered the same query before.
+     *
+     * @param owner the specified researcher needing recommendations
+     * @param k the maximum number of researchers to be recommended
+     * @return the recommendation result
+     */
+    public RecommendResult getRecommendResult(Researcher owner, int k) {
+        int version = this.version;
+        RecommendResult result = version == 0 ? null : RecommendCache.get(owner.getId(), Algorithm.KMEANS, k, version);
+        if (result != null) {
+            return result;
+        }
+        result = new RecommendResult(owner, Algorithm.KMEANS, k);
+        int[] clusters = getClusters();
+        Integer ownerClusterNo = getOwnerCluster(owner);
+        for (int i = 0; i < catalog.length && ownerClusterNo != null; i++) {
+            if (catalog[i] != null && !catalog[i].isRemoved() && clusters[i] == ownerClusterNo) {
+                result.add(catalog[i], ownerClusterNo);
             }
-            for (int i = 0; i < catalog.length; i++) {
-                if (catalog[i]!=null && KM.clusterInstance(instanceList.instance(i)) == ownerClusterNo) {
-                    System.out.format("        %s (%s - %s)\n", catalog[i].getName(), catalog[i].getUniversity(), catalog[i].getDepartment());
-                    System.out.println("        Interests\t\t" + catalog[i].getInterestsStr() + "\n");
-                }
+        }
+        RecommendCache.put(owner.getId(), k, version, result);
+        return result;
+    }
+
+    /**
+     * Get at most <code>k</code> researchers who are in a same cluster with a
+     * specified researcher, assigning instances to clusters until a budget is
+     * exhausted, bypassing {@link RecommendCache the recommendation cache}.
+     * Every member of the cluster is equally similar, so instances are
+     * checked in catalog order, as by
+     * {@link KmeansModel#getRecommendResult getRecommendResult}, and the
+     * result is complete once <code>k</code> members are found; otherwise
+     * the {@link RecommendResult#getCoverage() coverage} of the result tells
+     * the fraction checked. The cluster of every instance is computed when
+     * the model is {@link KmeansModel#publish() published}, so the budget is
+     * spent on checking instances only.
+     *
+     * @param owner the specified researcher needing recommendations
+     * @param k the maximum number of researchers to be recommended
+     * @param budget the budget of the query
+     * @return the members of the cluster found within the budget
+     */
+    public RecommendResult getBudgetResult(Researcher owner, int k, Budget budget) {
+        RecommendResult result = new RecommendResult(owner, Algorithm.KMEANS, k);
+        int[] clusters = getClusters();
+        Integer ownerClusterNo = getOwnerCluster(owner);
+        int checked = ownerClusterNo == null ? catalog.length : 0;
+        for (; checked < catalog.length && result.size() < k && !budget.isExhausted(checked); checked++) {
+            if (catalog[checked] != null && !catalog[checked].isRemoved() && clusters[checked] == ownerClusterNo) {
+                result.add(catalog[checked], ownerClusterNo);
             }
-        } catch (Exception e) {
-            System.err.println("Failed during recommendation - "+e.getMessage());
         }
+        if (result.size() == k) {
+            checked = catalog.length;
+        }
+        result.setCoverage(catalog.length == 0 ? 1 : (double) checked / catalog.length);
+        return result;
+    }
+
+    /**
+     * Get the cluster of a researcher.
+     *
+     * @param owner the researcher
+     * @return the cluster, or <code>null</code> if the researcher is not in
+     * the catalog
+     */
+    private synchronized Integer getOwnerCluster(Researcher owner) {
+        getClusters();
+        return clusterById.get(owner.getId());
     }
 }
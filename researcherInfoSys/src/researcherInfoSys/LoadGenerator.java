@@ -0,0 +1,399 @@
+package researcherInfoSys;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Replays a mix of tasks 1-6 of {@link Test the command line menu} against
+ * the in-process query APIs from many threads, and reports the throughput,
+ * the latency percentiles and the garbage collection pauses of the run.
+ * <ul>
+ * <li>In a closed loop every thread sends its next request when the previous
+ * one has returned, paced at <code>rate / concurrency</code> requests per
+ * second each if a rate is given, back to back otherwise.</li>
+ * <li>In an open loop requests are due at a fixed rate whatever the state of
+ * the system, and are taken in order by the threads, so a slow request delays
+ * the ones behind it as it would delay independent users.</li>
+ * </ul>
+ * Whenever requests have a schedule, latency is measured from the time a
+ * request was due rather than from the time it was sent, so that the
+ * requests a stalled system failed to send are counted as waiting, not
+ * omitted. The service time, from sending to returning, is reported as well;
+ * the gap between the two shows the queueing.
+ *
+ * @author james
+ */
+public class LoadGenerator {
+
+    /**
+     * String for formatting the output.
+     */
+    private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
+
+    /**
+     * Default weights of tasks 1-6, as <code>task:weight</code> pairs.
+     */
+    public static final String DEFAULT_MIX = "1:5,2:5,3:20,4:20,5:20,6:30";
+
+    /**
+     * Topic model algorithms used by task 6.
+     */
+    private static final Algorithm[] ALGORITHMS = {Algorithm.PROBABILITY, Algorithm.KL, Algorithm.JS, Algorithm.COSINE};
+
+    /**
+     * The topic model answering task 6.
+     */
+    private final TopicModel tm;
+
+    /**
+     * The researchers and interests the requests are drawn from.
+     */
+    private final Researcher[] researchers;
+    private final String[] interests;
+
+    /**
+     * The task of each weight unit of the mix.
+     */
+    private final int[] mix;
+
+    /**
+     * The response time and the service time of all requests, and the
+     * response time of each task.
+     */
+    private final Histogram response = new Histogram(), service = new Histogram();
+    private final Histogram[] byTask = new Histogram[7];
+
+    /**
+     * The number of garbage collection pauses, their total and longest
+     * duration in milliseconds.
+     */
+    private final AtomicLong gcPauses = new AtomicLong(), gcMillis = new AtomicLong(), gcMaxMillis = new AtomicLong();
+
+    /**
+     * Results of the requests, kept so that no request can be optimized
+     * away.
+     */
+    private volatile long sink;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param tm the topic model answering task 6
+     * @param mix the weights of the tasks, as <code>task:weight</code>
+     * pairs
+     */
+    private LoadGenerator(TopicModel tm, String mix) {
+        this.tm = tm;
+        ArrayList<Researcher> list = new ArrayList<>();
+        for (int id : Researcher.getAllIds()) {
+            Researcher r = Researcher.getResearcherById(id);
+            if (tm.getRow(r) >= 0) {
+                list.add(r);
+            }
+        }
+        researchers = list.toArray(new Researcher[0]);
+        interests = Researcher.getInterestNames();
+        ArrayList<Integer> units = new ArrayList<>();
+        for (String pair : mix.split(",")) {
+            String[] parts = pair.split(":");
+            int task = Integer.parseInt(parts[0].trim()), weight = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 1;
+            if (task < 1 || task > 6 || weight < 0) {
+                throw new IllegalArgumentException("Invalid task weight - " + pair);
+            }
+            for (int i = 0; i < weight; i++) {
+                units.add(task);
+            }
+        }
+        if (units.isEmpty() || researchers.length == 0 || interests.length == 0) {
+            throw new IllegalArgumentException("Nothing to replay");
+        }
+        this.mix = units.stream().mapToInt(Integer::intValue).toArray();
+        for (int task = 1; task <= 6; task++) {
+            byTask[task] = new Histogram();
+        }
+    }
+
+    /**
+     * Run the load and print the report.
+     *
+     * @param tm the topic model answering task 6
+     * @param open is <code>true</code> for an open loop, <code>false</code>
+     * for a closed loop
+     * @param concurrency the number of threads sending requests
+     * @param rate the requests per second of the whole run, 0 for a closed
+     * loop without pacing
+     * @param seconds the duration of the run
+     * @param mix the weights of the tasks, as <code>task:weight</code>
+     * pairs
+     */
+    public static void run(TopicModel tm, boolean open, int concurrency, double rate, int seconds, String mix) {
+        if (open && rate <= 0) {
+            throw new IllegalArgumentException("An open loop needs a rate");
+        }
+        LoadGenerator generator = new LoadGenerator(tm, mix);
+        System.out.println(S1 + "Running " + (open ? "an open" : "a closed") + " loop of " + concurrency + " threads"
+                + (rate > 0 ? " at " + rate + " requests/s" : "") + " for " + seconds + "s......");
+        List<Runnable> unregister = generator.watchGc();
+        ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+        AtomicLong slots = new AtomicLong();
+        long start = System.nanoTime(), end = start + seconds * 1_000_000_000L;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < concurrency; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                long due = start;
+                for (long n = 0;; n++) {
+                    if (open) {
+                        due = start + (long) (slots.getAndIncrement() * 1E9 / rate);
+                    } else if (rate > 0) {
+                        due = start + (long) ((n * concurrency + thread) * 1E9 / rate);
+                    }
+                    if ((rate > 0 ? due : System.nanoTime()) >= end) {
+                        break;
+                    }
+                    long now;
+                    while ((now = System.nanoTime()) < due) {
+                        LockSupport.parkNanos(due - now);
+                    }
+                    int task = generator.mix[ThreadLocalRandom.current().nextInt(generator.mix.length)];
+                    generator.execute(task);
+                    long done = System.nanoTime();
+                    long latency = done - (rate > 0 ? due : now);
+                    generator.response.record(latency);
+                    generator.service.record(done - now);
+                    generator.byTask[task].record(latency);
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Load interrupted.");
+        } catch (ExecutionException e) {
+            System.err.println("Load failed - " + e.getCause());
+        } finally {
+            pool.shutdownNow();
+            unregister.forEach(Runnable::run);
+        }
+        generator.report((System.nanoTime() - start) / 1E9);
+    }
+
+    /**
+     * Run one request of a task with random arguments.
+     *
+     * @param task the task number, 1-6
+     */
+    private void execute(int task) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Researcher r = researchers[random.nextInt(researchers.length)];
+        switch (task) {
+            case 1:
+                sink += Researcher.getResearcherNum();
+                break;
+            case 2:
+                sink += Researcher.getInterestNum();
+                break;
+            case 3:
+                sink += Researcher.getResearcherInfo(r.getName()).size();
+                break;
+            case 4:
+                sink += Researcher.getResearcherNumByInterest(interests[random.nextInt(interests.length)]);
+                break;
+            case 5:
+                sink += Researcher.getCooccurNum(interests[random.nextInt(interests.length)], interests[random.nextInt(interests.length)]);
+                break;
+            default:
+                sink += tm.getRecommendResult(r, ALGORITHMS[random.nextInt(ALGORITHMS.length)], RecommendResult.DEFAULT_LEN).size();
+        }
+    }
+
+    /**
+     * Start recording the garbage collection pauses. A collection is told
+     * apart by the action of its notification rather than by the name of its
+     * collector: the stop-the-world collections of the serial, parallel and
+     * G1 collectors end a minor or major GC, and the pauses of ZGC and
+     * Shenandoah, reported by their own beans, end a GC pause or name their
+     * phase, such as <code>Init Mark</code>. The concurrent cycles of ZGC and
+     * Shenandoah, which do not stop the application, end a GC cycle and are
+     * not counted.
+     *
+     * @return the actions stopping the recording
+     */
+    private List<Runnable> watchGc() {
+        List<Runnable> unregister = new ArrayList<>();
+        NotificationListener listener = (Notification notification, Object handback) -> {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (!isPause(info.getGcAction())) {
+                return;
+            }
+            long millis = info.getGcInfo().getDuration();
+            gcPauses.incrementAndGet();
+            gcMillis.addAndGet(millis);
+            gcMaxMillis.accumulateAndGet(millis, Math::max);
+        };
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) bean;
+                emitter.addNotificationListener(listener, null, null);
+                unregister.add(() -> {
+                    try {
+                        emitter.removeNotificationListener(listener);
+                    } catch (ListenerNotFoundException e) {
+                        // already removed
+                    }
+                });
+            }
+        }
+        return unregister;
+    }
+
+    /**
+     * Check whether a garbage collection stopped the application.
+     *
+     * @param action the action of the garbage collection notification, such
+     * as <code>end of minor GC</code> or <code>end of GC cycle</code>
+     * @return <code>true</code> if the collection was a pause
+     */
+    static boolean isPause(String action) {
+        return !action.endsWith("GC cycle");
+    }
+
+    /**
+     * Print the report of the run.
+     *
+     * @param seconds the wall time of the run
+     */
+    private void report(double seconds) {
+        System.out.println(S2 + "Completed " + response.count() + " requests in " + String.format("%.3f", seconds) + "s, "
+                + String.format("%.1f", response.count() / seconds) + " requests/s");
+        System.out.println(S3 + String.format("%-10s %10s %10s %10s %10s %10s %10s", "Task", "Requests", "p50(ms)", "p99(ms)",
+                "p999(ms)", "Max(ms)", "Mean(ms)"));
+        for (int task = 1; task <= 6; task++) {
+            if (byTask[task].count() > 0) {
+                print("Task " + task, byTask[task]);
+            }
+        }
+        print("All", response);
+        print("Service", service);
+        System.out.println(S3 + String.format("GC: %d pauses, %d ms in total (%.2f%% of the run), longest %d ms", gcPauses.get(),
+                gcMillis.get(), 100.0 * gcMillis.get() / 1000 / seconds, gcMaxMillis.get()));
+    }
+
+    /**
+     * Print one row of the report.
+     *
+     * @param name the name of the row
+     * @param histogram the latencies of the row
+     */
+    private static void print(String name, Histogram histogram) {
+        System.out.println(S3 + String.format("%-10s %10d %10.3f %10.3f %10.3f %10.3f %10.3f", name, histogram.count(),
+                histogram.percentile(0.5) / 1E6, histogram.percentile(0.99) / 1E6, histogram.percentile(0.999) / 1E6,
+                histogram.max() / 1E6, histogram.mean() / 1E6));
+    }
+
+    /**
+     * A latency histogram with buckets of constant relative width, recorded
+     * from many threads without locking. Values below 128ns are exact, larger
+     * values fall into one of 64 buckets per power of two, so percentiles
+     * are accurate to about 1.6%.
+     */
+    private static class Histogram {
+
+        /**
+         * The number of buckets per power of two.
+         */
+        private static final int SUB_BUCKETS = 64;
+
+        /**
+         * The number of values of each bucket.
+         */
+        private final AtomicLongArray counts = new AtomicLongArray(64 * SUB_BUCKETS);
+
+        /**
+         * The number of values, their sum and the largest value, in
+         * nanoseconds.
+         */
+        private final AtomicLong count = new AtomicLong(), sum = new AtomicLong(), max = new AtomicLong();
+
+        /**
+         * Record a value.
+         *
+         * @param nanos the value in nanoseconds
+         */
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(nanos) - 7);
+            counts.incrementAndGet(shift * SUB_BUCKETS + (int) (nanos >> shift));
+            count.incrementAndGet();
+            sum.addAndGet(nanos);
+            max.accumulateAndGet(nanos, Math::max);
+        }
+
+        /**
+         * Get the number of values.
+         *
+         * @return the number of values
+         */
+        long count() {
+            return count.get();
+        }
+
+        /**
+         * Get the largest value.
+         *
+         * @return the largest value in nanoseconds
+         */
+        long max() {
+            return max.get();
+        }
+
+        /**
+         * Get the mean value.
+         *
+         * @return the mean value in nanoseconds
+         */
+        double mean() {
+            return count.get() == 0 ? 0 : (double) sum.get() / count.get();
+        }
+
+        /**
+         * Get a percentile, as the upper bound of the bucket holding it.
+         *
+         * @param p the percentile, between 0 and 1
+         * @return the value at the percentile in nanoseconds
+         */
+        long percentile(double p) {
+            long target = Math.max(1, (long) Math.ceil(p * count.get())), seen = 0;
+            for (int i = 0; i < counts.length(); i++) {
+                seen += counts.get(i);
+                if (seen >= target) {
+                    int shift = i < 2 * SUB_BUCKETS ? 0 : i / SUB_BUCKETS - 1;
+                    return Math.min(max.get(), ((long) (i - shift * SUB_BUCKETS + 1) << shift) - 1);
+                }
+            }
+            return max.get();
+        }
+    }
+}
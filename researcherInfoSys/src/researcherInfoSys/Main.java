@@ -1,5 +1,9 @@
 package researcherInfoSys;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
 /**
  * Entrance of the program. Initialize the data and provide command line
  * interface for testing.
@@ -9,21 +13,194 @@ package researcherInfoSys;
 public class Main {
 
     /**
-     * Enter into the program.
+     * Enter into the program. Without arguments the command line menu is
+     * shown. Otherwise the arguments select a non-interactive mode:
+     * <ul>
+     * <li><code>sweep TOPICS CLUSTERS [ITERATIONS] [CORES]</code> - run a
+     * {@link ParameterSweep parameter sweep}, where the numbers are given as
+     * <code>from:to:step</code> or <code>a,b,c</code></li>
+     * <li><code>batch QUERIES [OUTPUT] [tsv|json] [THREADS]</code> - run the
+     * {@link BatchQuery batch queries} of a file, writing to the standard
+     * output if OUTPUT is <code>-</code> or missing</li>
+     * <li><code>delta FILE</code> - apply a {@link DeltaUpdate delta file} to
+     * the loaded data, then show the command line menu, where further delta
+     * files can be applied without restarting</li>
+     * <li><code>worker PORT SHARD SHARDS MATRIX</code> - serve one shard of
+     * the topic model saved to MATRIX, see {@link ShardWorker}, without
+     * loading the data file; started by
+     * {@link ShardCoordinator#launch ShardCoordinator.launch}</li>
+     * <li><code>recall [SAMPLES] [K] [PROBES]</code> - print the
+     * {@link RecallReport recall report} of candidate generation</li>
+     * <li><code>sparse [SAMPLES] [K] [M]</code> - print the
+     * {@link RecallReport error report} of sparse topic distributions keeping
+     * M main topics, given as <code>from:to:step</code> or
+     * <code>a,b,c</code></li>
+     * <li><code>quantize [SAMPLES] [K] [CANDIDATES]</code> - print the
+     * {@link RecallReport report} of quantized cosine scans reranking
+     * CANDIDATES researchers exactly</li>
+     * <li><code>budget [SAMPLES] [K] [MICROS]</code> - print the
+     * {@link RecallReport recall report} of queries stopped by deadlines of
+     * MICROS microseconds, given as <code>from:to:step</code> or
+     * <code>a,b,c</code></li>
+     * <li><code>evaluate [SAMPLES] [K] [HOLDOUT] [ITERATIONS]</code> - print
+     * the {@link EvaluationReport quality and latency} of every algorithm on
+     * a held-out fraction HOLDOUT of the interests</li>
+     * <li><code>prune MIN_FREQUENCY [MAX_RATIO] [ITERATIONS]</code> - print
+     * the {@link ParameterSweep#runPruning savings} of vocabulary pruning</li>
+     * <li><code>load open|closed [CONCURRENCY] [RATE] [SECONDS] [MIX]</code> -
+     * replay a mix of tasks 1-6 with a {@link LoadGenerator load generator},
+     * where RATE 0 runs a closed loop back to back and MIX is given as
+     * <code>task:weight,...</code></li>
+     * <li><code>continue ITERATIONS</code> - {@link TopicModel#continueTraining
+     * continue training} the shared topic model for ITERATIONS more
+     * iterations and save it back to the <code>topicMatrixFile</code>, which
+     * must be set</li>
+     * </ul>
      *
      * @param args the command line args
      */
     public static void main(String[] args) {
-        init();
-        Test.showMenu();
+        if (args.length == 0 || !args[0].equalsIgnoreCase("worker")) {
+            init(args.length == 0 || args[0].equalsIgnoreCase("delta"));
+        }
+        if (args.length == 0) {
+            Test.showMenu();
+            return;
+        }
+        switch (args[0].toLowerCase()) {
+            case "sweep":
+                if (args.length < 3) {
+                    System.err.println("Usage: sweep TOPICS CLUSTERS [ITERATIONS] [CORES]");
+                    return;
+                }
+                ParameterSweep.run(ParameterSweep.parseRange(args[1]), ParameterSweep.parseRange(args[2]),
+                        args.length > 3 ? Integer.parseInt(args[3]) : TopicModel.DEFAULT_ITERATIONS,
+                        args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors());
+                break;
+            case "batch":
+                if (args.length < 2) {
+                    System.err.println("Usage: batch QUERIES [OUTPUT] [tsv|json] [THREADS]");
+                    return;
+                }
+                BatchQuery.run(args[1], args.length > 2 ? args[2] : null,
+                        args.length > 3 && args[3].equalsIgnoreCase("json"),
+                        args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors());
+                break;
+            case "delta":
+                if (args.length < 2) {
+                    System.err.println("Usage: delta FILE");
+                    return;
+                }
+                DeltaUpdate.apply(args[1]);
+                Test.showMenu();
+                break;
+            case "worker":
+                if (args.length < 5) {
+                    System.err.println("Usage: worker PORT SHARD SHARDS MATRIX");
+                    return;
+                }
+                TopicModel tm = TopicModel.open(args[4]);
+                if (tm == null) {
+                    return;
+                }
+                try {
+                    new ShardWorker(tm, Integer.parseInt(args[2]), Integer.parseInt(args[3])).serve(Integer.parseInt(args[1]));
+                } catch (IOException e) {
+                    System.err.println("Failed serving shard - " + e.getMessage());
+                }
+                break;
+            case "recall":
+                RecallReport.run(TopicModel.load(), args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                        args.length > 2 ? Integer.parseInt(args[2]) : RecommendResult.DEFAULT_LEN,
+                        args.length > 3 ? Integer.parseInt(args[3]) : TopicIndex.DEFAULT_INDEXED);
+                break;
+            case "sparse":
+                RecallReport.runSparse(TopicModel.load(), args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                        args.length > 2 ? Integer.parseInt(args[2]) : RecommendResult.DEFAULT_LEN,
+                        ParameterSweep.parseRange(args.length > 3 ? args[3] : "2,5,10"));
+                break;
+            case "quantize":
+                RecallReport.runQuantized(TopicModel.load(), args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                        args.length > 2 ? Integer.parseInt(args[2]) : RecommendResult.DEFAULT_LEN,
+                        args.length > 3 ? Integer.parseInt(args[3]) : QuantizedTopicMatrix.DEFAULT_CANDIDATES);
+                break;
+            case "budget":
+                RecallReport.runBudget(TopicModel.load(), args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                        args.length > 2 ? Integer.parseInt(args[2]) : RecommendResult.DEFAULT_LEN,
+                        ParameterSweep.parseRange(args.length > 3 ? args[3] : "100,500,2000,10000"));
+                break;
+            case "continue":
+                if (args.length < 2) {
+                    System.err.println("Usage: continue ITERATIONS");
+                    return;
+                }
+                String matrixFile = Config.getString(Config.TOPIC_MATRIX_FILE, null);
+                if (matrixFile == null) {
+                    System.err.println("Usage: continue ITERATIONS - set topicMatrixFile in " + Config.FILE + " to save the model to");
+                    return;
+                }
+                TopicModel trained = TopicModel.load();
+                System.err.println(String.format("Continuing topic model, log-likelihood %.1f......", trained.getLogLikelihood()));
+                trained = trained.continueTraining(Integer.parseInt(args[1]), (iteration, iterations, logLikelihood)
+                        -> System.err.println(String.format("Iteration %d/%d, log-likelihood %.1f", iteration, iterations, logLikelihood)));
+                trained.storeOffHeap(matrixFile);
+                System.out.println(String.format("Sampled %s more iterations in %.1fs, log-likelihood %.1f", args[1],
+                        trained.getSamplingSeconds(), trained.getLogLikelihood()));
+                break;
+            case "evaluate":
+                EvaluationReport.run(args.length > 1 ? Integer.parseInt(args[1]) : 200,
+                        args.length > 2 ? Integer.parseInt(args[2]) : RecommendResult.DEFAULT_LEN,
+                        args.length > 3 ? Double.parseDouble(args[3]) : EvaluationReport.DEFAULT_HOLDOUT,
+                        args.length > 4 ? Integer.parseInt(args[4]) : TopicModel.DEFAULT_ITERATIONS);
+                break;
+            case "prune":
+                if (args.length < 2) {
+                    System.err.println("Usage: prune MIN_FREQUENCY [MAX_RATIO] [ITERATIONS]");
+                    return;
+                }
+                Researcher.prepareMalletData();
+                ParameterSweep.runPruning(Integer.parseInt(args[1]), args.length > 2 ? Double.parseDouble(args[2]) : 1.0,
+                        args.length > 3 ? Integer.parseInt(args[3]) : TopicModel.DEFAULT_ITERATIONS);
+                break;
+            case "load":
+                LoadGenerator.run(TopicModel.load(), args.length > 1 && args[1].equalsIgnoreCase("open"),
+                        args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors(),
+                        args.length > 3 ? Double.parseDouble(args[3]) : 0, args.length > 4 ? Integer.parseInt(args[4]) : 30,
+                        args.length > 5 ? args[5] : LoadGenerator.DEFAULT_MIX);
+                break;
+            default:
+                System.err.println("Unknown mode - " + args[0]);
+        }
     }
 
     /**
-     * Initialize the data. Display welcome message and load specified Excel
-     * file.
+     * Initialize the data. Display welcome message and load the data file
+     * specified in the settings, the Excel dataset by default.
      */
     public static void init() {
-        System.out.println("\t\t------Welcome to Researcher Recommended System------\n");
-        Input.readFile("data/Dataset_RG.xlsx");
+        init(true);
+    }
+
+    /**
+     * Initialize the data. In the command line menu, display welcome message
+     * and report the loading on the standard output. Otherwise report it on
+     * the standard error, so that the standard output only carries the
+     * results of the mode, such as the lines of a batch run. The deltas
+     * recorded in the <code>deltaLog</code> of the settings are applied again
+     * after the data file is loaded.
+     *
+     * @param interactive is <code>true</code> if the command line menu is
+     * shown
+     */
+    public static void init(boolean interactive) {
+        if (interactive) {
+            System.out.println("\t\t------Welcome to Researcher Recommended System------\n");
+        }
+        PrintStream log = interactive ? System.out : System.err;
+        Input.readFile(Config.getString(Config.DATA_FILE, "data/Dataset_RG.xlsx"), log);
+        String deltaLog = Config.getString(Config.DELTA_LOG, null);
+        if (deltaLog != null && new File(deltaLog).exists()) {
+            DeltaUpdate.apply(deltaLog, log, false);
+        }
     }
 }
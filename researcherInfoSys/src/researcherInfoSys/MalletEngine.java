@@ -0,0 +1,156 @@
+package researcherInfoSys;
+
+import cc.mallet.topics.ParallelTopicModel;
+import cc.mallet.topics.TopicAssignment;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.IDSorter;
+import cc.mallet.types.InstanceList;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.TreeSet;
+
+/**
+ * A {@link TopicEngine topic engine} running Mallet's
+ * <code>ParallelTopicModel</code>, which optimizes the prior over the topics
+ * of an instance during sampling. Sampling continued in several calls to
+ * {@link MalletEngine#estimate(int) estimate} keeps the burn-in and
+ * hyperparameter optimization schedule of a single run, also when resumed
+ * from a {@link Checkpoint checkpoint}. Mallet draws new random numbers for
+ * every call, so a resumed build does not repeat the samples an
+ * uninterrupted one would have drawn.
+ *
+ * @author james
+ */
+public class MalletEngine implements TopicEngine {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The Mallet model.
+     */
+    private final ParallelTopicModel model;
+
+    /**
+     * The burn-in period of a single run.
+     */
+    private final int burninPeriod;
+
+    /**
+     * The number of iterations run so far.
+     */
+    private int done = 0;
+
+    /**
+     * Constructor with parameter, adding instances to a new Mallet model.
+     *
+     * @param instances the instances, whose data are feature sequences
+     * @param topicsNum the number of topics
+     * @param threads the number of sampling threads
+     */
+    public MalletEngine(InstanceList instances, int topicsNum, int threads) {
+        model = new ParallelTopicModel(topicsNum, ALPHA_SUM, BETA);
+        model.addInstances(instances);
+        model.setNumThreads(threads);
+        burninPeriod = model.burninPeriod;
+    }
+
+    /**
+     * Constructor with parameter, wrapping a trained Mallet model.
+     *
+     * @param model the Mallet model
+     */
+    public MalletEngine(ParallelTopicModel model) {
+        this.model = model;
+        burninPeriod = model.burninPeriod;
+        restoreTypeTotals();
+    }
+
+    /**
+     * Restore the number of tokens of each interest after the Mallet model
+     * has been read back. Mallet does not save them, but optimizing the
+     * prior over the interests of a topic needs them.
+     */
+    private void restoreTypeTotals() {
+        int[] typeTotals = new int[model.getAlphabet().size()];
+        int maxTypeCount = 0;
+        for (TopicAssignment document : model.getData()) {
+            FeatureSequence tokens = (FeatureSequence) document.instance.getData();
+            for (int i = 0; i < tokens.getLength(); i++) {
+                maxTypeCount = Math.max(maxTypeCount, ++typeTotals[tokens.getIndexAtPosition(i)]);
+            }
+        }
+        try {
+            Field field = ParallelTopicModel.class.getDeclaredField("typeTotals");
+            field.setAccessible(true);
+            field.set(model, typeTotals);
+            field = ParallelTopicModel.class.getDeclaredField("maxTypeCount");
+            field.setAccessible(true);
+            field.setInt(model, maxTypeCount);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Failed restoring the interest totals of the topic model - " + e);
+        }
+    }
+
+    /**
+     * Read the engine back from a checkpoint.
+     *
+     * @param in the stream
+     * @throws IOException if reading fails
+     * @throws ClassNotFoundException if a class of the stream is missing
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        restoreTypeTotals();
+    }
+
+    @Override
+    public void estimate(int iterations) {
+        model.setNumIterations(iterations);
+        model.setBurninPeriod(Math.max(0, burninPeriod - done));
+        try {
+            model.estimate();
+        } catch (IOException e) {
+            System.err.println("Failed building topic model ");
+        }
+        done += iterations;
+    }
+
+    @Override
+    public int getNumTopics() {
+        return model.getNumTopics();
+    }
+
+    @Override
+    public int getTotalTokens() {
+        return model.totalTokens;
+    }
+
+    @Override
+    public Alphabet getAlphabet() {
+        return model.getAlphabet();
+    }
+
+    @Override
+    public double[] getTopicProbabilities(int instance) {
+        return model.getTopicProbabilities(instance);
+    }
+
+    @Override
+    public ArrayList<TreeSet<IDSorter>> getSortedWords() {
+        return model.getSortedWords();
+    }
+
+    @Override
+    public double modelLogLikelihood() {
+        return model.modelLogLikelihood();
+    }
+
+    @Override
+    public void write(File file) throws IOException {
+        model.write(file);
+    }
+}
@@ -0,0 +1,246 @@
+package researcherInfoSys;
+
+import cc.mallet.topics.ParallelTopicModel;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Builds topic models, and optionally K-means models on top of them, on a
+ * background thread while queries keep being served by the models built
+ * before. A new pair of models is published atomically once it is complete,
+ * so a query never sees a topic model together with a K-means model of
+ * another build. One build runs at a time, it reports its progress and it
+ * can be cancelled, in which case the published models stay in place. A
+ * cancelled build leaves the shared <code>topicMatrixFile</code> alone, and
+ * the outcome of a build is only reported by its {@link #getStatus() state},
+ * so that it never interrupts the command line menu. The mallet data file
+ * is {@link Researcher#prepareMalletData() written} by the first build and
+ * again after the repository changes.
+ *
+ * @author james
+ */
+public class ModelTrainer {
+
+    /**
+     * The time between two checks of the state while waiting for a build, in
+     * milliseconds.
+     */
+    private static final long REPORT_INTERVAL = 1000;
+
+    /**
+     * The executor running the builds.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "model-trainer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The published models.
+     */
+    private volatile Models models = new Models(null, null);
+
+    /**
+     * The running build, <code>null</code> if none has been started.
+     */
+    private Future<?> running = null;
+
+    /**
+     * The state of the current or last build.
+     */
+    private volatile String status = "No model built yet";
+
+    /**
+     * Get the published topic model.
+     *
+     * @return the topic model, or <code>null</code> if none has been built
+     */
+    public TopicModel getTopicModel() {
+        return models.tm;
+    }
+
+    /**
+     * Get the published K-means model.
+     *
+     * @return the K-means model, or <code>null</code> if none has been built
+     */
+    public KmeansModel getKmeansModel() {
+        return models.km;
+    }
+
+    /**
+     * Start building a topic model with the settings of {@link Config the
+     * settings file}, and a K-means model on top of it if required. If no
+     * K-means model is built, the published K-means model, clustered on the
+     * topic distributions of the previous topic model, is withdrawn with it,
+     * and the next query needing one starts a build with K-means.
+     *
+     * @param withKmeans is <code>true</code> to build a K-means model as well
+     * @return the running build, or <code>null</code> if another build is
+     * still running
+     */
+    public synchronized Future<?> rebuild(boolean withKmeans) {
+        if (isRunning()) {
+            return null;
+        }
+        status = "Waiting to start";
+        running = executor.submit(() -> build(withKmeans));
+        return running;
+    }
+
+    /**
+     * Cancel the running build.
+     *
+     * @return <code>true</code> if a build was running
+     */
+    public synchronized boolean cancel() {
+        return isRunning() && running.cancel(true);
+    }
+
+    /**
+     * Check whether a build is running.
+     *
+     * @return <code>true</code> if a build is running
+     */
+    public synchronized boolean isRunning() {
+        return running != null && !running.isDone();
+    }
+
+    /**
+     * Wait for the running build to finish, passing its state to a listener
+     * whenever it changes.
+     *
+     * @param listener the listener of the state, or <code>null</code>
+     * @return <code>true</code> if it finished without failure or
+     * cancellation
+     */
+    public boolean await(Consumer<String> listener) {
+        Future<?> future;
+        synchronized (this) {
+            future = running;
+        }
+        if (future == null) {
+            return false;
+        }
+        String reported = null;
+        while (true) {
+            try {
+                future.get(REPORT_INTERVAL, TimeUnit.MILLISECONDS);
+                return true;
+            } catch (TimeoutException e) {
+                String str = status;
+                if (listener != null && !str.equals(reported)) {
+                    listener.accept(str);
+                    reported = str;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException | CancellationException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Get the state of the current or last build.
+     *
+     * @return the state, as a String
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * Build the models and publish them.
+     *
+     * @param withKmeans is <code>true</code> to build a K-means model as well
+     */
+    private void build(boolean withKmeans) {
+        Level level = ParallelTopicModel.logger.getLevel();
+        ParallelTopicModel.logger.setLevel(Level.WARNING);
+        long start = System.nanoTime();
+        try {
+            status = "Writing mallet data";
+            Set<Integer> staleIds = Researcher.prepareMalletData();
+            int topicsNum = Config.getInt(Config.TOPICS_NUM, 30);
+            TopicModel tm = new TopicModel(topicsNum, TopicModel.DEFAULT_ITERATIONS, 1, (iteration, iterations, logLikelihood)
+                    -> status = String.format("Training topic model (%d topics): iteration %d/%d, log-likelihood %.1f", topicsNum, iteration, iterations, logLikelihood));
+            KmeansModel km = null;
+            if (withKmeans) {
+                checkCancelled();
+                status = "Clustering using K-Means algorithm";
+                km = new KmeansModel(Config.getInt(Config.CLUSTERS_NUM, 100), tm.createArff("data/topicDistribution.arff"));
+            }
+            checkCancelled();
+            String matrixFile = Config.getString(Config.TOPIC_MATRIX_FILE, null);
+            if (matrixFile != null) {
+                status = "Saving topic model to " + matrixFile;
+                tm.storeOffHeap(matrixFile);
+            }
+            tm.publish();
+            if (km != null) {
+                km.publish();
+            }
+            models = new Models(tm, km);
+            Researcher.clearStaleIds(staleIds);
+            status = String.format("Models published after %.1fs, %d of %d interests kept", (System.nanoTime() - start) / 1E9,
+                    tm.getPrunedVocabularySize(), tm.getVocabularySize());
+        } catch (CancellationException e) {
+            status = "Build cancelled, previous models kept - " + e.getMessage();
+            throw e;
+        } catch (RuntimeException e) {
+            status = "Build failed, previous models kept - " + e;
+            throw e;
+        } finally {
+            ParallelTopicModel.logger.setLevel(level);
+        }
+    }
+
+    /**
+     * Stop the build if it has been cancelled.
+     *
+     * @throws CancellationException if the build has been cancelled
+     */
+    private static void checkCancelled() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("cancelled before publishing");
+        }
+    }
+
+    /**
+     * A topic model and a K-means model published together.
+     */
+    private static class Models {
+
+        /**
+         * The topic model.
+         */
+        private final TopicModel tm;
+
+        /**
+         * The K-means model.
+         */
+        private final KmeansModel km;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param tm the topic model
+         * @param km the K-means model
+         */
+        Models(TopicModel tm, KmeansModel km) {
+            this.tm = tm;
+            this.km = km;
+        }
+    }
+}
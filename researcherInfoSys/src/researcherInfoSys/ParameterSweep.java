@@ -0,0 +1,339 @@
+package researcherInfoSys;
+
+import cc.mallet.topics.ParallelTopicModel;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * Trains topic models for a range of topic numbers and K-means models for a
+ * range of cluster numbers concurrently, within a budget of cores. Reports the
+ * quality, the training time and the bytes allocated by the training thread
+ * for each configuration, and persists the best one in
+ * {@link Config the settings file} so that later runs use it.
+ * <p>
+ * The topic models are trained without the interests held out by
+ * {@link EvaluationReport#split(double) the split of the evaluation report},
+ * and the best number of topics is the one whose model predicts the held-out
+ * interests best, that is with the lowest
+ * {@link TopicModel#getHeldOutPerplexity() held-out perplexity}. The
+ * likelihood of the training interests always improves with more topics, so
+ * it is reported but not used to choose.
+ * <p>
+ * Each topic model is trained with a single sampling thread, so the core
+ * budget is the number of models trained at the same time. K-means models of
+ * a topic number are submitted as soon as its topic model is ready.
+ *
+ * @author james
+ */
+public class ParameterSweep {
+
+    /**
+     * String for formatting the output.
+     */
+    private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
+
+    /**
+     * A K-means configuration is considered good enough if its squared error
+     * is within this ratio of the lowest squared error of the sweep. The
+     * fewest clusters among the good ones is chosen, as the squared error
+     * always drops when clusters are added.
+     */
+    private static final double SSE_TOLERANCE = 0.1;
+
+    /**
+     * The file holding the training data of the topic trials.
+     */
+    private static final String DATA_FILE = "data/sweepData.txt";
+
+    /**
+     * Run the sweep and print the report.
+     *
+     * @param topicNums the topic numbers to be tried
+     * @param clusterNums the cluster numbers to be tried for each topic number
+     * @param iterations the number of Gibbs sampling iterations of each model
+     * @param cores the number of models trained at the same time
+     */
+    public static void run(int[] topicNums, int[] clusterNums, int iterations, int cores) {
+        System.out.println(S1 + "Sweeping " + topicNums.length + " topic numbers x " + clusterNums.length + " cluster numbers on " + cores + " cores......");
+        Level level = ParallelTopicModel.logger.getLevel();
+        ParallelTopicModel.logger.setLevel(Level.WARNING);
+        ExecutorService pool = Executors.newFixedThreadPool(cores);
+        CompletionService<Trial> service = new ExecutorCompletionService<>(pool);
+        ArrayList<Trial> topicTrials = new ArrayList<>(), clusterTrials = new ArrayList<>();
+        long start = System.nanoTime();
+        Map<Integer, Set<String>> heldOut = EvaluationReport.split(EvaluationReport.DEFAULT_HOLDOUT);
+        Researcher.createMalletData(DATA_FILE, heldOut);
+        try {
+            for (int topicsNum : topicNums) {
+                service.submit(() -> trainTopicModel(topicsNum, iterations, heldOut));
+            }
+            int pending = topicNums.length;
+            while (pending > 0) {
+                Trial trial = service.take().get();
+                pending--;
+                if (trial.clustersNum == 0) {
+                    topicTrials.add(trial);
+                    if (trial.arffFile != null) {
+                        for (int clustersNum : clusterNums) {
+                            service.submit(() -> trainKmeansModel(trial, clustersNum));
+                            pending++;
+                        }
+                    }
+                } else {
+                    clusterTrials.add(trial);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            System.err.println("Sweep interrupted.");
+        } catch (ExecutionException e) {
+            System.err.println("Sweep failed - " + e.getCause());
+        } finally {
+            pool.shutdownNow();
+            ParallelTopicModel.logger.setLevel(level);
+            new File(DATA_FILE).delete();
+            for (Trial trial : topicTrials) {
+                if (trial.arffFile != null) {
+                    new File(trial.arffFile).delete();
+                }
+            }
+        }
+        System.out.println(S2 + "Sweep finished. Wall time: " + String.format("%.3f", (System.nanoTime() - start) / 1E9) + "s");
+        report(topicTrials, clusterTrials);
+    }
+
+    /**
+     * Train a topic model on all interests and another one on the interests
+     * kept by {@link TopicModel#prune vocabulary pruning}, one after the
+     * other, and print the vocabulary and token reduction and the sampling
+     * speedup. The settings are not changed; set
+     * <code>minInterestFrequency</code> and <code>maxInterestRatio</code> in
+     * {@link Config the settings file} to prune from then on. The mallet data
+     * file must have been written by
+     * {@link Researcher#createMalletData() createMalletData}.
+     *
+     * @param minFrequency the minimum number of researchers of an interest
+     * @param maxRatio the maximum ratio of researchers of an interest
+     * @param iterations the number of Gibbs sampling iterations of each model
+     */
+    public static void runPruning(int minFrequency, double maxRatio, int iterations) {
+        System.out.println(S1 + "Training with and without pruning interests of fewer than " + minFrequency
+                + " researchers or more than " + maxRatio * 100 + "% of them......");
+        Level level = ParallelTopicModel.logger.getLevel();
+        ParallelTopicModel.logger.setLevel(Level.WARNING);
+        int topicsNum = Config.getInt(Config.TOPICS_NUM, 30);
+        TopicModel full, pruned;
+        try {
+            full = new TopicModel("data/malletData.txt", Collections.emptyMap(), 1, 1.0, topicsNum, iterations, 1, null);
+            pruned = new TopicModel("data/malletData.txt", Collections.emptyMap(), minFrequency, maxRatio, topicsNum, iterations, 1, null);
+        } finally {
+            ParallelTopicModel.logger.setLevel(level);
+        }
+        System.out.println(S2 + "Vocabulary pruning, " + topicsNum + " topics, " + iterations + " iterations");
+        System.out.println(S3 + String.format("%-8s %12s %12s %12s %16s %10s", "Model", "Vocabulary", "Tokens", "Sampling(s)", "TrainPerplexity", "Speedup"));
+        for (TopicModel tm : new TopicModel[]{full, pruned}) {
+            System.out.println(S3 + String.format("%-8s %12d %12d %12.3f %16.2f %9.2fx", tm == full ? "Full" : "Pruned",
+                    tm.getPrunedVocabularySize(), tm.getPrunedTokenNum(), tm.getSamplingSeconds(), tm.getTrainingPerplexity(),
+                    full.getSamplingSeconds() / Math.max(1E-9, tm.getSamplingSeconds())));
+        }
+        System.out.println(S3 + String.format("Vocabulary -%.1f%%, tokens -%.1f%%",
+                100.0 * (1 - (double) pruned.getPrunedVocabularySize() / Math.max(1, pruned.getVocabularySize())),
+                100.0 * (1 - (double) pruned.getPrunedTokenNum() / Math.max(1, pruned.getTokenNum()))));
+    }
+
+    /**
+     * Train a topic model without the held-out interests, measure its
+     * held-out perplexity and write its topic distributions to a private Arff
+     * file for the K-means trials.
+     *
+     * @param topicsNum the number of topics
+     * @param iterations the number of Gibbs sampling iterations
+     * @param heldOut the interests left out of the training data, in lower
+     * case, by researcher id
+     * @return the trial result
+     */
+    private static Trial trainTopicModel(int topicsNum, int iterations, Map<Integer, Set<String>> heldOut) {
+        Trial trial = new Trial(topicsNum, 0);
+        long allocated = allocatedBytes(), start = System.nanoTime();
+        TopicModel tm = new TopicModel(DATA_FILE, heldOut, Config.getInt(Config.MIN_INTEREST_FREQUENCY, 1),
+                Config.getDouble(Config.MAX_INTEREST_RATIO, 1.0), topicsNum, iterations, 1, null);
+        trial.seconds = (System.nanoTime() - start) / 1E9;
+        trial.quality = tm.getLogLikelihood();
+        trial.perplexity = tm.getHeldOutPerplexity();
+        trial.arffFile = "data/sweep_" + topicsNum + ".arff";
+        trial.catalog = tm.createArff(trial.arffFile);
+        trial.allocatedMegabytes = (allocatedBytes() - allocated) / 1048576.0;
+        return trial;
+    }
+
+    /**
+     * Cluster the topic distributions of a topic trial.
+     *
+     * @param topicTrial the finished topic trial
+     * @param clustersNum the number of clusters
+     * @return the trial result
+     */
+    private static Trial trainKmeansModel(Trial topicTrial, int clustersNum) {
+        Trial trial = new Trial(topicTrial.topicsNum, clustersNum);
+        long allocated = allocatedBytes(), start = System.nanoTime();
+        KmeansModel km = new KmeansModel(clustersNum, topicTrial.catalog, topicTrial.arffFile);
+        trial.seconds = (System.nanoTime() - start) / 1E9;
+        trial.quality = km.getSquaredError();
+        trial.allocatedMegabytes = (allocatedBytes() - allocated) / 1048576.0;
+        return trial;
+    }
+
+    /**
+     * Print the report of all trials, choose the best configuration and
+     * persist it.
+     *
+     * @param topicTrials the finished topic trials
+     * @param clusterTrials the finished K-means trials
+     */
+    private static void report(ArrayList<Trial> topicTrials, ArrayList<Trial> clusterTrials) {
+        topicTrials.sort((a, b) -> Integer.compare(a.topicsNum, b.topicsNum));
+        clusterTrials.sort((a, b) -> a.topicsNum != b.topicsNum ? Integer.compare(a.topicsNum, b.topicsNum) : Integer.compare(a.clustersNum, b.clustersNum));
+        Trial bestTopic = null;
+        System.out.println(S2 + "Topic models");
+        System.out.println(S3 + String.format("%8s %16s %18s %10s %16s", "Topics", "TrainLogLik", "HeldOutPerplexity", "Time(s)", "ThreadAlloc(MB)"));
+        for (Trial t : topicTrials) {
+            System.out.println(S3 + String.format("%8d %16.1f %18.2f %10.3f %16.1f", t.topicsNum, t.quality, t.perplexity, t.seconds, t.allocatedMegabytes));
+            if (!Double.isNaN(t.perplexity) && (bestTopic == null || t.perplexity < bestTopic.perplexity)) {
+                bestTopic = t;
+            }
+        }
+        if (bestTopic == null) {
+            System.out.println(S2 + "No topic model was trained, settings unchanged.");
+            return;
+        }
+        Trial bestCluster = null;
+        double minError = Double.POSITIVE_INFINITY;
+        System.out.println(S2 + "K-means models");
+        System.out.println(S3 + String.format("%8s %8s %16s %10s %16s", "Topics", "Clusters", "SquaredError", "Time(s)", "ThreadAlloc(MB)"));
+        for (Trial t : clusterTrials) {
+            System.out.println(S3 + String.format("%8d %8d %16.4f %10.3f %16.1f", t.topicsNum, t.clustersNum, t.quality, t.seconds, t.allocatedMegabytes));
+            if (t.topicsNum == bestTopic.topicsNum && !Double.isNaN(t.quality)) {
+                minError = Math.min(minError, t.quality);
+            }
+        }
+        for (Trial t : clusterTrials) {
+            if (t.topicsNum == bestTopic.topicsNum && t.quality <= minError * (1 + SSE_TOLERANCE)) {
+                bestCluster = t;
+                break;
+            }
+        }
+        Config.set(Config.TOPICS_NUM, bestTopic.topicsNum);
+        String str = S2 + "Best configuration: " + bestTopic.topicsNum + " topics";
+        if (bestCluster != null) {
+            Config.set(Config.CLUSTERS_NUM, bestCluster.clustersNum);
+            str += ", " + bestCluster.clustersNum + " clusters";
+        }
+        Config.save();
+        System.out.println(str + " (saved to " + Config.FILE + ")");
+    }
+
+    /**
+     * Get the number of bytes allocated so far by the current thread, if the
+     * JVM supports measuring it.
+     *
+     * @return the allocated bytes, 0 if not supported
+     */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    /**
+     * Parse a range of integers written as <code>from:to:step</code>, or a
+     * comma separated list such as <code>10,20,40</code>.
+     *
+     * @param str the range to be parsed
+     * @return the integers in the range
+     */
+    public static int[] parseRange(String str) {
+        if (str.contains(":")) {
+            String[] parts = str.split(":");
+            int from = Integer.parseInt(parts[0].trim()), to = Integer.parseInt(parts[1].trim());
+            int step = parts.length > 2 ? Integer.parseInt(parts[2].trim()) : 1;
+            if (step <= 0 || to < from) {
+                throw new IllegalArgumentException("Invalid range - " + str);
+            }
+            int[] values = new int[(to - from) / step + 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = from + i * step;
+            }
+            return values;
+        }
+        String[] parts = str.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * The result of training one configuration.
+     */
+    private static class Trial {
+
+        /**
+         * The number of topics, and the number of clusters which is 0 for a
+         * topic model trial.
+         */
+        private final int topicsNum, clustersNum;
+
+        /**
+         * The training log-likelihood of a topic model, or the squared error
+         * of a K-means model.
+         */
+        private double quality = Double.NaN;
+
+        /**
+         * The held-out perplexity of a topic model.
+         */
+        private double perplexity = Double.NaN;
+
+        /**
+         * The training time in seconds, and the megabytes allocated by the
+         * training thread, which counts garbage as well and is not the
+         * memory retained by the model.
+         */
+        private double seconds, allocatedMegabytes;
+
+        /**
+         * The Arff file written by a topic model trial.
+         */
+        private String arffFile;
+
+        /**
+         * The researcher catalog of the Arff file.
+         */
+        private Researcher[] catalog;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param topicsNum the number of topics
+         * @param clustersNum the number of clusters, 0 for a topic model trial
+         */
+        Trial(int topicsNum, int clustersNum) {
+            this.topicsNum = topicsNum;
+            this.clustersNum = clustersNum;
+        }
+    }
+}
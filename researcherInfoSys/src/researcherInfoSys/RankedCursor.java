@@ -0,0 +1,185 @@
+package researcherInfoSys;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Researchers recommended by a topic model to a specified researcher,
+ * produced lazily in ranking order, for paging beyond the top
+ * {@link RecommendResult#DEFAULT_LEN DEFAULT_LEN}. Every row is scored once
+ * when the cursor is opened and the rows are arranged into a binary heap in
+ * linear time; each researcher then costs one removal from the heap,
+ * <code>O(log n)</code>, so a page of <code>p</code> researchers costs
+ * <code>O(p log n)</code> instead of a new scan. Researchers come in exactly
+ * the order of a scan, ties in row order, and the owner is included as it is
+ * in a scan.
+ * <p>
+ * A cursor is not thread-safe. It ranks the model it was opened on and skips
+ * researchers removed since the model was built.
+ *
+ * @author james
+ */
+public class RankedCursor implements Iterator<Researcher> {
+
+    /**
+     * The topic model resolving rows to researchers.
+     */
+    private final TopicModel tm;
+
+    /**
+     * The specified researcher requiring recommendation.
+     */
+    private final Researcher owner;
+
+    /**
+     * The algorithm used to measure similarity.
+     */
+    private final Algorithm algorithm;
+
+    /**
+     * The score of every row.
+     */
+    private final double[] scores;
+
+    /**
+     * The rows not produced yet, as a heap whose first row ranks first.
+     */
+    private final int[] heap;
+    private int size;
+
+    /**
+     * The next researcher and its score, <code>null</code> if not looked up
+     * yet.
+     */
+    private Researcher next = null;
+    private double nextValue;
+
+    /**
+     * The indicator value of the last researcher produced.
+     */
+    private double value = Double.NaN;
+
+    /**
+     * The number of researchers produced so far.
+     */
+    private int position = 0;
+
+    /**
+     * Constructor with parameter, arranging scored rows into a heap.
+     *
+     * @param tm the topic model resolving rows to researchers
+     * @param owner the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param scores the score of every row
+     */
+    RankedCursor(TopicModel tm, Researcher owner, Algorithm algorithm, double[] scores) {
+        this.tm = tm;
+        this.owner = owner;
+        this.algorithm = algorithm;
+        this.scores = scores;
+        size = scores.length;
+        heap = new int[size];
+        for (int i = 0; i < size; i++) {
+            heap[i] = i;
+        }
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (next == null && size > 0) {
+            int row = heap[0];
+            heap[0] = heap[--size];
+            siftDown(0);
+            next = tm.getResearcher(row);
+            nextValue = scores[row];
+        }
+        return next != null;
+    }
+
+    @Override
+    public Researcher next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Researcher r = next;
+        next = null;
+        value = nextValue;
+        position++;
+        return r;
+    }
+
+    /**
+     * Get the indicator value of the last researcher produced by
+     * {@link RankedCursor#next() next}.
+     *
+     * @return the indicator value, <code>NaN</code> before the first one
+     */
+    public double getValue() {
+        return value;
+    }
+
+    /**
+     * Get the number of researchers produced so far, that is the rank of the
+     * last one.
+     *
+     * @return the number of researchers produced
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * Get the next page of researchers.
+     *
+     * @param len the number of researchers of the page
+     * @return the page, shorter than <code>len</code> at the end of the
+     * ranking
+     */
+    public RecommendResult nextPage(int len) {
+        RecommendResult page = new RecommendResult(owner, algorithm, len);
+        while (page.size() < len && hasNext()) {
+            page.add(next(), value);
+        }
+        return page;
+    }
+
+    /**
+     * Check whether a row ranks before another one.
+     *
+     * @param a a row
+     * @param b another row
+     * @return <code>true</code> if row <code>a</code> ranks first
+     */
+    private boolean before(int a, int b) {
+        int c = Double.compare(scores[a], scores[b]);
+        if (c != 0) {
+            return algorithm.isAscend() ? c < 0 : c > 0;
+        }
+        return a < b;
+    }
+
+    /**
+     * Move the row at a position of the heap down until both rows below it
+     * rank after it.
+     *
+     * @param i the position in the heap
+     */
+    private void siftDown(int i) {
+        int row = heap[i];
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], row)) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = row;
+    }
+}
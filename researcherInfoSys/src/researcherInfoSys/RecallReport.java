@@ -0,0 +1,276 @@
+package researcherInfoSys;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Measures what the approximations of the topic model cost in accuracy and
+ * save in latency, against a sample of researchers:
+ * <ul>
+ * <li>for {@link TopicIndex candidate generation}, the top <code>K</code> of a
+ * full scan is compared with the top <code>K</code> of the candidates found
+ * by probing 1, 2, ... main topics, for every topic model algorithm</li>
+ * <li>for {@link SparseTopicMatrix sparse topic distributions}, the cosine and
+ * KL scores of every row are compared with the dense scores, for several
+ * numbers of topics kept</li>
+ * <li>for {@link QuantizedTopicMatrix quantized topic distributions}, the
+ * cosine results after exact reranking are compared with a full scan, for
+ * every encoding</li>
+ * <li>for {@link Budget budgeted} queries, the results found before the
+ * deadline are compared with a full scan, for several deadlines</li>
+ * </ul>
+ *
+ * @author james
+ */
+public class RecallReport {
+
+    /**
+     * String for formatting the output.
+     */
+    private static final String S2 = "  ✔     ", S3 = "        ";
+
+    /**
+     * Algorithms measured.
+     */
+    private static final Algorithm[] ALGORITHMS = {Algorithm.PROBABILITY, Algorithm.KL, Algorithm.JS, Algorithm.COSINE};
+
+    /**
+     * Run the measurement and print the report.
+     *
+     * @param tm the topic model
+     * @param samples the number of researchers sampled, evenly spread over
+     * the rows of the model
+     * @param k the number of researchers recommended
+     * @param maxProbe the largest number of main topics probed
+     */
+    public static void run(TopicModel tm, int samples, int k, int maxProbe) {
+        ArrayList<Researcher> sample = sample(tm, samples);
+        if (sample.isEmpty()) {
+            System.out.println(S2 + "No researcher to sample.");
+            return;
+        }
+        TopicIndex index = tm.getTopicIndex();
+        System.out.println(S2 + "Recall of candidate generation against a full scan, " + sample.size() + " researchers, top " + k
+                + ", " + index.getIndexed() + " main topics indexed");
+        System.out.println(S3 + String.format("%-12s %6s %10s %14s %10s %12s %8s", "Algorithm", "Probe", "Recall", "Candidates(%)", "Full(ms)", "Indexed(ms)", "Speedup"));
+        for (Algorithm algorithm : ALGORITHMS) {
+            ArrayList<RecommendResult> exact = new ArrayList<>();
+            long fullNanos = 0;
+            for (Researcher r : sample) {
+                long start = System.nanoTime();
+                exact.add(tm.getShardResult(r, algorithm, k, 0, 1));
+                fullNanos += System.nanoTime() - start;
+            }
+            for (int probe = 1; probe <= Math.min(maxProbe, tm.getTopicsNum()); probe++) {
+                long nanos = 0, candidates = 0;
+                int found = 0, expected = 0;
+                for (int i = 0; i < sample.size(); i++) {
+                    Researcher r = sample.get(i);
+                    long start = System.nanoTime();
+                    RecommendResult result = tm.getCandidateResult(r, algorithm, k, probe);
+                    nanos += System.nanoTime() - start;
+                    candidates += index.getCandidates(tm.getTopicDistribution(r.getName(), r.getId(), false), probe, k + 1).length;
+                    HashSet<Researcher> top = new HashSet<>(exact.get(i).getResearchers());
+                    expected += top.size();
+                    for (Researcher other : result.getResearchers()) {
+                        if (top.contains(other)) {
+                            found++;
+                        }
+                    }
+                }
+                System.out.println(S3 + String.format("%-12s %6d %10.4f %14.2f %10.3f %12.3f %7.1fx", algorithm.name(), probe,
+                        expected == 0 ? 1 : (double) found / expected, 100.0 * candidates / sample.size() / tm.size(),
+                        fullNanos / 1E6 / sample.size(), nanos / 1E6 / sample.size(), (double) fullNanos / Math.max(1, nanos)));
+            }
+        }
+    }
+
+    /**
+     * Measure the sparse approximation and print the report.
+     *
+     * @param tm the topic model
+     * @param samples the number of researchers sampled, evenly spread over
+     * the rows of the model
+     * @param k the number of researchers recommended
+     * @param ms the numbers of topics kept to be measured
+     */
+    public static void runSparse(TopicModel tm, int samples, int k, int[] ms) {
+        ArrayList<Researcher> sample = sample(tm, samples);
+        if (sample.isEmpty()) {
+            System.out.println(S2 + "No researcher to sample.");
+            return;
+        }
+        TopicMatrix matrix = tm.getTopicMatrix();
+        DivergenceEngine engine = new DivergenceEngine(matrix);
+        System.out.println(S2 + "Error of sparse topic distributions against dense ones, " + sample.size() + " researchers, top " + k
+                + ", dense rows take " + String.format("%.1f", (double) matrix.size() * matrix.getTopicsNum() * 8 / 1048576) + "MB");
+        System.out.println(S3 + String.format("%-8s %4s %12s %12s %10s %10s %10s %10s", "Kernel", "m", "MeanError", "MaxError", "Recall",
+                "Dense(ms)", "Sparse(ms)", "Size(MB)"));
+        for (Algorithm algorithm : new Algorithm[]{Algorithm.COSINE, Algorithm.KL}) {
+            for (int m : ms) {
+                SparseTopicMatrix sparse = new SparseTopicMatrix(matrix, m);
+                double sumError = 0, maxError = 0;
+                long denseNanos = 0, sparseNanos = 0, scores = 0;
+                int found = 0, expected = 0;
+                for (Researcher r : sample) {
+                    double[] p = tm.getTopicDistribution(r.getName(), r.getId(), false);
+                    double pEntropy = DivergenceEngine.calEntropy(p), pNorm = SparseTopicMatrix.calNorm(p);
+                    double[] dense = new double[matrix.size()], approx = new double[matrix.size()];
+                    long start = System.nanoTime();
+                    for (int row = 0; row < matrix.size(); row++) {
+                        dense[row] = algorithm == Algorithm.KL ? engine.calKL(p, pEntropy, row) : matrix.calCosineSimilarity(p, row);
+                    }
+                    denseNanos += System.nanoTime() - start;
+                    start = System.nanoTime();
+                    for (int row = 0; row < matrix.size(); row++) {
+                        approx[row] = algorithm == Algorithm.KL ? sparse.calKL(p, pEntropy, row) : sparse.calCosineSimilarity(p, pNorm, row);
+                    }
+                    sparseNanos += System.nanoTime() - start;
+                    RecommendResult exact = new RecommendResult(r, algorithm, k), result = new RecommendResult(r, algorithm, k);
+                    for (int row = 0; row < matrix.size(); row++) {
+                        double error = Math.abs(dense[row] - approx[row]);
+                        sumError += error;
+                        maxError = Math.max(maxError, error);
+                        scores++;
+                        Researcher other = tm.getResearcher(row);
+                        if (other != null) {
+                            exact.add(other, dense[row]);
+                            result.add(other, approx[row]);
+                        }
+                    }
+                    HashSet<Researcher> top = new HashSet<>(exact.getResearchers());
+                    expected += top.size();
+                    for (Researcher other : result.getResearchers()) {
+                        if (top.contains(other)) {
+                            found++;
+                        }
+                    }
+                }
+                System.out.println(S3 + String.format("%-8s %4d %12.6f %12.6f %10.4f %10.3f %10.3f %10.1f", algorithm.name(), sparse.getM(),
+                        sumError / Math.max(1, scores), maxError, expected == 0 ? 1 : (double) found / expected,
+                        denseNanos / 1E6 / sample.size(), sparseNanos / 1E6 / sample.size(), sparse.getBytes() / 1048576.0));
+            }
+        }
+    }
+
+    /**
+     * Measure the quantized scan with exact reranking and print the report.
+     *
+     * @param tm the topic model
+     * @param samples the number of researchers sampled, evenly spread over
+     * the rows of the model
+     * @param k the number of researchers recommended
+     * @param candidates the number of candidates reranked exactly
+     */
+    public static void runQuantized(TopicModel tm, int samples, int k, int candidates) {
+        ArrayList<Researcher> sample = sample(tm, samples);
+        if (sample.isEmpty()) {
+            System.out.println(S2 + "No researcher to sample.");
+            return;
+        }
+        TopicMatrix matrix = tm.getTopicMatrix();
+        System.out.println(S2 + "Quantized cosine scan against a full scan, " + sample.size() + " researchers, top " + k + ", "
+                + candidates + " candidates reranked, dense rows take "
+                + String.format("%.1f", (double) matrix.size() * matrix.getTopicsNum() * 8 / 1048576) + "MB");
+        System.out.println(S3 + String.format("%-8s %10s %10s %10s %10s %12s %10s %10s", "Encoding", "MaxBound", "Identical",
+                "ExtraRows", "Full(ms)", "Reranked(ms)", "Size(MB)", "Saving"));
+        ArrayList<RecommendResult> exact = new ArrayList<>();
+        long fullNanos = 0;
+        for (Researcher r : sample) {
+            long start = System.nanoTime();
+            exact.add(tm.getShardResult(r, Algorithm.COSINE, k, 0, 1));
+            fullNanos += System.nanoTime() - start;
+        }
+        for (QuantizedTopicMatrix.Encoding encoding : QuantizedTopicMatrix.Encoding.values()) {
+            QuantizedTopicMatrix quantized = new QuantizedTopicMatrix(matrix, encoding);
+            double maxBound = 0;
+            for (int row = 0; row < quantized.size(); row++) {
+                maxBound = Math.max(maxBound, quantized.getBound(row));
+            }
+            long extraRows = tm.getRerankExtraRows(), nanos = 0;
+            int identical = 0;
+            for (int i = 0; i < sample.size(); i++) {
+                long start = System.nanoTime();
+                RecommendResult result = tm.getQuantizedResult(sample.get(i), k, quantized, candidates);
+                nanos += System.nanoTime() - start;
+                if (result.getResearchers().equals(exact.get(i).getResearchers()) && result.getValues().equals(exact.get(i).getValues())) {
+                    identical++;
+                }
+            }
+            System.out.println(S3 + String.format("%-8s %10.6f %10d %10.1f %10.3f %12.3f %10.1f %9.1fx", encoding.name(), maxBound, identical,
+                    (double) (tm.getRerankExtraRows() - extraRows) / sample.size(), fullNanos / 1E6 / sample.size(), nanos / 1E6 / sample.size(),
+                    quantized.getBytes() / 1048576.0, (double) matrix.size() * matrix.getTopicsNum() * 8 / quantized.getBytes()));
+        }
+    }
+
+    /**
+     * Measure queries stopped by a deadline and print the report.
+     *
+     * @param tm the topic model
+     * @param samples the number of researchers sampled, evenly spread over
+     * the rows of the model
+     * @param k the number of researchers recommended
+     * @param micros the deadlines to be measured in microseconds
+     */
+    public static void runBudget(TopicModel tm, int samples, int k, int[] micros) {
+        ArrayList<Researcher> sample = sample(tm, samples);
+        if (sample.isEmpty()) {
+            System.out.println(S2 + "No researcher to sample.");
+            return;
+        }
+        System.out.println(S2 + "Recall of queries stopped by a deadline against a full scan, " + sample.size() + " researchers, top " + k);
+        System.out.println(S3 + String.format("%-12s %10s %10s %10s %10s %10s %10s", "Algorithm", "Deadline", "Recall", "Coverage(%)",
+                "Complete", "Mean(ms)", "Max(ms)"));
+        for (Algorithm algorithm : ALGORITHMS) {
+            ArrayList<RecommendResult> exact = new ArrayList<>();
+            for (Researcher r : sample) {
+                exact.add(tm.getShardResult(r, algorithm, k, 0, 1));
+            }
+            for (int deadline : micros) {
+                long nanos = 0, maxNanos = 0;
+                double coverage = 0;
+                int found = 0, expected = 0, complete = 0;
+                for (int i = 0; i < sample.size(); i++) {
+                    long start = System.nanoTime();
+                    RecommendResult result = tm.getBudgetResult(sample.get(i), algorithm, k, new Budget(deadline * 1000L, 0));
+                    long elapsed = System.nanoTime() - start;
+                    nanos += elapsed;
+                    maxNanos = Math.max(maxNanos, elapsed);
+                    coverage += result.getCoverage();
+                    if (result.isComplete()) {
+                        complete++;
+                    }
+                    HashSet<Researcher> top = new HashSet<>(exact.get(i).getResearchers());
+                    expected += top.size();
+                    for (Researcher other : result.getResearchers()) {
+                        if (top.contains(other)) {
+                            found++;
+                        }
+                    }
+                }
+                System.out.println(S3 + String.format("%-12s %8dus %10.4f %11.2f %10d %10.3f %10.3f", algorithm.name(), deadline,
+                        expected == 0 ? 1 : (double) found / expected, 100 * coverage / sample.size(), complete,
+                        nanos / 1E6 / sample.size(), maxNanos / 1E6));
+            }
+        }
+    }
+
+    /**
+     * Pick researchers evenly spread over the rows of a model.
+     *
+     * @param tm the topic model
+     * @param samples the number of researchers
+     * @return the researchers picked
+     */
+    private static ArrayList<Researcher> sample(TopicModel tm, int samples) {
+        ArrayList<Researcher> sample = new ArrayList<>();
+        int step = Math.max(1, tm.size() / Math.max(1, samples));
+        for (int row = 0; row < tm.size() && sample.size() < samples; row += step) {
+            Researcher r = tm.getResearcher(row);
+            if (r != null) {
+                sample.add(r);
+            }
+        }
+        return sample;
+    }
+}
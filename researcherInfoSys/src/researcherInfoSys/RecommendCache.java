@@ -0,0 +1,241 @@
+package researcherInfoSys;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded, thread-safe cache of {@link RecommendResult recommendation
+ * results} sitting in front of all recommendation algorithms. Results are
+ * keyed by researcher id, algorithm, the number of researchers recommended and
+ * the version of the model which produced them. The least recently used
+ * result is evicted once the cache is full. Only the results of the models
+ * currently serving queries are kept: all results of a model are dropped
+ * when a new model of the same kind is published, and results of an older
+ * model put afterwards by a scan still in flight are ignored.
+ *
+ * @author james
+ */
+public class RecommendCache {
+
+    /**
+     * The default maximum number of results kept in the cache.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The maximum number of results kept in the cache.
+     */
+    private static int capacity = DEFAULT_CAPACITY;
+
+    /**
+     * The cached results, in access order so that the eldest entry is the
+     * least recently used one.
+     */
+    private static final LinkedHashMap<Key, RecommendResult> CACHE = new LinkedHashMap<Key, RecommendResult>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, RecommendResult> eldest) {
+            if (size() > capacity) {
+                evictions++;
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Generator of model versions, shared by all kinds of models.
+     */
+    private static final AtomicInteger VERSION = new AtomicInteger();
+
+    /**
+     * The version of the published model running each algorithm.
+     */
+    private static final EnumMap<Algorithm, Integer> CURRENT = new EnumMap<>(Algorithm.class);
+
+    /**
+     * Statistics of the cache.
+     */
+    private static long hits = 0, misses = 0, evictions = 0, invalidations = 0;
+
+    /**
+     * Get a cached result.
+     *
+     * @param researcherId the id of the researcher needing recommendation
+     * @param algorithm the algorithm used for recommendation
+     * @param k the number of researchers to be recommended
+     * @param version the version of the model producing the result
+     * @return the cached result, or <code>null</code> if it is not cached
+     */
+    public static synchronized RecommendResult get(int researcherId, Algorithm algorithm, int k, int version) {
+        RecommendResult result = CACHE.get(new Key(researcherId, algorithm, k, version));
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    /**
+     * Put a result into the cache, evicting the least recently used result if
+     * the cache is full. The result is ignored unless its model is the
+     * published model of its algorithm.
+     *
+     * @param researcherId the id of the researcher needing recommendation
+     * @param k the number of researchers to be recommended
+     * @param version the version of the model producing the result
+     * @param result the result to be cached
+     */
+    public static synchronized void put(int researcherId, int k, int version, RecommendResult result) {
+        Integer current = CURRENT.get(result.getAlgorithm());
+        if (current == null || current != version) {
+            return;
+        }
+        CACHE.put(new Key(researcherId, result.getAlgorithm(), k, version), result);
+    }
+
+    /**
+     * Assign a new version to a model which starts serving queries, and drop
+     * all cached results produced by earlier models running the same
+     * algorithms. Models built for evaluation or comparison are not
+     * published, so they leave the cache of the serving models alone.
+     *
+     * @param algorithms the algorithms provided by the model
+     * @return the version of the new model
+     */
+    public static synchronized int publish(Algorithm... algorithms) {
+        int version = VERSION.incrementAndGet();
+        List<Algorithm> algorithmList = Arrays.asList(algorithms);
+        for (Algorithm algorithm : algorithms) {
+            CURRENT.put(algorithm, version);
+        }
+        Iterator<Key> iter = CACHE.keySet().iterator();
+        while (iter.hasNext()) {
+            if (algorithmList.contains(iter.next().algorithm)) {
+                iter.remove();
+                invalidations++;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Drop the cached results which a {@link DeltaUpdate delta update} of
+     * some researchers can change: those recommending to one of them, whose
+     * interests or presence changed, and those recommending one of them,
+     * which may have been removed. Other results stay cached. Statistics are
+     * kept.
+     *
+     * @param researcherIds the ids of the researchers added, modified or
+     * removed
+     */
+    public static synchronized void invalidate(Set<Integer> researcherIds) {
+        Iterator<Map.Entry<Key, RecommendResult>> iter = CACHE.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Key, RecommendResult> entry = iter.next();
+            boolean affected = researcherIds.contains(entry.getKey().researcherId);
+            for (int i = 0; i < entry.getValue().size() && !affected; i++) {
+                affected = researcherIds.contains(entry.getValue().getResearchers().get(i).getId());
+            }
+            if (affected) {
+                iter.remove();
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Set the maximum number of results kept in the cache, evicting the least
+     * recently used results if necessary.
+     *
+     * @param newCapacity the new capacity, 0 to disable caching
+     */
+    public static synchronized void setCapacity(int newCapacity) {
+        capacity = Math.max(0, newCapacity);
+        Iterator<Key> iter = CACHE.keySet().iterator();
+        while (CACHE.size() > capacity && iter.hasNext()) {
+            iter.next();
+            iter.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove all cached results and reset the statistics.
+     */
+    public static synchronized void clear() {
+        CACHE.clear();
+        hits = misses = evictions = invalidations = 0;
+    }
+
+    /**
+     * Get the hit rate of the cache.
+     *
+     * @return the ratio of hits in all lookups, 0 if no lookup happened
+     */
+    public static synchronized double getHitRate() {
+        return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+    }
+
+    /**
+     * Get a summary of the cache statistics.
+     *
+     * @return the cache statistics, as a String
+     */
+    public static synchronized String getStatistics() {
+        return String.format("Cache: %d/%d entries, %d hits, %d misses (hit rate %.1f%%), %d evicted, %d invalidated",
+                CACHE.size(), capacity, hits, misses, getHitRate() * 100, evictions, invalidations);
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    private static class Key {
+
+        /**
+         * The id of the researcher, the number of researchers recommended and
+         * the model version.
+         */
+        private final int researcherId, k, version;
+
+        /**
+         * The algorithm used for recommendation.
+         */
+        private final Algorithm algorithm;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param researcherId the id of the researcher
+         * @param algorithm the algorithm used for recommendation
+         * @param k the number of researchers to be recommended
+         * @param version the version of the model
+         */
+        Key(int researcherId, Algorithm algorithm, int k, int version) {
+            this.researcherId = researcherId;
+            this.algorithm = algorithm;
+            this.k = k;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return researcherId == key.researcherId && k == key.k && version == key.version && algorithm == key.algorithm;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((researcherId * 31 + k) * 31 + version) * 31 + algorithm.ordinal();
+        }
+    }
+}
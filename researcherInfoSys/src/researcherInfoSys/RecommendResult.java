@@ -0,0 +1,187 @@
+package researcherInfoSys;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores the recommended researchers list and indicator value of each
+ * researcher, keeping only the best <code>K</code> researchers. Instances are
+ * shared through {@link RecommendCache the recommendation cache} once built,
+ * so only the scans of this package fill them, and callers see them read
+ * only.
+ *
+ * @author james
+ */
+public class RecommendResult {
+
+    /**
+     * The default number of researchers to be recommended.
+     */
+    public static final int DEFAULT_LEN = 5;
+
+    /**
+     * The algorithm used to produce this result.
+     */
+    private final Algorithm algorithm;
+
+    /**
+     * The specified researcher needing for recommendation.
+     */
+    private final Researcher owner;
+
+    /**
+     * The number of researchers to be recommended.
+     */
+    private final int len;
+
+    /**
+     * List of researchers to be recommended.
+     */
+    private final ArrayList<Researcher> recommendList = new ArrayList<>();
+
+    /**
+     * The indicator value of each researcher.
+     */
+    private final ArrayList<Double> valueList = new ArrayList<>();
+
+    /**
+     * The fraction of the candidates scored, less than 1 if a
+     * {@link Budget budget} stopped the query early.
+     */
+    private double coverage = 1;
+
+    /**
+     * Constructor with parameter, constructing a new
+     * <code>RecommendResult</code> instance with the specified researcher, the
+     * algorithm and the number of researchers to be recommended.
+     *
+     * @param owner the specified researcher
+     * @param algorithm the algorithm used for recommendation
+     * @param len the number of researchers to be recommended
+     */
+    public RecommendResult(Researcher owner, Algorithm algorithm, int len) {
+        this.owner = owner;
+        this.algorithm = algorithm;
+        this.len = len;
+    }
+
+    /**
+     * Insert a researcher to the appropriate position in the list. Researchers
+     * with an equal indicator value keep the order they were inserted in.
+     *
+     * @param researcher the researcher to be inserted
+     * @param value the indicator value of the researcher
+     */
+    void add(Researcher researcher, double value) {
+        boolean isAscend = algorithm.isAscend();
+        if (valueList.size() < len || (!isAscend && value > valueList.get(len - 1)) || (isAscend && value < valueList.get(len - 1))) {
+            int indexInsert = len - 1;
+            if (valueList.size() == len) {
+                while (indexInsert >= 0 && ((!isAscend && value > valueList.get(indexInsert)) || (isAscend && value < valueList.get(indexInsert)))) {
+                    indexInsert--;
+                }
+                indexInsert++;
+                valueList.remove(len - 1);
+                recommendList.remove(len - 1);
+            } else {
+                indexInsert = valueList.size();
+                while (indexInsert > 0 && ((!isAscend && value > valueList.get(indexInsert - 1)) || (isAscend && value < valueList.get(indexInsert - 1)))) {
+                    indexInsert--;
+                }
+            }
+            valueList.add(indexInsert, value);
+            recommendList.add(indexInsert, researcher);
+        }
+    }
+
+    /**
+     * Insert all researchers of another result, in its order. Merging the
+     * results of consecutive parts of a scan in scan order gives the result of
+     * the whole scan, ties included.
+     *
+     * @param other the result to be merged
+     */
+    void addAll(RecommendResult other) {
+        for (int i = 0; i < other.size(); i++) {
+            add(other.recommendList.get(i), other.valueList.get(i));
+        }
+    }
+
+    /**
+     * Get the algorithm used to produce this result.
+     *
+     * @return the algorithm
+     */
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Get the specified researcher needing for recommendation.
+     *
+     * @return the owner of this result
+     */
+    public Researcher getOwner() {
+        return owner;
+    }
+
+    /**
+     * Get the number of researchers actually recommended, which is at most
+     * the requested number.
+     *
+     * @return the size of the recommend list
+     */
+    public int size() {
+        return recommendList.size();
+    }
+
+    /**
+     * Get the list of recommended researchers, best first.
+     *
+     * @return an unmodifiable view of the recommend list
+     */
+    public List<Researcher> getResearchers() {
+        return Collections.unmodifiableList(recommendList);
+    }
+
+    /**
+     * Get the indicator values of the recommended researchers, in the same
+     * order as {@link RecommendResult#getResearchers() the recommend list}.
+     *
+     * @return an unmodifiable view of the indicator values
+     */
+    public List<Double> getValues() {
+        return Collections.unmodifiableList(valueList);
+    }
+
+    /**
+     * Get the fraction of the candidates scored for this result. A result
+     * whose {@link Budget budget} ran out holds the best researchers among
+     * the candidates scored, which need not be the best of all.
+     *
+     * @return the coverage, 1 if every candidate was scored
+     */
+    public double getCoverage() {
+        return coverage;
+    }
+
+    /**
+     * Check whether every candidate was scored for this result.
+     *
+     * @return <code>true</code> if the result is complete
+     */
+    public boolean isComplete() {
+        return coverage >= 1;
+    }
+
+    /**
+     * Set the fraction of the candidates scored, before the result is
+     * shared.
+     *
+     * @param coverage the coverage
+     */
+    void setCoverage(double coverage) {
+        this.coverage = coverage;
+    }
+}
@@ -0,0 +1,39 @@
+package researcherInfoSys;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A streaming source of researcher records, such as an Excel sheet, a CSV/TSV
+ * file or a JSON-lines file. Records are read one at a time, so a source never
+ * holds more than the current record in memory unless its format requires
+ * it. Every source is loaded through
+ * {@link Input#load(researcherInfoSys.RecordSource) the same path} into the
+ * {@link Researcher#repository repository of researcher}.
+ *
+ * @author james
+ */
+public interface RecordSource extends Closeable {
+
+    /**
+     * Read the next record. The attributes are ordered as
+     * {@link ColumnMapping#NAME NAME}, {@link ColumnMapping#UNIVERSITY
+     * UNIVERSITY}, {@link ColumnMapping#DEPARTMENT DEPARTMENT},
+     * {@link ColumnMapping#TOPICS TOPICS} and
+     * {@link ColumnMapping#SKILLS SKILLS}, with missing attributes as empty
+     * Strings.
+     *
+     * @return the attributes of the next record, or <code>null</code> at the
+     * end of the source
+     * @throws IOException if the source cannot be read
+     */
+    String[] next() throws IOException;
+
+    /**
+     * Get the row number of the record last returned by
+     * {@link RecordSource#next() next}, used as the initial researcher id.
+     *
+     * @return the row number of the last record
+     */
+    int getRowNum();
+}
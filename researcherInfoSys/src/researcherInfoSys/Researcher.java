@@ -4,11 +4,19 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Stores data for a researcher, and contains a repository of all researcher as
@@ -48,6 +56,30 @@ public class Researcher {
      */
     private static HashMap<String, TreeSet<Integer>> interestRepository = new HashMap<>();
 
+    /**
+     * The postings of {@link Researcher#interestRepository interestRepository}
+     * as sorted arrays, built on first use and dropped when a posting changes.
+     * Concurrent, as queries read postings from several threads.
+     */
+    private static ConcurrentHashMap<String, int[]> postingCache = new ConcurrentHashMap<>();
+
+    /**
+     * A repository mapping each researcher id to its Researcher Object.
+     */
+    private static HashMap<Integer, Researcher> idRepository = new HashMap<>();
+
+    /**
+     * The ids of all researchers as a sorted array, <code>null</code> when it
+     * has to be rebuilt.
+     */
+    private static int[] allIds = null;
+
+    /**
+     * Whether the mallet data file has been written since the repository last
+     * changed.
+     */
+    private static volatile boolean malletDataCurrent = false;
+
     /**
      * The number of distinct researchers in the repository.
      */
@@ -70,6 +102,17 @@ public class Researcher {
      */
     private static LinkedHashSet<String> sameNameList_sameDep = new LinkedHashSet<>();
 
+    /**
+     * The largest researcher id in the repository.
+     */
+    private static int maxId = 0;
+
+    /**
+     * The ids of researchers whose interests changed since the topic model was
+     * built, whose topic vectors need to be inferred again.
+     */
+    private static LinkedHashSet<Integer> staleIds = new LinkedHashSet<>();
+
     /**
      * The name, university and department information of a researcher, as a
      * String.
@@ -86,6 +129,17 @@ public class Researcher {
      */
     private final LinkedHashSet<String> interests = new LinkedHashSet<>();
 
+    /**
+     * The number of records merged into this researcher.
+     */
+    private int recordNum = 1;
+
+    /**
+     * It is <code>true</code> if the researcher has been removed from the
+     * repository.
+     */
+    private boolean removed = false;
+
     /**
      * Constructor with parameter, constructing a new <code>Researcher</code>
      * instance with the name, university, department and id information.
@@ -139,6 +193,16 @@ public class Researcher {
         return id;
     }
 
+    /**
+     * Check whether the researcher has been removed from the repository by a
+     * {@link DeltaUpdate delta update}.
+     *
+     * @return <code>true</code> if the researcher has been removed
+     */
+    public boolean isRemoved() {
+        return removed;
+    }
+
     /**
      * Get the interests list of the researcher, as a
      * <code>LinkedHashSet</code>.
@@ -190,6 +254,17 @@ public class Researcher {
         return interestRepository.size();
     }
 
+    /**
+     * Get the distinct interests in the interests repository, in lower case.
+     *
+     * @return the sorted interests
+     */
+    public static String[] getInterestNames() {
+        String[] names = interestRepository.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+
     /**
      * Get the distinct number of researchers with a specified interest.
      *
@@ -222,30 +297,60 @@ public class Researcher {
      * @return the number of times two interests con-occur
      */
     public static int getCooccurNum(String ia, String ib) {
-        int num = 0, i = 0, j = 0;
-        TreeSet<Integer> raList = interestRepository.get(ia.trim().replaceAll(" +", " ").toLowerCase());
-        TreeSet<Integer> rbList = interestRepository.get(ib.trim().replaceAll(" +", " ").toLowerCase());
-        if (raList == null || rbList == null) {
-            return 0;
-        }
-        raList.add(Integer.MAX_VALUE);
-        rbList.add(Integer.MAX_VALUE);
-        Iterator<Integer> iterA = raList.iterator(), iterB = rbList.iterator();
-        int idA = iterA.next(), idB = iterB.next();
-        while (iterA.hasNext() && iterB.hasNext()) {
-            while (idA < idB && iterA.hasNext()) {
-                idA = iterA.next();
+        return InterestQuery.intersect(getPosting(ia), getPosting(ib)).length;
+    }
+
+    /**
+     * Get the ids of researchers with a specified interest.
+     *
+     * @param interest the specified interest
+     * @return the sorted researcher ids, an empty array if nobody has the
+     * interest
+     */
+    public static int[] getPosting(String interest) {
+        String key = interest.trim().replaceAll(" +", " ").toLowerCase();
+        int[] posting = postingCache.get(key);
+        if (posting == null) {
+            TreeSet<Integer> researcherList = interestRepository.get(key);
+            if (researcherList == null) {
+                return new int[0];
             }
-            while (idB < idA && iterB.hasNext()) {
-                idB = iterB.next();
+            posting = new int[researcherList.size()];
+            int i = 0;
+            for (int id : researcherList) {
+                posting[i++] = id;
             }
-            if (idA == idB && idA != Integer.MAX_VALUE) {
-                num++;
-                idA = iterA.next();
-                idB = iterB.next();
+            postingCache.put(key, posting);
+        }
+        return posting;
+    }
+
+    /**
+     * Get the ids of all researchers in the repository.
+     *
+     * @return the sorted researcher ids
+     */
+    public static int[] getAllIds() {
+        if (allIds == null) {
+            int[] ids = new int[idRepository.size()];
+            int i = 0;
+            for (int id : idRepository.keySet()) {
+                ids[i++] = id;
             }
+            Arrays.sort(ids);
+            allIds = ids;
         }
-        return num;
+        return allIds;
+    }
+
+    /**
+     * Get the researcher with a specified id.
+     *
+     * @param id the researcher id
+     * @return the researcher, or <code>null</code> if not found
+     */
+    public static Researcher getResearcherById(int id) {
+        return idRepository.get(id);
     }
 
     /**
@@ -259,15 +364,20 @@ public class Researcher {
      */
     public static Researcher add(Researcher newResearcher) {
         String name_low = newResearcher.name.toLowerCase();
+        maxId = Math.max(maxId, newResearcher.id);
         if (!repository.containsKey(name_low)) {
             LinkedList<Researcher> l = new LinkedList<>();
             l.add(newResearcher);
             repository.put(name_low, l);
             researcherNum++;
+            idRepository.put(newResearcher.id, newResearcher);
+            allIds = null;
+            malletDataCurrent = false;
         } else {
             for (Researcher r : repository.get(name_low)) {
                 if (areSame(newResearcher, r)) {
                     newResearcher.id = r.id;
+                    r.recordNum++;
                     if (sameNameList_sameDep.add(newResearcher.name)) {
                         sameNameNum_sameDep += 2;
                     } else {
@@ -278,6 +388,9 @@ public class Researcher {
             }
             repository.get(name_low).add(newResearcher);
             researcherNum++;
+            idRepository.put(newResearcher.id, newResearcher);
+            allIds = null;
+            malletDataCurrent = false;
             if (sameNameList_diffDep.add(newResearcher.name)) {
                 sameNameNum_diffDep += 2;
             } else {
@@ -294,21 +407,217 @@ public class Researcher {
      * @param interestsStr the interests String to be parsed
      */
     public void addToInterests(String interestsStr) {
+        for (String interest : parseInterests(interestsStr)) {
+            interests.add(interest);
+            malletDataCurrent = false;
+            addToPosting(interest.toLowerCase());
+        }
+    }
+
+    /**
+     * Split a String of interests list into trimmed interests.
+     *
+     * @param interestsStr the interests String to be parsed
+     * @return the interests, without empty ones
+     */
+    private static List<String> parseInterests(String interestsStr) {
+        ArrayList<String> list = new ArrayList<>();
         for (String str : interestsStr.trim().split(",")) {
             String interest = str.trim().replaceAll(" +", " ");
             if (!interest.isEmpty()) {
-                interests.add(interest);
-                interest = interest.toLowerCase();
-                TreeSet<Integer> researcherList = interestRepository.get(interest);
-                if (researcherList != null) {
-                    researcherList.add(id);
-                } else {
-                    researcherList = new TreeSet<>();
-                    researcherList.add(id);
-                    interestRepository.put(interest, researcherList);
+                list.add(interest);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Add the id of this researcher to the posting of an interest, creating
+     * the interest if no researcher holds it yet.
+     *
+     * @param interest_low the interest, in lower case
+     */
+    private void addToPosting(String interest_low) {
+        TreeSet<Integer> researcherList = interestRepository.get(interest_low);
+        if (researcherList != null) {
+            if (researcherList.add(id)) {
+                postingCache.remove(interest_low);
+            }
+        } else {
+            researcherList = new TreeSet<>();
+            researcherList.add(id);
+            interestRepository.put(interest_low, researcherList);
+        }
+    }
+
+    /**
+     * Remove the id of this researcher from the posting of an interest,
+     * removing the interest if no researcher is left holding it.
+     *
+     * @param interest_low the interest, in lower case
+     */
+    private void removeFromPosting(String interest_low) {
+        TreeSet<Integer> researcherList = interestRepository.get(interest_low);
+        if (researcherList != null) {
+            researcherList.remove(id);
+            postingCache.remove(interest_low);
+            if (researcherList.isEmpty()) {
+                interestRepository.remove(interest_low);
+            }
+        }
+    }
+
+    /**
+     * Get an id which is not used by any researcher yet.
+     *
+     * @return a new researcher id
+     */
+    public static int nextId() {
+        return maxId + 1;
+    }
+
+    /**
+     * Find the researcher with the specified name, university and department.
+     *
+     * @param name the name of the researcher
+     * @param university the university of the researcher
+     * @param department the department of the researcher
+     * @return the researcher, or <code>null</code> if not found
+     */
+    public static Researcher find(String name, String university, String department) {
+        Researcher target = new Researcher(name, university, department, 0);
+        LinkedList<Researcher> researcherList = repository.get(target.name.toLowerCase());
+        if (researcherList != null) {
+            for (Researcher r : researcherList) {
+                if (areSame(target, r)) {
+                    return r;
                 }
             }
         }
+        return null;
+    }
+
+    /**
+     * Remove a researcher from the repository, its id from the postings of its
+     * interests and its records from the duplicated name statistics.
+     *
+     * @param r the researcher to be removed
+     */
+    public static void remove(Researcher r) {
+        String name_low = r.name.toLowerCase();
+        LinkedList<Researcher> researcherList = repository.get(name_low);
+        if (r.removed || researcherList == null || !researcherList.remove(r)) {
+            return;
+        }
+        r.clearInterests();
+        r.removed = true;
+        researcherNum--;
+        idRepository.remove(r.id);
+        allIds = null;
+        malletDataCurrent = false;
+        staleIds.add(r.id);
+        if (r.recordNum > 1) {
+            sameNameNum_sameDep -= r.recordNum;
+            boolean stillMerged = false;
+            for (Researcher other : researcherList) {
+                stillMerged |= other.recordNum > 1;
+            }
+            if (!stillMerged) {
+                sameNameList_sameDep.remove(r.name);
+            }
+        }
+        if (researcherList.isEmpty()) {
+            repository.remove(name_low);
+        } else if (researcherList.size() == 1) {
+            sameNameNum_diffDep -= 2;
+            sameNameList_diffDep.remove(r.name);
+        } else {
+            sameNameNum_diffDep--;
+        }
+    }
+
+    /**
+     * Replace the interests of this researcher and mark its topic vector as
+     * stale. Only the postings of the interests dropped or added, compared
+     * in lower case, are updated, so the postings and the cached posting
+     * arrays of the interests kept are left untouched.
+     *
+     * @param interestsStrs the interests Strings to be parsed, such as the
+     * topics and the skills of a record
+     */
+    public void replaceInterests(String... interestsStrs) {
+        ArrayList<String> oldInterests = new ArrayList<>(interests);
+        HashSet<String> oldLow = new HashSet<>(), newLow = new HashSet<>();
+        for (String interest : oldInterests) {
+            oldLow.add(interest.toLowerCase());
+        }
+        interests.clear();
+        for (String interestsStr : interestsStrs) {
+            for (String interest : parseInterests(interestsStr)) {
+                interests.add(interest);
+                newLow.add(interest.toLowerCase());
+            }
+        }
+        for (String interest_low : oldLow) {
+            if (!newLow.contains(interest_low)) {
+                removeFromPosting(interest_low);
+            }
+        }
+        for (String interest_low : newLow) {
+            if (!oldLow.contains(interest_low)) {
+                addToPosting(interest_low);
+            }
+        }
+        if (!oldInterests.equals(new ArrayList<>(interests))) {
+            malletDataCurrent = false;
+        }
+        staleIds.add(id);
+    }
+
+    /**
+     * Remove all interests of this researcher and its id from their postings.
+     * Interests left without any researcher are removed.
+     */
+    private void clearInterests() {
+        for (String interest : interests) {
+            removeFromPosting(interest.toLowerCase());
+            malletDataCurrent = false;
+        }
+        interests.clear();
+    }
+
+    /**
+     * Mark the topic vector of a researcher as stale.
+     *
+     * @param id the id of the researcher
+     */
+    public static void markStale(int id) {
+        staleIds.add(id);
+        malletDataCurrent = false;
+    }
+
+    /**
+     * Get the ids of researchers whose topic vectors need to be inferred
+     * again, because they were added, modified or removed by a
+     * {@link DeltaUpdate delta update} after the topic model was built.
+     *
+     * @return the stale researcher ids
+     */
+    public static LinkedHashSet<Integer> getStaleIds() {
+        return staleIds;
+    }
+
+    /**
+     * Forget stale ids after a topic model built from a mallet data file
+     * holding their researchers up to date has been published. Ids marked
+     * stale again since the file was written stay stale.
+     *
+     * @param ids the ids which were stale when the mallet data file was
+     * written, as returned by
+     * {@link Researcher#prepareMalletData() prepareMalletData}
+     */
+    public static synchronized void clearStaleIds(Collection<Integer> ids) {
+        staleIds.removeAll(ids);
     }
 
     /**
@@ -346,18 +655,52 @@ public class Researcher {
 
     /**
      * Write the information containing in the repository to a text file, in the
-     * format required by the mallet API for further processing.
+     * format required by the mallet API for further processing. Stale ids are
+     * kept until a model built from this file is published, so a build which
+     * is cancelled or fails leaves them stale.
+     */
+    public static synchronized void createMalletData() {
+        createMalletData("data/malletData.txt", Collections.emptyMap());
+        malletDataCurrent = true;
+    }
+
+    /**
+     * Write the mallet data file on first use, and again only if the
+     * repository has changed since it was written.
+     *
+     * @return the ids which are stale but up to date in the mallet data file,
+     * to be {@link Researcher#clearStaleIds(java.util.Collection) forgotten}
+     * once a model built from the file is published
+     */
+    public static synchronized Set<Integer> prepareMalletData() {
+        if (!malletDataCurrent) {
+            createMalletData();
+        }
+        return new HashSet<>(staleIds);
+    }
+
+    /**
+     * Write the information containing in the repository to a text file, in the
+     * format required by the mallet API, leaving out some interests of some
+     * researchers, for example to {@link EvaluationReport evaluate} a model
+     * on the interests it has not seen.
+     *
+     * @param fileName the path of the text file
+     * @param heldOut the interests left out, in lower case, by researcher id
      */
-    public static void createMalletData() {
+    static void createMalletData(String fileName, Map<Integer, Set<String>> heldOut) {
         try {
-            File file = new File("data/malletData.txt");
+            File file = new File(fileName);
             file.createNewFile();
             BufferedWriter fw = new BufferedWriter(new FileWriter(file));
             for (LinkedList<Researcher> rList : repository.values()) {
                 for (Researcher r : rList) {
+                    Set<String> held = heldOut.getOrDefault(r.id, Collections.emptySet());
                     String str = (r.name + "/" + r.id).replaceAll(" ", "@").toLowerCase() + " " + "X ";
                     for (String i : r.interests) {
-                        str += i.replaceAll(" ", "") + " ";
+                        if (!held.contains(i.toLowerCase())) {
+                            str += i.replaceAll(" ", "") + " ";
+                        }
                     }
                     str = str + "\n";
                     fw.write(str);
@@ -0,0 +1,381 @@
+package researcherInfoSys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Answers recommendation queries by fanning them out to
+ * {@link ShardWorker shard workers} running in local processes, gathering
+ * the top <code>K</code> of each shard and merging them. The merged ranking
+ * is identical to a single scan, since shards are interleaved rows of the
+ * same memory-mapped model and ties are broken by row. If a worker cannot be
+ * reached or does not answer in time, its shard is scanned locally instead,
+ * so a failed worker costs latency but never changes an answer.
+ *
+ * @author james
+ */
+public class ShardCoordinator {
+
+    /**
+     * The time a worker has to answer a query, in milliseconds.
+     */
+    private static final int TIMEOUT = 5000;
+
+    /**
+     * The time workers have to start up, in milliseconds.
+     */
+    private static final int STARTUP_TIMEOUT = 300000;
+
+    /**
+     * The local topic model, used to map rows to researchers and to scan the
+     * shards of failed workers.
+     */
+    private final TopicModel tm;
+
+    /**
+     * The port of each worker, indexed by shard.
+     */
+    private final int[] ports;
+
+    /**
+     * Idle connections to each worker, indexed by shard.
+     */
+    private final ArrayList<ConcurrentLinkedQueue<Connection>> idle = new ArrayList<>();
+
+    /**
+     * The worker processes started by this coordinator.
+     */
+    private final ArrayList<Process> processes = new ArrayList<>();
+
+    /**
+     * Pool sending the requests of a query to all workers at once.
+     */
+    private final ExecutorService pool = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "shard-coordinator");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * The number of shards scanned locally because their worker failed.
+     */
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    /**
+     * Constructor with parameter, connecting to workers already running on
+     * local ports.
+     *
+     * @param tm the local topic model, opened from the same file as the
+     * workers
+     * @param ports the port of each worker, indexed by shard
+     */
+    public ShardCoordinator(TopicModel tm, int[] ports) {
+        this.tm = tm;
+        this.ports = ports.clone();
+        for (int i = 0; i < ports.length; i++) {
+            idle.add(new ConcurrentLinkedQueue<>());
+        }
+    }
+
+    /**
+     * Start one worker process per shard on consecutive local ports and wait
+     * until all of them answer. The topic model is saved to the matrix file
+     * first if it is not already off-heap. Workers only map the matrix file,
+     * they do not load the data file. Worker output goes to
+     * <code>data/worker_SHARD.log</code>.
+     *
+     * @param tm the local topic model
+     * @param matrixFile the path of the shared matrix file
+     * @param shards the number of shards
+     * @param basePort the port of shard 0
+     * @return the coordinator
+     * @throws IOException if a worker cannot be started or does not come up
+     */
+    public static ShardCoordinator launch(TopicModel tm, String matrixFile, int shards, int basePort) throws IOException {
+        if (!tm.isOffHeap()) {
+            tm.storeOffHeap(matrixFile);
+        }
+        int[] ports = new int[shards];
+        ShardCoordinator coordinator = new ShardCoordinator(tm, ports);
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        for (int i = 0; i < shards; i++) {
+            ports[i] = basePort + i;
+            coordinator.ports[i] = ports[i];
+            ProcessBuilder pb = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Main.class.getName(),
+                    "worker", String.valueOf(ports[i]), String.valueOf(i), String.valueOf(shards), matrixFile);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(new File("data/worker_" + i + ".log"));
+            coordinator.processes.add(pb.start());
+        }
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+        for (int i = 0; i < shards; i++) {
+            while (!coordinator.ping(i)) {
+                if (System.currentTimeMillis() > deadline || !coordinator.processes.get(i).isAlive()) {
+                    coordinator.close();
+                    throw new IOException("Worker " + i + " did not start, see data/worker_" + i + ".log");
+                }
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    coordinator.close();
+                    throw new IOException("Interrupted while starting workers", e);
+                }
+            }
+        }
+        return coordinator;
+    }
+
+    /**
+     * Get the top <code>k</code> similar researchers of a specified
+     * researcher from all shards. Workers know rows only, so each one is
+     * asked for <code>k</code> rows plus the rows of its shard whose
+     * researcher was removed since the model was built, which are skipped
+     * here.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @return the merged recommendation result
+     * @throws IllegalArgumentException if the researcher is not in the model
+     */
+    public RecommendResult getRecommendResult(Researcher researcher, Algorithm algorithm, int k) {
+        int row = tm.getRow(researcher);
+        if (row < 0) {
+            throw new IllegalArgumentException("Not in the topic model - " + researcher.getName() + " (" + researcher.getId() + ")");
+        }
+        String interests = String.join(",", tm.getQueryInterests(researcher));
+        ArrayList<Future<ArrayList<double[]>>> futures = new ArrayList<>();
+        for (int shard = 0; shard < ports.length; shard++) {
+            final int s = shard;
+            futures.add(pool.submit(() -> queryShard(s, row, interests, researcher, algorithm, k)));
+        }
+        ArrayList<double[]> candidates = new ArrayList<>();
+        for (int shard = 0; shard < ports.length; shard++) {
+            try {
+                candidates.addAll(futures.get(shard).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                candidates.addAll(localShard(shard, researcher, algorithm, k));
+            } catch (ExecutionException e) {
+                candidates.addAll(localShard(shard, researcher, algorithm, k));
+            }
+        }
+        candidates.sort(TopicModel.getRowOrder(algorithm));
+        RecommendResult result = new RecommendResult(researcher, algorithm, k);
+        for (int i = 0; i < candidates.size() && result.size() < k; i++) {
+            Researcher r = tm.getResearcher((int) candidates.get(i)[0]);
+            if (r != null) {
+                result.add(r, candidates.get(i)[1]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of shards scanned locally because their worker failed.
+     *
+     * @return the number of fallbacks
+     */
+    public long getFallbacks() {
+        return fallbacks.get();
+    }
+
+    /**
+     * Ask a worker for the top rows of its shard, enough to leave
+     * <code>k</code> once the rows of removed researchers are skipped, falling
+     * back to a local scan if it fails.
+     *
+     * @param shard the index of the shard
+     * @param row the row of the researcher requiring recommendation
+     * @param interests the interests of the researcher, as sent to workers
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @return the (row, value) pairs of the shard, which may include rows of
+     * removed researchers
+     */
+    private ArrayList<double[]> queryShard(int shard, int row, String interests, Researcher researcher, Algorithm algorithm, int k) {
+        Connection c = null;
+        try {
+            c = borrow(shard);
+            int wanted = k + tm.getMissingRows(shard, ports.length);
+            c.out.write("QUERY\t" + algorithm.name() + "\t" + row + "\t" + wanted + "\t" + interests + "\n");
+            c.out.flush();
+            String[] head = readLine(c).split("\t");
+            if (!head[0].equals("OK")) {
+                throw new IOException("Worker error - " + (head.length > 1 ? head[1] : head[0]));
+            }
+            int n = Integer.parseInt(head[1]);
+            ArrayList<double[]> candidates = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                String[] fields = readLine(c).split("\t");
+                candidates.add(new double[]{Integer.parseInt(fields[0]), Double.parseDouble(fields[1])});
+            }
+            idle.get(shard).add(c);
+            return candidates;
+        } catch (IOException | RuntimeException e) {
+            if (c != null) {
+                c.close();
+            }
+            System.err.println("Shard " + shard + " failed, scanning locally - " + e.getMessage());
+            return localShard(shard, researcher, algorithm, k);
+        }
+    }
+
+    /**
+     * Scan a shard in this process.
+     *
+     * @param shard the index of the shard
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @return the (row, value) pairs of the shard
+     */
+    private ArrayList<double[]> localShard(int shard, Researcher researcher, Algorithm algorithm, int k) {
+        fallbacks.incrementAndGet();
+        RecommendResult result = tm.getShardResult(researcher, algorithm, k, shard, ports.length);
+        ArrayList<double[]> candidates = new ArrayList<>();
+        for (int i = 0; i < result.size(); i++) {
+            candidates.add(new double[]{tm.getRow(result.getResearchers().get(i)), result.getValues().get(i)});
+        }
+        return candidates;
+    }
+
+    /**
+     * Check whether a worker answers.
+     *
+     * @param shard the index of the shard
+     * @return <code>true</code> if the worker answered
+     */
+    private boolean ping(int shard) {
+        Connection c = null;
+        try {
+            c = borrow(shard);
+            c.out.write("PING\n");
+            c.out.flush();
+            boolean ok = readLine(c).equals("PONG");
+            idle.get(shard).add(c);
+            return ok;
+        } catch (IOException e) {
+            if (c != null) {
+                c.close();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Stop all worker processes started by this coordinator and close all
+     * connections.
+     */
+    public void close() {
+        for (int shard = 0; shard < ports.length; shard++) {
+            try {
+                Connection c = borrow(shard);
+                c.out.write("SHUTDOWN\n");
+                c.out.flush();
+                c.close();
+            } catch (IOException e) {
+                // the worker is already gone
+            }
+            Connection c;
+            while ((c = idle.get(shard).poll()) != null) {
+                c.close();
+            }
+        }
+        for (Process p : processes) {
+            p.destroy();
+        }
+        pool.shutdownNow();
+    }
+
+    /**
+     * Take an idle connection to a worker, or open a new one.
+     *
+     * @param shard the index of the shard
+     * @return the connection
+     * @throws IOException if the worker cannot be reached
+     */
+    private Connection borrow(int shard) throws IOException {
+        Connection c = idle.get(shard).poll();
+        return c != null ? c : new Connection(ports[shard]);
+    }
+
+    /**
+     * Read a line of a response.
+     *
+     * @param c the connection
+     * @return the line
+     * @throws IOException if the connection is closed
+     */
+    private static String readLine(Connection c) throws IOException {
+        String line = c.in.readLine();
+        if (line == null) {
+            throw new IOException("Connection closed by worker");
+        }
+        return line;
+    }
+
+    /**
+     * A connection to a worker.
+     */
+    private static class Connection {
+
+        /**
+         * The socket of the connection.
+         */
+        private final Socket socket;
+
+        /**
+         * The reader of responses.
+         */
+        private final BufferedReader in;
+
+        /**
+         * The writer of requests.
+         */
+        private final BufferedWriter out;
+
+        /**
+         * Constructor with parameter, connecting to a local port.
+         *
+         * @param port the port of the worker
+         * @throws IOException if the worker cannot be reached
+         */
+        Connection(int port) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT);
+            socket.setSoTimeout(TIMEOUT);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Close the connection quietly.
+         */
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package researcherInfoSys;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A worker process answering recommendation queries for one shard of a
+ * {@link TopicModel topic model} over a local socket. All workers open the
+ * same model saved by
+ * {@link TopicModel#storeOffHeap(java.lang.String) storeOffHeap}, so the
+ * memory-mapped topic distributions are shared and every worker scores
+ * exactly the same values as a single process would. Queries name the row
+ * of the researcher and carry its interests, so a worker needs no data file
+ * and does not load one. The protocol is line based:
+ * <pre>
+ * PING                                   -&gt; PONG
+ * QUERY ALGORITHM ROW K INTERESTS        -&gt; OK N, then N lines "ROW VALUE"
+ * SHUTDOWN                               -&gt; BYE, and the worker exits
+ * </pre>
+ * with fields separated by tabs and INTERESTS, in lower case without blanks,
+ * separated by commas. Errors are answered with <code>ERR</code> and a
+ * message.
+ *
+ * @author james
+ */
+public class ShardWorker {
+
+    /**
+     * The topic model shared by all shards.
+     */
+    private final TopicModel tm;
+
+    /**
+     * The index of the shard served and the number of shards.
+     */
+    private final int shard, shards;
+
+    /**
+     * It is <code>true</code> once a shutdown is requested.
+     */
+    private volatile boolean stopped = false;
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param tm the topic model
+     * @param shard the index of the shard served
+     * @param shards the number of shards
+     */
+    public ShardWorker(TopicModel tm, int shard, int shards) {
+        this.tm = tm;
+        this.shard = shard;
+        this.shards = shards;
+    }
+
+    /**
+     * Listen on a local port and serve queries until a shutdown is requested.
+     *
+     * @param port the port to listen on
+     * @throws IOException if the port cannot be opened
+     */
+    public void serve(int port) throws IOException {
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.out.println("Shard " + shard + "/" + shards + " listening on port " + port);
+            server.setSoTimeout(1000);
+            while (!stopped) {
+                try {
+                    Socket socket = server.accept();
+                    pool.submit(() -> handle(socket));
+                } catch (java.net.SocketTimeoutException e) {
+                    // check whether a shutdown was requested
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Answer all requests of one connection.
+     *
+     * @param socket the connection
+     */
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split("\t");
+                switch (fields[0]) {
+                    case "PING":
+                        out.write("PONG\n");
+                        break;
+                    case "QUERY":
+                        out.write(query(fields));
+                        break;
+                    case "SHUTDOWN":
+                        stopped = true;
+                        out.write("BYE\n");
+                        out.flush();
+                        return;
+                    default:
+                        out.write("ERR\tunknown request\n");
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Connection closed - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Answer a query for the shard.
+     *
+     * @param fields the fields of the request
+     * @return the response
+     */
+    private String query(String[] fields) {
+        if (fields.length < 4) {
+            return "ERR\texpected QUERY ALGORITHM ROW K INTERESTS\n";
+        }
+        try {
+            Algorithm algorithm = Algorithm.valueOf(fields[1]);
+            int row = Integer.parseInt(fields[2]), k = Integer.parseInt(fields[3]);
+            List<String> interests = fields.length > 4 && !fields[4].isEmpty() ? Arrays.asList(fields[4].split(",")) : Collections.emptyList();
+            ArrayList<double[]> candidates = tm.getShardRows(row, interests, algorithm, k, shard, shards);
+            StringBuilder sb = new StringBuilder("OK\t" + candidates.size() + "\n");
+            for (double[] candidate : candidates) {
+                sb.append((int) candidate[0]).append('\t').append(candidate[1]).append('\n');
+            }
+            return sb.toString();
+        } catch (RuntimeException e) {
+            return "ERR\t" + e + "\n";
+        }
+    }
+}
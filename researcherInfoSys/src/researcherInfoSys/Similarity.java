@@ -1,5 +1,7 @@
 package researcherInfoSys;
 
+import java.nio.DoubleBuffer;
+
 /**
  * A utility class which provide different kind of indicators to measure
  * similarity between two instances, including cosineSimilarity and KL
@@ -48,4 +50,50 @@ public class Similarity {
         }
         return kl;
     }
+
+    /**
+     * Calculate the cosine similarity value of two instances, one of which is
+     * read in place from a buffer, such as a row of an off-heap
+     * {@link TopicMatrix topic matrix}.
+     *
+     * @param a an array of values of different attributes of one instance
+     * @param b a buffer holding the values of another instance
+     * @param offset the index of the first value of the instance in the buffer
+     * @return the cosine similarity value of two instances
+     */
+    public static double calCosineSimilarity(double[] a, DoubleBuffer b, int offset) {
+        double ab = 0, aa = 0, bb = 0;
+
+        for (int i = 0; i < a.length; i++) {
+            double x = -1 + a[i] * 2;
+            double y = -1 + b.get(offset + i) * 2;
+            ab += x * y;
+            aa += x * x;
+            bb += y * y;
+        }
+        if (aa == 0 || bb == 0) {
+            return -2;
+        }
+        aa = Math.sqrt(aa);
+        bb = Math.sqrt(bb);
+        return ab / (aa * bb);
+    }
+
+    /**
+     * Calculate the KL divergence value of two instances, the second of which
+     * is read in place from a buffer, such as a row of an off-heap
+     * {@link TopicMatrix topic matrix}.
+     *
+     * @param p an array of values of different attributes of one instance
+     * @param q a buffer holding the values of another instance
+     * @param offset the index of the first value of the instance in the buffer
+     * @return the KL divergence value of two instances
+     */
+    public static double calKL(double[] p, DoubleBuffer q, int offset) {
+        double kl = 0;
+        for (int i = 0; i < p.length; i++) {
+            kl += p[i] * Math.log(p[i] / q.get(offset + i)) / Math.log(2);
+        }
+        return kl;
+    }
 }
@@ -0,0 +1,597 @@
+package researcherInfoSys;
+
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.Dirichlet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.IDSorter;
+import cc.mallet.types.InstanceList;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A built-in {@link TopicEngine topic engine}, a collapsed Gibbs sampler
+ * keeping every count in primitive arrays and drawing each topic with the
+ * SparseLDA decomposition of the sampling distribution:
+ * <pre>
+ * p(t) ~ a b / (bV + n_t)            s, over all topics
+ *      + n_td b / (bV + n_t)         r, over the topics of the instance
+ *      + (a + n_td) n_wt / (bV + n_t) q, over the topics of the interest
+ * </pre>
+ * The <code>s</code> mass is kept up to date as counts change and is rarely
+ * drawn from, so a token costs the number of topics of its instance plus the
+ * number of topics of its interest rather than the number of topics. With
+ * profiles of a few interests the first is tiny, and the topics of each
+ * interest are kept in a list updated in constant time.
+ * <p>
+ * Instances are partitioned across threads by number of tokens. Each thread
+ * samples its instances against its own copy of the interest-topic counts,
+ * logging the topics it changes, and after each iteration every copy
+ * replays the logs of the other threads, so all copies agree again. With one
+ * thread this is exact collapsed Gibbs sampling. The prior is fixed, unlike
+ * {@link MalletEngine Mallet}, which optimizes it.
+ * <p>
+ * The random numbers of each thread in each iteration are derived from a
+ * seed drawn once and the number of the iteration, so an engine resumed from
+ * a {@link Checkpoint checkpoint} draws exactly the samples the
+ * uninterrupted engine would have drawn.
+ *
+ * @author james
+ */
+public class SparseLdaEngine implements TopicEngine {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The number of topics and of interests.
+     */
+    private final int topicsNum, typesNum;
+
+    /**
+     * The prior of each topic of an instance and of each interest of a topic,
+     * and <code>beta * typesNum</code>.
+     */
+    private final double alpha, beta, betaSum;
+
+    /**
+     * The alphabet of the interests.
+     */
+    private final Alphabet alphabet;
+
+    /**
+     * The first token of every instance, with one extra entry holding the
+     * number of tokens.
+     */
+    private final int[] docStart;
+
+    /**
+     * The interest and the topic of every token.
+     */
+    private final int[] types, topics;
+
+    /**
+     * The number of tokens of every interest in every topic,
+     * <code>topicsNum</code> per interest, and of every topic.
+     */
+    private final int[] typeTopicCounts, tokensPerTopic;
+
+    /**
+     * The number of sampling threads.
+     */
+    private final int threads;
+
+    /**
+     * The seed of the random numbers of all iterations.
+     */
+    private final long seed;
+
+    /**
+     * The number of iterations done.
+     */
+    private int iteration = 0;
+
+    /**
+     * The samplers of the threads, the first one sampling on the counts of
+     * the engine, <code>null</code> until sampling starts.
+     */
+    private transient Sampler[] samplers;
+
+    /**
+     * Constructor with parameter, assigning the tokens of the instances to
+     * topics at random.
+     *
+     * @param instances the instances, whose data are feature sequences
+     * @param topicsNum the number of topics
+     * @param threads the number of sampling threads
+     */
+    public SparseLdaEngine(InstanceList instances, int topicsNum, int threads) {
+        this.topicsNum = topicsNum;
+        this.alphabet = instances.getDataAlphabet();
+        this.typesNum = alphabet.size();
+        this.alpha = ALPHA_SUM / topicsNum;
+        this.beta = BETA;
+        this.betaSum = BETA * typesNum;
+        this.threads = Math.max(1, threads);
+        docStart = new int[instances.size() + 1];
+        for (int d = 0; d < instances.size(); d++) {
+            docStart[d + 1] = docStart[d] + ((FeatureSequence) instances.get(d).getData()).getLength();
+        }
+        types = new int[docStart[instances.size()]];
+        topics = new int[types.length];
+        typeTopicCounts = new int[typesNum * topicsNum];
+        tokensPerTopic = new int[topicsNum];
+        SplittableRandom random = new SplittableRandom();
+        seed = random.nextLong();
+        for (int d = 0; d < instances.size(); d++) {
+            FeatureSequence tokens = (FeatureSequence) instances.get(d).getData();
+            for (int i = 0; i < tokens.getLength(); i++) {
+                int token = docStart[d] + i;
+                types[token] = tokens.getIndexAtPosition(i);
+                topics[token] = random.nextInt(topicsNum);
+                typeTopicCounts[types[token] * topicsNum + topics[token]]++;
+                tokensPerTopic[topics[token]]++;
+            }
+        }
+    }
+
+    @Override
+    public void estimate(int iterations) {
+        if (samplers == null) {
+            samplers = partition();
+        }
+        if (samplers.length == 1) {
+            for (int i = 0; i < iterations; i++) {
+                samplers[0].sample();
+                iteration++;
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(samplers.length);
+        try {
+            Future<?>[] futures = new Future<?>[samplers.length];
+            for (int i = 0; i < iterations; i++) {
+                for (int n = 0; n < samplers.length; n++) {
+                    futures[n] = pool.submit(samplers[n]::sample);
+                }
+                join(futures);
+                for (int n = 0; n < samplers.length; n++) {
+                    Sampler sampler = samplers[n];
+                    futures[n] = pool.submit(() -> {
+                        for (Sampler other : samplers) {
+                            if (other != sampler) {
+                                sampler.replay(other);
+                            }
+                        }
+                    });
+                }
+                join(futures);
+                for (Sampler sampler : samplers) {
+                    sampler.logSize = 0;
+                }
+                iteration++;
+            }
+        } catch (RuntimeException e) {
+            stop(pool);
+            throw e;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Stop the tasks of a step which was cancelled or failed, and wait until
+     * none of them runs any more, so that no thread changes the counts after
+     * {@link SparseLdaEngine#estimate(int) estimate} has returned. Samplers
+     * do not check for interruption, so this waits for the tasks already
+     * started. The interrupt status of the caller is kept.
+     *
+     * @param pool the pool running the tasks
+     */
+    private static void stop(ExecutorService pool) {
+        pool.shutdownNow();
+        boolean interrupted = Thread.interrupted();
+        while (!pool.isTerminated()) {
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for the tasks of one step of an iteration.
+     *
+     * @param futures the tasks
+     */
+    private static void join(Future<?>[] futures) {
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Training cancelled during an iteration");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Sampling failed", e.getCause());
+        }
+    }
+
+    /**
+     * Split the instances into ranges of about the same number of tokens, one
+     * per thread.
+     *
+     * @return the samplers of the ranges
+     */
+    private Sampler[] partition() {
+        int docs = docStart.length - 1, parts = Math.max(1, Math.min(threads, docs));
+        Sampler[] parted = new Sampler[parts];
+        int from = 0;
+        for (int n = 0; n < parts; n++) {
+            int to = n == parts - 1 ? docs : from;
+            long target = (long) types.length * (n + 1) / parts;
+            while (to < docs - (parts - n - 1) && (to == from || docStart[to] < target)) {
+                to++;
+            }
+            parted[n] = new Sampler(n, from, to);
+            from = to;
+        }
+        return parted;
+    }
+
+    @Override
+    public int getNumTopics() {
+        return topicsNum;
+    }
+
+    @Override
+    public int getTotalTokens() {
+        return types.length;
+    }
+
+    @Override
+    public Alphabet getAlphabet() {
+        return alphabet;
+    }
+
+    @Override
+    public double[] getTopicProbabilities(int instance) {
+        double[] dist = new double[topicsNum];
+        for (int i = docStart[instance]; i < docStart[instance + 1]; i++) {
+            dist[topics[i]]++;
+        }
+        double norm = docStart[instance + 1] - docStart[instance] + ALPHA_SUM;
+        for (int t = 0; t < topicsNum; t++) {
+            dist[t] = (dist[t] + alpha) / norm;
+        }
+        return dist;
+    }
+
+    @Override
+    public ArrayList<TreeSet<IDSorter>> getSortedWords() {
+        ArrayList<TreeSet<IDSorter>> sorted = new ArrayList<>();
+        for (int t = 0; t < topicsNum; t++) {
+            sorted.add(new TreeSet<>());
+        }
+        for (int type = 0; type < typesNum; type++) {
+            for (int t = 0; t < topicsNum; t++) {
+                if (typeTopicCounts[type * topicsNum + t] > 0) {
+                    sorted.get(t).add(new IDSorter(type, typeTopicCounts[type * topicsNum + t]));
+                }
+            }
+        }
+        return sorted;
+    }
+
+    @Override
+    public double modelLogLikelihood() {
+        double logLikelihood = 0, alphaLogGamma = Dirichlet.logGammaStirling(alpha);
+        int[] counts = new int[topicsNum];
+        for (int d = 0; d + 1 < docStart.length; d++) {
+            Arrays.fill(counts, 0);
+            for (int i = docStart[d]; i < docStart[d + 1]; i++) {
+                counts[topics[i]]++;
+            }
+            for (int t = 0; t < topicsNum; t++) {
+                if (counts[t] > 0) {
+                    logLikelihood += Dirichlet.logGammaStirling(alpha + counts[t]) - alphaLogGamma;
+                }
+            }
+            logLikelihood -= Dirichlet.logGammaStirling(ALPHA_SUM + docStart[d + 1] - docStart[d]);
+        }
+        logLikelihood += (docStart.length - 1) * Dirichlet.logGammaStirling(ALPHA_SUM);
+        int nonZero = 0;
+        for (int count : typeTopicCounts) {
+            if (count > 0) {
+                nonZero++;
+                logLikelihood += Dirichlet.logGammaStirling(beta + count);
+            }
+        }
+        for (int t = 0; t < topicsNum; t++) {
+            logLikelihood -= Dirichlet.logGammaStirling(betaSum + tokensPerTopic[t]);
+        }
+        logLikelihood += topicsNum * Dirichlet.logGammaStirling(betaSum) - nonZero * Dirichlet.logGammaStirling(beta);
+        return logLikelihood;
+    }
+
+    @Override
+    public void write(File file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(this);
+        }
+    }
+
+    /**
+     * A sampler of a range of instances, holding its own copy of the
+     * interest-topic counts with the topics of each interest listed.
+     */
+    private class Sampler {
+
+        /**
+         * The index of this sampler and the range of instances sampled.
+         */
+        private final int index, from, to;
+
+        /**
+         * The copy of the counts, the counts of the engine for the first
+         * sampler.
+         */
+        private final int[] typeTopic, topicTotal;
+
+        /**
+         * The topics of each interest with a token, <code>topicsNum</code>
+         * slots per interest, the number of them and the slot of each topic.
+         */
+        private final int[] typeTopics, typeTopicsNum, typeTopicSlot;
+
+        /**
+         * The changes made in this iteration as triples of interest, old and
+         * new topic, replayed by the other samplers.
+         */
+        private int[] log = new int[0];
+        private int logSize = 0;
+
+        /**
+         * The counts of the topics in the current instance, the topics with
+         * a token and the slot of each topic.
+         */
+        private final int[] docCounts, docTopics, docTopicSlot;
+        private int docTopicsNum = 0;
+
+        /**
+         * <code>(alpha + n_td) / (betaSum + n_t)</code> of every topic in the
+         * current instance.
+         */
+        private final double[] coefficient;
+
+        /**
+         * The terms of the <code>q</code> mass of the current token.
+         */
+        private final double[] qTerms;
+
+        /**
+         * The random number generator of this sampler in the current
+         * iteration.
+         */
+        private SplittableRandom random;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param index the index of this sampler, 0 for the sampler of the
+         * counts of the engine
+         * @param from the first instance sampled
+         * @param to the instance after the range
+         */
+        Sampler(int index, int from, int to) {
+            this.index = index;
+            this.from = from;
+            this.to = to;
+            boolean shared = index == 0;
+            typeTopic = shared ? typeTopicCounts : typeTopicCounts.clone();
+            topicTotal = shared ? tokensPerTopic : tokensPerTopic.clone();
+            typeTopics = new int[typesNum * topicsNum];
+            typeTopicsNum = new int[typesNum];
+            typeTopicSlot = new int[typesNum * topicsNum];
+            for (int type = 0; type < typesNum; type++) {
+                for (int t = 0; t < topicsNum; t++) {
+                    if (typeTopic[type * topicsNum + t] > 0) {
+                        typeTopicSlot[type * topicsNum + t] = typeTopicsNum[type];
+                        typeTopics[type * topicsNum + typeTopicsNum[type]++] = t;
+                    }
+                }
+            }
+            docCounts = new int[topicsNum];
+            docTopics = new int[topicsNum];
+            docTopicSlot = new int[topicsNum];
+            coefficient = new double[topicsNum];
+            qTerms = new double[topicsNum];
+        }
+
+        /**
+         * Sample the topic of every token of the range once.
+         */
+        void sample() {
+            random = new SplittableRandom(new SplittableRandom(seed + iteration).nextLong() + index);
+            double s = 0;
+            for (int t = 0; t < topicsNum; t++) {
+                coefficient[t] = alpha / (betaSum + topicTotal[t]);
+                s += alpha * beta / (betaSum + topicTotal[t]);
+            }
+            for (int d = from; d < to; d++) {
+                if (docStart[d] == docStart[d + 1]) {
+                    continue;
+                }
+                for (int i = docStart[d]; i < docStart[d + 1]; i++) {
+                    addDocTopic(topics[i]);
+                }
+                double r = 0;
+                for (int n = 0; n < docTopicsNum; n++) {
+                    int t = docTopics[n];
+                    coefficient[t] = (alpha + docCounts[t]) / (betaSum + topicTotal[t]);
+                    r += docCounts[t] * beta / (betaSum + topicTotal[t]);
+                }
+                for (int i = docStart[d]; i < docStart[d + 1]; i++) {
+                    int type = types[i], old = topics[i];
+                    double denominator = betaSum + topicTotal[old];
+                    s -= alpha * beta / denominator;
+                    r -= docCounts[old] * beta / denominator;
+                    change(type, old, -1);
+                    if (--docCounts[old] == 0) {
+                        removeDocTopic(old);
+                    }
+                    denominator = betaSum + topicTotal[old];
+                    s += alpha * beta / denominator;
+                    r += docCounts[old] * beta / denominator;
+                    coefficient[old] = (alpha + docCounts[old]) / denominator;
+
+                    int base = type * topicsNum, num = typeTopicsNum[type];
+                    double q = 0;
+                    for (int n = 0; n < num; n++) {
+                        int t = typeTopics[base + n];
+                        qTerms[n] = coefficient[t] * typeTopic[base + t];
+                        q += qTerms[n];
+                    }
+                    int topic = draw(random.nextDouble() * (s + r + q), q, r, base, num);
+
+                    denominator = betaSum + topicTotal[topic];
+                    s -= alpha * beta / denominator;
+                    r -= docCounts[topic] * beta / denominator;
+                    change(type, topic, 1);
+                    addDocTopic(topic);
+                    denominator = betaSum + topicTotal[topic];
+                    s += alpha * beta / denominator;
+                    r += docCounts[topic] * beta / denominator;
+                    coefficient[topic] = (alpha + docCounts[topic]) / denominator;
+                    topics[i] = topic;
+                    if (topic != old && samplers.length > 1) {
+                        if (logSize + 3 > log.length) {
+                            log = Arrays.copyOf(log, Math.max(48, log.length * 2));
+                        }
+                        log[logSize++] = type;
+                        log[logSize++] = old;
+                        log[logSize++] = topic;
+                    }
+                }
+                for (int n = 0; n < docTopicsNum; n++) {
+                    int t = docTopics[n];
+                    docCounts[t] = 0;
+                    coefficient[t] = alpha / (betaSum + topicTotal[t]);
+                }
+                docTopicsNum = 0;
+            }
+        }
+
+        /**
+         * Draw a topic from the three masses of the sampling distribution.
+         *
+         * @param u a uniform value below <code>s + r + q</code>
+         * @param q the <code>q</code> mass
+         * @param r the <code>r</code> mass
+         * @param base the first slot of the interest of the token
+         * @param num the number of topics of the interest
+         * @return the topic drawn
+         */
+        private int draw(double u, double q, double r, int base, int num) {
+            if (u < q) {
+                for (int n = 0; n < num - 1; n++) {
+                    u -= qTerms[n];
+                    if (u < 0) {
+                        return typeTopics[base + n];
+                    }
+                }
+                return typeTopics[base + num - 1];
+            }
+            u -= q;
+            if (u < r && docTopicsNum > 0) {
+                for (int n = 0; n < docTopicsNum - 1; n++) {
+                    int t = docTopics[n];
+                    u -= docCounts[t] * beta / (betaSum + topicTotal[t]);
+                    if (u < 0) {
+                        return t;
+                    }
+                }
+                return docTopics[docTopicsNum - 1];
+            }
+            u -= r;
+            for (int t = 0; t < topicsNum - 1; t++) {
+                u -= alpha * beta / (betaSum + topicTotal[t]);
+                if (u < 0) {
+                    return t;
+                }
+            }
+            return topicsNum - 1;
+        }
+
+        /**
+         * Count a token of a topic in the current instance.
+         *
+         * @param topic the topic
+         */
+        private void addDocTopic(int topic) {
+            if (docCounts[topic]++ == 0) {
+                docTopicSlot[topic] = docTopicsNum;
+                docTopics[docTopicsNum++] = topic;
+            }
+        }
+
+        /**
+         * Remove a topic left without tokens from the topics of the current
+         * instance.
+         *
+         * @param topic the topic
+         */
+        private void removeDocTopic(int topic) {
+            int slot = docTopicSlot[topic], last = docTopics[--docTopicsNum];
+            docTopics[slot] = last;
+            docTopicSlot[last] = slot;
+        }
+
+        /**
+         * Change the number of tokens of an interest in a topic by one,
+         * keeping the topics of the interest listed.
+         *
+         * @param type the interest
+         * @param topic the topic
+         * @param delta 1 or -1
+         */
+        private void change(int type, int topic, int delta) {
+            int base = type * topicsNum, count = typeTopic[base + topic] += delta;
+            topicTotal[topic] += delta;
+            if (delta > 0 && count == 1) {
+                typeTopicSlot[base + topic] = typeTopicsNum[type];
+                typeTopics[base + typeTopicsNum[type]++] = topic;
+            } else if (delta < 0 && count == 0) {
+                int slot = typeTopicSlot[base + topic], last = typeTopics[base + --typeTopicsNum[type]];
+                typeTopics[base + slot] = last;
+                typeTopicSlot[base + last] = slot;
+            }
+        }
+
+        /**
+         * Apply the changes logged by another sampler in this iteration.
+         *
+         * @param other the other sampler
+         */
+        void replay(Sampler other) {
+            for (int n = 0; n < other.logSize; n += 3) {
+                change(other.log[n], other.log[n + 1], -1);
+                change(other.log[n], other.log[n + 2], 1);
+            }
+        }
+    }
+}
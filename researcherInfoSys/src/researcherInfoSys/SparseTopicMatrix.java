@@ -0,0 +1,191 @@
+package researcherInfoSys;
+
+/**
+ * A sparse approximation of a {@link TopicMatrix topic matrix}. Each row keeps
+ * only its <code>m</code> main topics, and the residual probability mass is
+ * spread evenly over the other topics, which with the smoothing of the topic
+ * model are mostly noise anyway. A row then takes <code>O(m)</code> memory
+ * instead of <code>O(topicsNum)</code>, and since the residual is constant
+ * within a row the cosine and KL kernels against a dense query also run in
+ * <code>O(m)</code>:
+ * <ul>
+ * <li><code>sum(p log q) = sum_main(p log q) + (1 - sum_main(p)) log r</code>
+ * where <code>r</code> is the residual probability of each other topic</li>
+ * <li>the cosine dot product is split the same way, with the norm of every row
+ * computed once</li>
+ * </ul>
+ * Both kernels give exactly the values the dense kernels would give on the
+ * approximated rows.
+ *
+ * @author james
+ */
+public class SparseTopicMatrix {
+
+    /**
+     * The number of topics kept for each row.
+     */
+    private final int m;
+
+    /**
+     * The number of topics, that is the number of columns.
+     */
+    private final int topicsNum;
+
+    /**
+     * The number of rows.
+     */
+    private final int size;
+
+    /**
+     * The main topics of every row, <code>m</code> per row in row-major
+     * order.
+     */
+    private final short[] topics;
+
+    /**
+     * The probabilities of the main topics and their base-2 logarithms, in
+     * the order of {@link SparseTopicMatrix#topics topics}.
+     */
+    private final double[] values, logs;
+
+    /**
+     * The probability of each other topic of every row and its base-2
+     * logarithm.
+     */
+    private final double[] residual, residualLog;
+
+    /**
+     * The norm of every row in the space of the cosine kernel.
+     */
+    private final double[] norm;
+
+    /**
+     * Constructor with parameter, keeping the <code>m</code> main topics of
+     * every row of a matrix.
+     *
+     * @param matrix the topic matrix
+     * @param m the number of topics kept for each row
+     */
+    public SparseTopicMatrix(TopicMatrix matrix, int m) {
+        if (matrix.getTopicsNum() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many topics for a sparse matrix - " + matrix.getTopicsNum());
+        }
+        this.topicsNum = matrix.getTopicsNum();
+        this.m = Math.max(1, Math.min(m, topicsNum));
+        this.size = matrix.size();
+        topics = new short[size * this.m];
+        values = new double[size * this.m];
+        logs = new double[size * this.m];
+        residual = new double[size];
+        residualLog = new double[size];
+        norm = new double[size];
+        int rest = topicsNum - this.m;
+        for (int row = 0; row < size; row++) {
+            double[] dist = matrix.getRow(row);
+            int[] mainTopics = TopicModel.getMainTopics(dist, this.m);
+            double kept = 0, bb = 0;
+            for (int i = 0; i < this.m; i++) {
+                int offset = row * this.m + i;
+                double q = dist[mainTopics[i]];
+                topics[offset] = (short) mainTopics[i];
+                values[offset] = q;
+                logs[offset] = DivergenceEngine.log2(q);
+                kept += q;
+                bb += (2 * q - 1) * (2 * q - 1);
+            }
+            residual[row] = rest == 0 ? 0 : Math.max(0, 1 - kept) / rest;
+            residualLog[row] = DivergenceEngine.log2(residual[row]);
+            bb += rest * (2 * residual[row] - 1) * (2 * residual[row] - 1);
+            norm[row] = Math.sqrt(bb);
+        }
+    }
+
+    /**
+     * Get the number of topics kept for each row.
+     *
+     * @return the number of topics kept
+     */
+    public int getM() {
+        return m;
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the number of bytes taken by the approximated rows.
+     *
+     * @return the size of the matrix in bytes
+     */
+    public long getBytes() {
+        return (long) size * m * (2 + 8 + 8) + (long) size * 3 * 8;
+    }
+
+    /**
+     * Calculate the norm of a dense query in the space of the cosine kernel,
+     * to be passed to
+     * {@link SparseTopicMatrix#calCosineSimilarity(double[], double, int)
+     * calCosineSimilarity}.
+     *
+     * @param p the topic distribution of the query
+     * @return the norm
+     */
+    public static double calNorm(double[] p) {
+        double aa = 0;
+        for (double x : p) {
+            aa += (2 * x - 1) * (2 * x - 1);
+        }
+        return Math.sqrt(aa);
+    }
+
+    /**
+     * Calculate the cosine similarity value between a dense query and an
+     * approximated row, as {@link Similarity#calCosineSimilarity(double[],
+     * double[]) the dense kernel} does.
+     *
+     * @param p the topic distribution of the query, summing to 1
+     * @param pNorm the norm of the query
+     * @param row the row index
+     * @return the cosine similarity value
+     */
+    public double calCosineSimilarity(double[] p, double pNorm, int row) {
+        if (pNorm == 0 || norm[row] == 0) {
+            return -2;
+        }
+        double y = 2 * residual[row] - 1;
+        double xMain = 0, ab = 0;
+        for (int i = row * m; i < (row + 1) * m; i++) {
+            double x = 2 * p[topics[i]] - 1;
+            xMain += x;
+            ab += x * (2 * values[i] - 1);
+        }
+        ab += y * (2 - topicsNum - xMain);
+        return ab / (pNorm * norm[row]);
+    }
+
+    /**
+     * Calculate the KL divergence of an approximated row from a dense query,
+     * that is <code>KL(p||q)</code> where <code>q</code> is the row.
+     *
+     * @param p the topic distribution of the query, summing to 1
+     * @param pEntropy the entropy of the query distribution
+     * @param row the row index
+     * @return the KL divergence in bits
+     */
+    public double calKL(double[] p, double pEntropy, int row) {
+        double cross = 0, pMain = 0;
+        for (int i = row * m; i < (row + 1) * m; i++) {
+            double x = p[topics[i]];
+            pMain += x;
+            cross += x * logs[i];
+        }
+        cross += (1 - pMain) * residualLog[row];
+        return -pEntropy - cross;
+    }
+}
@@ -15,23 +15,27 @@ public class Test {
     private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
 
     /**
-     * A topic model instance used for recommendation.
+     * The trainer building and publishing the models used for
+     * recommendation.
      */
-    private static TopicModel tm = null;
+    private static final ModelTrainer trainer = new ModelTrainer();
 
     /**
-     * A K-means model instance used for recommendation.
-     */
-    private static KmeansModel km = null;
-
-    /**
-     * Provide a command line menu for testing Task 1-6.
+     * Provide a command line menu for testing Task 1-6. Structures needed by
+     * a task are built on its first use, or in the background by the
+     * {@link WarmUp warm-up} if the settings ask for it.
      */
     public static void showMenu() {
         boolean quit = false;
         LinkedList<Researcher> researcherList;
         String name;
-        Researcher.createMalletData();
+        String warmUp = WarmUp.getLevel();
+        if (!warmUp.equals("none")) {
+            WarmUp.start();
+            if (warmUp.equals("all")) {
+                trainer.rebuild(false);
+            }
+        }
         do {
             System.out.println("\n" + S1 + "Please input your operation such as '3' for task 3, 'Q' to exit: ");
             System.out.println(S3 + "【1】 – calculate the number of distinct researchers in the dataset");
@@ -40,6 +44,11 @@ public class Test {
             System.out.println(S3 + "【4】 - given an interest, calculate the number of researchers who have that interest");
             System.out.println(S3 + "【5】 – given two interests, show the number of times they co-occur");
             System.out.println(S3 + "【6】 – given a researcher, find similar researchers based on their interests");
+            System.out.println(S3 + "【7】 – given a boolean query of interests (e.g. a AND (b OR c) NOT d), list the matching researchers (~a also matches interests related to a)");
+            System.out.println(S3 + "【8】 – given a university or department, show its number of researchers and top interests");
+            System.out.println(S3 + "【9】 – show the progress of the warm-up and the background model build, or cancel the build");
+            System.out.println(S3 + "【10】 – given several researchers, find researchers similar to the whole group");
+            System.out.println(S3 + "【11】 – given a delta file, add, modify or remove researchers without reloading the dataset");
             System.out.println(S3 + "【Q】 - exit the system");
 
             String str = Input.getString(S1 + "Enter your command here").trim().toLowerCase();
@@ -76,6 +85,7 @@ public class Test {
                     String interest = Input.getString(S3 + "Enter the interest");
                     Timer.start();
                     System.out.println(S2 + "Number of distinct researchers with interest \"" + interest + "\" = " + Researcher.getResearcherNumByInterest(interest));
+                    System.out.println(S2 + "Related interests = " + InterestGraph.get().getRelated(interest, InterestGraph.DEFAULT_EXPANSION).keySet());
                     System.out.println(S3 + Timer.getTime());
                     break;
                 case "5":
@@ -86,38 +96,133 @@ public class Test {
                     System.out.println(S3 + Timer.getTime());
                     break;
                 case "6":
-                    System.out.println(S3 + "- a.Probabilistic Topic Model\n" + S3 + "- b.K-Means Clustering\n" + S3 + "- c.Ranking by Cosine Similarity");
+                    System.out.println(S3 + "- a.Probabilistic Topic Model\n" + S3 + "- b.K-Means Clustering\n" + S3 + "- c.Ranking by Cosine Similarity\n" + S3 + "- d.Ranking by Jensen-Shannon Divergence");
                     String algorithmStr;
                     do {
-                        algorithmStr = Input.getString(S3 + "Choose an algorithm (a/b/c)").trim().toLowerCase();
-                    } while (!algorithmStr.equals("a") && !algorithmStr.equals("b") && !algorithmStr.equals("c"));
+                        algorithmStr = Input.getString(S3 + "Choose an algorithm (a/b/c/d)").trim().toLowerCase();
+                    } while (!algorithmStr.equals("a") && !algorithmStr.equals("b") && !algorithmStr.equals("c") && !algorithmStr.equals("d"));
 
+                    boolean withKmeans = algorithmStr.equals("b");
                     String ch1 = "y";
-                    if (tm != null) {
+                    if (trainer.isRunning()) {
+                        ch1 = "n";
+                        System.out.println(S2 + trainer.getStatus());
+                    } else if (trainer.getTopicModel() != null) {
                         do {
-                            ch1 = Input.getString(S3 + "A topic model already existed, do you want to rebuild it? (y/n)").trim().toLowerCase();
+                            ch1 = Input.getString(S3 + "A topic model already existed, do you want to rebuild it in the background? (y/n)").trim().toLowerCase();
                         } while (!ch1.equals("y") && !ch1.equals("n"));
                     }
                     if (ch1.equals("y")) {
-                        tm = new TopicModel(30);
+                        trainer.rebuild(withKmeans);
+                        System.out.println(S1 + "Building models in the background, use 【9】 to follow or cancel the build......");
+                    }
+                    boolean ready = true;
+                    while (ready && (trainer.getTopicModel() == null || (withKmeans && trainer.getKmeansModel() == null))) {
+                        if (!trainer.isRunning()) {
+                            trainer.rebuild(withKmeans);
+                        }
+                        System.out.println(S1 + "No model to answer with yet, waiting for the build......");
+                        ready = trainer.await(state -> System.out.println(S3 + state));
+                    }
+                    if (!ready) {
+                        System.out.println(S2 + trainer.getStatus());
+                        break;
+                    }
+                    if (trainer.isRunning()) {
+                        System.out.println(S3 + "Answering with the previous models until the new ones are published.");
                     }
 
-                    if (algorithmStr.equals("b")) {
-                        String ch2 = "y";
-                        if (!ch1.equals("y") && km != null) {
-                            do {
-                                ch2 = Input.getString(S3 + "A K-means model already existed, do you want to rebuild it? (y/n)").trim().toLowerCase();
-                            } while (!ch2.equals("y") && !ch2.equals("n"));
+                    handleRecommendation(algorithmStr, trainer.getTopicModel(), trainer.getKmeansModel());
+                    System.out.println(S3 + RecommendCache.getStatistics());
+                    break;
+                case "7":
+                    String query = Input.getString(S3 + "Enter the query");
+                    Timer.start();
+                    try {
+                        InterestQuery iq = new InterestQuery(query);
+                        System.out.println(S2 + "Number of researchers matching \"" + query + "\" = " + iq.count());
+                        for (Researcher researcher : iq.page(0, 10)) {
+                            System.out.println(S3 + researcher.getName() + "\t" + researcher.getUniversity() + "\t" + researcher.getDepartment());
                         }
-                        if (ch2.equals("y")) {
-                            Researcher[] catalog = tm.createArff("data/topicDistribution.arff");
-                            System.out.println(S2 + "Attributes of each researcher assigned.");
-                            System.out.println(S1 + "Clustering using K-Means algorithm......");
-                            km = new KmeansModel(100, catalog);
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(S2 + "Invalid query - " + e.getMessage());
+                    }
+                    System.out.println(S3 + Timer.getTime());
+                    break;
+                case "8":
+                    String value = Input.getString(S3 + "Enter the university or department (blank for the largest ones)").trim();
+                    Timer.start();
+                    Facets facets = Facets.get();
+                    if (value.isEmpty()) {
+                        System.out.println(S2 + "Largest universities\t" + facets.university.getTopValues(10));
+                        System.out.println(S2 + "Largest departments\t" + facets.department.getTopValues(10));
+                    } else {
+                        for (Facets.Facet facet : new Facets.Facet[]{facets.university, facets.department}) {
+                            if (facet.getCount(value) > 0) {
+                                System.out.println(S2 + "Number of researchers in \"" + value + "\" = " + facet.getCount(value));
+                                System.out.println(S3 + "Top interests\t\t" + facet.getTopInterests(value));
+                            }
+                        }
+                        if (facets.university.getCount(value) == 0 && facets.department.getCount(value) == 0) {
+                            System.out.println(S2 + "Not found " + value);
+                        }
+                    }
+                    System.out.println(S3 + Timer.getTime());
+                    break;
+                case "9":
+                    if (!warmUp.equals("none")) {
+                        System.out.println(S2 + WarmUp.getStatus());
+                    }
+                    System.out.println(S2 + trainer.getStatus());
+                    if (trainer.isRunning()) {
+                        String ch = Input.getString(S3 + "Cancel the build? (y/n)").trim().toLowerCase();
+                        if (ch.equals("y") && trainer.cancel()) {
+                            System.out.println(S3 + "Cancelling, the previous models are kept.");
                         }
                     }
-
-                    handleRecommendation(algorithmStr);
+                    break;
+                case "10":
+                    TopicModel groupModel = trainer.getTopicModel();
+                    if (groupModel == null) {
+                        if (!trainer.isRunning()) {
+                            trainer.rebuild(false);
+                        }
+                        System.out.println(S2 + "No topic model yet, building one in the background, use 【9】 to follow the build.");
+                        break;
+                    }
+                    LinkedList<Researcher> group = new LinkedList<>();
+                    for (String member : Input.getString(S3 + "Enter the researcher names, separated by ';'").split(";")) {
+                        researcherList = Researcher.getResearcherInfo(member.trim());
+                        if (researcherList != null) {
+                            group.addAll(researcherList);
+                        } else if (!member.trim().isEmpty()) {
+                            System.out.println(S2 + "Not found " + member.trim());
+                        }
+                    }
+                    String aggregationStr;
+                    do {
+                        aggregationStr = Input.getString(S3 + "Aggregate by the group centroid, the most or the least similar member? (centroid/max/min)").trim().toUpperCase();
+                    } while (!aggregationStr.equals("CENTROID") && !aggregationStr.equals("MAX") && !aggregationStr.equals("MIN"));
+                    Aggregation aggregation = Aggregation.valueOf(aggregationStr);
+                    Timer.start();
+                    try {
+                        RecommendResult groupResult = groupModel.getGroupResult(group, Algorithm.COSINE, aggregation, RecommendResult.DEFAULT_LEN);
+                        System.out.println(S2 + "Similar to " + aggregation.getTitle() + " of " + group.size() + " researchers by " + Algorithm.COSINE.getTitle());
+                        for (int i = 0; i < groupResult.size(); i++) {
+                            Researcher r = groupResult.getResearchers().get(i);
+                            System.out.format(" [%d]    %s (%s - %s)\n", i + 1, r.getName(), r.getUniversity(), r.getDepartment());
+                            System.out.println(S3 + Algorithm.COSINE.getIndicator() + "\t\t" + groupResult.getValues().get(i));
+                        }
+                    } catch (IllegalArgumentException e) {
+                        System.out.println(S2 + e.getMessage());
+                    }
+                    System.out.println(S3 + Timer.getTime());
+                    break;
+                case "11":
+                    String deltaFile = Input.getString(S3 + "Enter the path of the delta file").trim();
+                    if (DeltaUpdate.apply(deltaFile, System.out, true) > 0 && !trainer.isRunning()) {
+                        System.out.println(S3 + "Use 【6】 to rebuild the models with the new data.");
+                    }
                     break;
                 case "q":
                     quit = true;
@@ -134,27 +239,68 @@ public class Test {
      * Call different method using different recommendation algorithms.
      *
      * @param option represents the specified algorithm user wants to use
+     * @param tm the topic model answering the query
+     * @param km the K-means model answering the query
      */
-    private static void handleRecommendation(String option) {
+    private static void handleRecommendation(String option, TopicModel tm, KmeansModel km) {
         String name = Input.getString(S1 + "Enter the researcher name");
         LinkedList<Researcher> researcherList = Researcher.getResearcherInfo(name);
         if (researcherList != null) {
             System.out.println(S2 + "There're " + researcherList.size() + " researcher named " + name);
             for (Researcher researcher : researcherList) {
+                if (!option.equals("b") && tm.getRow(researcher) < 0) {
+                    System.out.println(S2 + researcher.getName() + " (" + researcher.getUniversity() + " - " + researcher.getDepartment()
+                            + ") is not in the topic model yet, rebuild it to include him/her");
+                    continue;
+                }
+                RankedCursor cursor;
                 switch (option) {
                     case "a":
-                        tm.recommend(researcher);
+                        cursor = tm.getRankedCursor(researcher, Algorithm.PROBABILITY);
+                        tm.recommend(cursor);
                         tm.recommend_KL(researcher);
+                        showMore(cursor, Algorithm.PROBABILITY);
                         break;
                     case "b":
                         km.recommend(researcher);
                         break;
                     case "c":
-                        tm.recommend_Cosine(researcher);
+                        cursor = tm.getRankedCursor(researcher, Algorithm.COSINE);
+                        tm.recommend(cursor);
+                        showMore(cursor, Algorithm.COSINE);
+                        break;
+                    case "d":
+                        cursor = tm.getRankedCursor(researcher, Algorithm.JS);
+                        tm.recommend(cursor);
+                        showMore(cursor, Algorithm.JS);
                 }
             }
         } else {
             System.out.println(S2 + "Not found " + name);
         }
     }
+
+    /**
+     * Show further pages of recommendations after the first one, taken from
+     * the cursor which produced the first one, as long as the user asks for
+     * them.
+     *
+     * @param cursor the cursor which produced the first page
+     * @param algorithm the algorithm used to measure similarity
+     */
+    private static void showMore(RankedCursor cursor, Algorithm algorithm) {
+        while (Input.getString(S3 + "Show the next " + RecommendResult.DEFAULT_LEN + " by " + algorithm.getTitle() + "? (y/n)").trim().toLowerCase().equals("y")) {
+            Timer.start();
+            RecommendResult page = cursor.nextPage(RecommendResult.DEFAULT_LEN);
+            for (int i = 0; i < page.size(); i++) {
+                Researcher r = page.getResearchers().get(i);
+                System.out.format(" [%d]    %s (%s - %s)\n", cursor.getPosition() - page.size() + i + 1, r.getName(), r.getUniversity(), r.getDepartment());
+                System.out.println(S3 + algorithm.getIndicator() + "\t\t" + page.getValues().get(i));
+            }
+            System.out.println(S3 + Timer.getTime());
+            if (page.size() < RecommendResult.DEFAULT_LEN) {
+                break;
+            }
+        }
+    }
 }
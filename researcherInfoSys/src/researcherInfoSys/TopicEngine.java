@@ -0,0 +1,143 @@
+package researcherInfoSys;
+
+import cc.mallet.topics.ParallelTopicModel;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.IDSorter;
+import cc.mallet.types.InstanceList;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.TreeSet;
+
+/**
+ * A Gibbs sampler of the LDA topic model behind {@link TopicModel}. Every
+ * engine samples the same model, with a symmetric Dirichlet prior of
+ * {@link TopicEngine#ALPHA_SUM ALPHA_SUM} over the topics of an instance and
+ * {@link TopicEngine#BETA BETA} over the interests of a topic, from the same
+ * instances, and reports its result in the types of Mallet, so the topic
+ * distributions and the interest distributions of a {@link TopicModel} do not
+ * depend on the engine. The <code>topicEngine</code> setting of
+ * {@link Config the settings file} selects the engine:
+ * <ul>
+ * <li><code>mallet</code>, the default - {@link MalletEngine Mallet's}
+ * <code>ParallelTopicModel</code></li>
+ * <li><code>sparse</code> - the {@link SparseLdaEngine built-in SparseLDA
+ * sampler}, tuned for short profiles</li>
+ * </ul>
+ * Engines are serializable between two iterations, which is how
+ * {@link Checkpoint checkpoints} save them.
+ *
+ * @author james
+ */
+public interface TopicEngine extends Serializable {
+
+    /**
+     * The sum of the Dirichlet prior over the topics of an instance.
+     */
+    double ALPHA_SUM = 1.0;
+
+    /**
+     * The Dirichlet prior over the interests of a topic.
+     */
+    double BETA = 0.01;
+
+    /**
+     * Run more iterations of Gibbs sampling, continuing from the current
+     * state.
+     *
+     * @param iterations the number of iterations
+     */
+    void estimate(int iterations);
+
+    /**
+     * Get the number of topics.
+     *
+     * @return the topics number
+     */
+    int getNumTopics();
+
+    /**
+     * Get the number of interest tokens sampled.
+     *
+     * @return the number of tokens
+     */
+    int getTotalTokens();
+
+    /**
+     * Get the alphabet of the interests.
+     *
+     * @return the alphabet
+     */
+    Alphabet getAlphabet();
+
+    /**
+     * Get the topic distribution of an instance, smoothed by the prior.
+     *
+     * @param instance the index of the instance
+     * @return the probability of each topic
+     */
+    double[] getTopicProbabilities(int instance);
+
+    /**
+     * Get the interests of each topic with their number of tokens, the most
+     * frequent first.
+     *
+     * @return the sorted interests of each topic
+     */
+    ArrayList<TreeSet<IDSorter>> getSortedWords();
+
+    /**
+     * Get the log-likelihood of the sampled state, including both the
+     * topic-interest and the instance-topic terms.
+     *
+     * @return the model log-likelihood
+     */
+    double modelLogLikelihood();
+
+    /**
+     * Save the engine so that it can be {@link TopicEngine#read(File) read}
+     * back.
+     *
+     * @param file the file
+     * @throws IOException if writing fails
+     */
+    void write(File file) throws IOException;
+
+    /**
+     * Create an engine sampling a list of instances, with the topics of the
+     * tokens assigned at random.
+     *
+     * @param name <code>mallet</code> or <code>sparse</code>
+     * @param instances the instances, whose data are feature sequences
+     * @param topicsNum the number of topics
+     * @param threads the number of sampling threads
+     * @return the engine
+     */
+    static TopicEngine create(String name, InstanceList instances, int topicsNum, int threads) {
+        switch (name.toLowerCase()) {
+            case "mallet":
+                return new MalletEngine(instances, topicsNum, threads);
+            case "sparse":
+                return new SparseLdaEngine(instances, topicsNum, threads);
+            default:
+                throw new IllegalArgumentException("Unknown topic engine - " + name);
+        }
+    }
+
+    /**
+     * Read an engine saved by {@link TopicEngine#write(File) write}.
+     *
+     * @param file the file
+     * @return the engine
+     * @throws Exception if reading fails
+     */
+    static TopicEngine read(File file) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+            Object engine = in.readObject();
+            return engine instanceof ParallelTopicModel ? new MalletEngine((ParallelTopicModel) engine) : (TopicEngine) engine;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package researcherInfoSys;
+
+/**
+ * An inverted index from each topic of a {@link TopicModel topic model} to
+ * the instances for which it is a main topic, ranked by
+ * {@link TopicModel#getMainTopics(double[], int) the same logic} used to
+ * print the composition of a researcher. Recommendation candidates are the
+ * instances sharing a main topic with the main topics of the researcher
+ * requiring recommendation, which are then scored exactly; probing more
+ * topics of the researcher trades latency for recall.
+ *
+ * @author james
+ */
+public class TopicIndex {
+
+    /**
+     * The default number of main topics indexed for each instance.
+     */
+    public static final int DEFAULT_INDEXED = 5;
+
+    /**
+     * The sorted rows of the instances of each topic.
+     */
+    private final int[][] postings;
+
+    /**
+     * The number of main topics indexed for each instance.
+     */
+    private final int indexed;
+
+    /**
+     * Constructor with parameter, indexing the main topics of every row of a
+     * topic distribution matrix.
+     *
+     * @param matrix the topic distribution matrix
+     * @param indexed the number of main topics indexed for each row
+     */
+    public TopicIndex(TopicMatrix matrix, int indexed) {
+        this.indexed = indexed;
+        int[] sizes = new int[matrix.getTopicsNum()];
+        int[][] mainTopics = new int[matrix.size()][];
+        for (int row = 0; row < matrix.size(); row++) {
+            mainTopics[row] = TopicModel.getMainTopics(matrix.getRow(row), indexed);
+            for (int topic : mainTopics[row]) {
+                sizes[topic]++;
+            }
+        }
+        postings = new int[sizes.length][];
+        for (int topic = 0; topic < sizes.length; topic++) {
+            postings[topic] = new int[sizes[topic]];
+            sizes[topic] = 0;
+        }
+        for (int row = 0; row < mainTopics.length; row++) {
+            for (int topic : mainTopics[row]) {
+                postings[topic][sizes[topic]++] = row;
+            }
+        }
+    }
+
+    /**
+     * Get the candidates for a topic distribution, that is the rows sharing
+     * a main topic with one of its <code>probe</code> main topics. More
+     * topics are probed while there are fewer than <code>min</code>
+     * candidates.
+     *
+     * @param dist the topic distribution of the researcher requiring
+     * recommendation
+     * @param probe the number of main topics of the distribution probed
+     * @param min the minimum number of candidates, if the index has that many
+     * rows
+     * @return the sorted candidate rows
+     */
+    public int[] getCandidates(double[] dist, int probe, int min) {
+        int[] mainTopics = TopicModel.getMainTopics(dist, dist.length);
+        int[] candidates = new int[0];
+        for (int i = 0; i < mainTopics.length && (i < probe || candidates.length < min); i++) {
+            candidates = InterestQuery.union(candidates, postings[mainTopics[i]]);
+        }
+        return candidates;
+    }
+
+    /**
+     * Get the rows of the instances for which a topic is a main topic.
+     *
+     * @param topic the topic index
+     * @return the sorted rows
+     */
+    int[] getPosting(int topic) {
+        return postings[topic];
+    }
+
+    /**
+     * Get the number of main topics indexed for each instance.
+     *
+     * @return the number of main topics indexed
+     */
+    public int getIndexed() {
+        return indexed;
+    }
+}
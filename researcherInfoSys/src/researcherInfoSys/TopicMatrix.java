@@ -0,0 +1,355 @@
+package researcherInfoSys;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+
+/**
+ * The topic distributions of all instances of a {@link TopicModel topic
+ * model}, stored as a matrix with one row per instance and one column per
+ * topic. The matrix is kept either on the Java heap, one
+ * <code>double[]</code> per row, or off-heap in a memory-mapped file which
+ * several processes on one host can map to share a single physical copy.
+ * Similarity kernels read off-heap rows in place without copying them.
+ * <p>
+ * The file layout is a 24-byte header (magic number, rows, columns, length of
+ * the names block, checksum of the data the matrix was built from), the
+ * matrix in row-major order, the base-2 logarithm of every probability in
+ * the same order and the entropy of every row, which are the tables of the
+ * {@link DivergenceEngine divergence engine}, then the instance names as
+ * UTF-8 separated by line breaks. Numbers are in the native byte order of
+ * the host. Saving the divergence tables with the matrix lets every process
+ * mapping the file share them too, instead of computing a private copy on
+ * its heap as large as the matrix.
+ *
+ * @author james
+ */
+public class TopicMatrix {
+
+    /**
+     * The magic number at the start of a matrix file.
+     */
+    private static final int MAGIC = 0x52544d33;
+
+    /**
+     * The size of the file header in bytes.
+     */
+    private static final int HEADER = 24;
+
+    /**
+     * The instance name of each row.
+     */
+    private final String[] names;
+
+    /**
+     * Map between the instance name and its row index.
+     */
+    private final HashMap<String, Integer> index = new HashMap<>();
+
+    /**
+     * The number of topics, that is the number of columns.
+     */
+    private final int topicsNum;
+
+    /**
+     * The rows of an on-heap matrix, <code>null</code> if the matrix is
+     * off-heap.
+     */
+    private final double[][] rows;
+
+    /**
+     * The matrix in row-major order of an off-heap matrix, <code>null</code>
+     * if the matrix is on the heap.
+     */
+    private final DoubleBuffer buffer;
+
+    /**
+     * The logarithm of every probability and the entropy of every row of an
+     * off-heap matrix, <code>null</code> if the matrix is on the heap.
+     */
+    private final DoubleBuffer logs, entropy;
+
+    /**
+     * The checksum of the mallet data file the matrix was built from, 0 if
+     * unknown.
+     */
+    private final long dataChecksum;
+
+    /**
+     * Constructor with parameter, constructing a new on-heap
+     * <code>TopicMatrix</code> instance.
+     *
+     * @param names the instance name of each row
+     * @param rows the topic distribution of each row
+     * @param topicsNum the number of topics
+     */
+    public TopicMatrix(String[] names, double[][] rows, int topicsNum) {
+        this(names, rows, null, null, null, topicsNum, 0);
+    }
+
+    /**
+     * Constructor with parameter.
+     *
+     * @param names the instance name of each row
+     * @param rows the rows of an on-heap matrix, or <code>null</code>
+     * @param buffer the mapped matrix of an off-heap matrix, or
+     * <code>null</code>
+     * @param logs the mapped logarithms of an off-heap matrix, or
+     * <code>null</code>
+     * @param entropy the mapped entropies of an off-heap matrix, or
+     * <code>null</code>
+     * @param topicsNum the number of topics
+     * @param dataChecksum the checksum of the mallet data file, 0 if unknown
+     */
+    private TopicMatrix(String[] names, double[][] rows, DoubleBuffer buffer, DoubleBuffer logs, DoubleBuffer entropy, int topicsNum,
+            long dataChecksum) {
+        this.names = names;
+        this.rows = rows;
+        this.buffer = buffer;
+        this.logs = logs;
+        this.entropy = entropy;
+        this.topicsNum = topicsNum;
+        this.dataChecksum = dataChecksum;
+        for (int i = 0; i < names.length; i++) {
+            index.put(names[i], i);
+        }
+    }
+
+    /**
+     * Get the number of rows, that is the number of instances.
+     *
+     * @return the number of rows
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Get the number of topics, that is the number of columns.
+     *
+     * @return the number of topics
+     */
+    public int getTopicsNum() {
+        return topicsNum;
+    }
+
+    /**
+     * Check whether the matrix is stored in a memory-mapped file.
+     *
+     * @return <code>true</code> if the matrix is off-heap
+     */
+    public boolean isOffHeap() {
+        return buffer != null;
+    }
+
+    /**
+     * Get the base-2 logarithm of every probability of an off-heap matrix,
+     * mapped from the matrix file, in row-major order.
+     *
+     * @return the logarithms, <code>null</code> if the matrix is on the heap
+     */
+    DoubleBuffer getLogTable() {
+        return logs;
+    }
+
+    /**
+     * Get the entropy of every row of an off-heap matrix, mapped from the
+     * matrix file.
+     *
+     * @return the entropies, <code>null</code> if the matrix is on the heap
+     */
+    DoubleBuffer getEntropyTable() {
+        return entropy;
+    }
+
+    /**
+     * Get the checksum of the mallet data file the matrix was built from, as
+     * saved in the matrix file.
+     *
+     * @return the checksum, 0 if unknown
+     */
+    public long getDataChecksum() {
+        return dataChecksum;
+    }
+
+    /**
+     * Get the instance name of a row.
+     *
+     * @param row the row index
+     * @return the instance name
+     */
+    public String getName(int row) {
+        return names[row];
+    }
+
+    /**
+     * Get the row index of an instance.
+     *
+     * @param instanceName the instance name
+     * @return the row index, or -1 if the instance is not in the matrix
+     */
+    public int indexOf(String instanceName) {
+        Integer row = index.get(instanceName);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Get a single probability of the matrix.
+     *
+     * @param row the row index
+     * @param topic the topic index
+     * @return the probability of the topic in the row
+     */
+    public double get(int row, int topic) {
+        return buffer == null ? rows[row][topic] : buffer.get(row * topicsNum + topic);
+    }
+
+    /**
+     * Get the topic distribution of a row. Rows of an on-heap matrix are
+     * returned as is, rows of an off-heap matrix are copied.
+     *
+     * @param row the row index
+     * @return the topic distribution of the row
+     */
+    public double[] getRow(int row) {
+        if (buffer == null) {
+            return rows[row];
+        }
+        double[] dist = new double[topicsNum];
+        for (int j = 0; j < topicsNum; j++) {
+            dist[j] = buffer.get(row * topicsNum + j);
+        }
+        return dist;
+    }
+
+    /**
+     * Calculate the cosine similarity value between a distribution and a row,
+     * reading the row in place.
+     *
+     * @param p the topic distribution of the query
+     * @param row the row index
+     * @return the cosine similarity value
+     */
+    public double calCosineSimilarity(double[] p, int row) {
+        return buffer == null ? Similarity.calCosineSimilarity(p, rows[row]) : Similarity.calCosineSimilarity(p, buffer, row * topicsNum);
+    }
+
+    /**
+     * Calculate the KL divergence value between a distribution and a row,
+     * reading the row in place.
+     *
+     * @param p the topic distribution of the query
+     * @param row the row index
+     * @return the KL divergence value
+     */
+    public double calKL(double[] p, int row) {
+        return buffer == null ? Similarity.calKL(p, rows[row]) : Similarity.calKL(p, buffer, row * topicsNum);
+    }
+
+    /**
+     * Write the matrix and its divergence tables into a file and map it back,
+     * returning an off-heap copy of this matrix. The file is written under a
+     * temporary name and then renamed, so processes which have mapped an
+     * older version of the file keep reading consistent data.
+     *
+     * @param fileName the path of the matrix file
+     * @param dataChecksum the checksum of the mallet data file the matrix was
+     * built from, see {@link Checkpoint#checksum(java.lang.String) checksum}
+     * @return the off-heap matrix
+     * @throws IOException if writing or mapping fails
+     */
+    public TopicMatrix toOffHeap(String fileName, long dataChecksum) throws IOException {
+        byte[] nameBytes = String.join("\n", names).getBytes(StandardCharsets.UTF_8);
+        long matrixBytes = (long) names.length * topicsNum * 8;
+        long length = HEADER + 2 * matrixBytes + (long) names.length * 8 + nameBytes.length;
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Topic matrix too large to be mapped - " + length + " bytes");
+        }
+        File target = new File(fileName);
+        File tmp = new File(fileName + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw"); FileChannel channel = raf.getChannel()) {
+            raf.setLength(length);
+            MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+            out.order(ByteOrder.nativeOrder());
+            out.putInt(MAGIC).putInt(names.length).putInt(topicsNum).putInt(nameBytes.length).putLong(dataChecksum);
+            int logOffset = HEADER + (int) matrixBytes, entropyOffset = logOffset + (int) matrixBytes;
+            for (int i = 0; i < names.length; i++) {
+                double h = 0;
+                for (int j = 0; j < topicsNum; j++) {
+                    double q = get(i, j), log = DivergenceEngine.log2(q);
+                    out.putDouble(q);
+                    out.putDouble(logOffset + (i * topicsNum + j) * 8, log);
+                    if (q > 0) {
+                        h -= q * log;
+                    }
+                }
+                out.putDouble(entropyOffset + i * 8, h);
+            }
+            out.position(entropyOffset + names.length * 8);
+            out.put(nameBytes);
+            out.force();
+        }
+        Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return map(fileName);
+    }
+
+    /**
+     * Map a matrix file written by
+     * {@link TopicMatrix#toOffHeap(java.lang.String, long) toOffHeap} read-only.
+     * The pages are shared with every other process mapping the same file.
+     *
+     * @param fileName the path of the matrix file
+     * @return the off-heap matrix
+     * @throws IOException if the file cannot be read or is not a matrix file
+     */
+    public static TopicMatrix map(String fileName) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(fileName, "r"); FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            in.order(ByteOrder.nativeOrder());
+            if (in.getInt() != MAGIC) {
+                throw new IOException("Not a topic matrix file, or written with another byte order - " + fileName);
+            }
+            int rowsNum = in.getInt(), topicsNum = in.getInt(), namesLength = in.getInt();
+            long dataChecksum = in.getLong();
+            int matrixBytes = rowsNum * topicsNum * 8;
+            if (channel.size() < HEADER + 2L * matrixBytes + rowsNum * 8L + namesLength) {
+                throw new IOException("Corrupted topic matrix file - " + fileName);
+            }
+            ByteBuffer nameBlock = in.duplicate();
+            nameBlock.position(HEADER + 2 * matrixBytes + rowsNum * 8);
+            byte[] nameBytes = new byte[namesLength];
+            nameBlock.get(nameBytes);
+            String[] names = rowsNum == 0 ? new String[0] : new String(nameBytes, StandardCharsets.UTF_8).split("\n", -1);
+            if (names.length != rowsNum) {
+                throw new IOException("Corrupted topic matrix file - " + fileName);
+            }
+            return new TopicMatrix(names, null, slice(in, HEADER, matrixBytes), slice(in, HEADER + matrixBytes, matrixBytes),
+                    slice(in, HEADER + 2 * matrixBytes, rowsNum * 8), topicsNum, dataChecksum);
+        }
+    }
+
+    /**
+     * Get a block of a mapped file as doubles.
+     *
+     * @param in the mapped file
+     * @param offset the offset of the block in bytes
+     * @param length the length of the block in bytes
+     * @return the doubles of the block
+     */
+    private static DoubleBuffer slice(MappedByteBuffer in, int offset, int length) {
+        ByteBuffer block = in.duplicate();
+        block.position(offset);
+        block = block.slice().order(ByteOrder.nativeOrder());
+        block.limit(length);
+        return block.asDoubleBuffer();
+    }
+}
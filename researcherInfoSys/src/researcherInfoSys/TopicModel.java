@@ -6,26 +6,45 @@ import cc.mallet.pipe.Pipe;
 import cc.mallet.pipe.SerialPipes;
 import cc.mallet.pipe.TokenSequence2FeatureSequence;
 import cc.mallet.pipe.iterator.CsvIterator;
-import cc.mallet.topics.ParallelTopicModel;
 import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.IDSorter;
+import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
 
 /**
  * A helper class to implement Probabilistic Topic Model and recommend similar
@@ -36,10 +55,10 @@ import java.util.regex.Pattern;
 public class TopicModel {
 
     /**
-     * Map between the instance name to the distribution of each topic of this
-     * instance.
+     * Matrix holding the distribution of each topic of each instance, with
+     * one row per instance name.
      */
-    private HashMap<String, double[]> topicDistribution = new HashMap<String, double[]>();
+    private volatile TopicMatrix topicDistribution;
 
     /**
      * List of different topics' distributions of interests. Each element of the
@@ -49,9 +68,73 @@ public class TopicModel {
     private ArrayList<HashMap<String, Double>> interestDistribution = new ArrayList<HashMap<String, Double>>();
 
     /**
-     * List of all instances read from data file.
+     * Divergence engine of the topic distributions, built on first use.
      */
-    private InstanceList instancesList;
+    private DivergenceEngine divergence;
+
+    /**
+     * The researcher of every row of the topic distribution matrix,
+     * <code>null</code> for rows whose researcher was not found, resolved
+     * once on first use. It is read by every scan without locking.
+     */
+    private volatile Researcher[] catalog;
+
+    /**
+     * Inverted index from topics to instances, built on first use.
+     */
+    private TopicIndex topicIndex;
+
+    /**
+     * The number of main topics of a researcher probed for candidates, 0 to
+     * score every instance.
+     */
+    private int probeTopics;
+
+    /**
+     * Sparse approximation of the topic distributions used by the cosine and
+     * KL kernels, built on first use.
+     */
+    private SparseTopicMatrix sparseDistribution;
+
+    /**
+     * The number of main topics kept by the sparse approximation, 0 to score
+     * the dense topic distributions.
+     */
+    private int sparseTopics;
+
+    /**
+     * Quantized copy of the topic distributions scanned by the cosine kernel
+     * before exact reranking, built on first use.
+     */
+    private QuantizedTopicMatrix quantizedDistribution;
+
+    /**
+     * The encoding of the quantized copy, <code>null</code> to scan the exact
+     * topic distributions.
+     */
+    private QuantizedTopicMatrix.Encoding quantization;
+
+    /**
+     * The number of candidates of a quantized scan reranked exactly.
+     */
+    private int rerankCandidates;
+
+    /**
+     * The number of rows outside the candidates of quantized scans reranked
+     * exactly because their error bound reached the result.
+     */
+    private final AtomicLong rerankExtraRows = new AtomicLong();
+
+    /**
+     * The pool scanning the rows of all models in parallel, <code>null</code>
+     * to scan on the caller's thread.
+     */
+    private static volatile ForkJoinPool scanPool = null;
+
+    /**
+     * The number of rows below which a parallel scan is not split further.
+     */
+    private static final int SPLIT_ROWS = 1024;
 
     /**
      * DataAlphabet of all instances, used to map each index of the interest to
@@ -60,9 +143,17 @@ public class TopicModel {
     private Alphabet dataAlphabet;
 
     /**
-     * Instance of the Topic Model.
+     * Instance of the Topic Model, <code>null</code> for a model
+     * {@link TopicModel#open(java.lang.String) opened} from a file until it
+     * is needed.
+     */
+    private TopicEngine model;
+
+    /**
+     * The file the engine of an opened model is read from when it is needed,
+     * <code>null</code> if the engine is in memory.
      */
-    private ParallelTopicModel model;
+    private String engineFile;
 
     /**
      * An array of sorted interests under each topic.
@@ -74,11 +165,54 @@ public class TopicModel {
      */
     private final int topicsNum;
 
+    /**
+     * The interests left out of the training data, in lower case, by
+     * researcher id.
+     */
+    private final Map<Integer, Set<String>> heldOut;
+
+    /**
+     * The number of distinct interests and of interest tokens of the training
+     * data, before and after {@link TopicModel#prune pruning}, 0 for a model
+     * opened from a file.
+     */
+    private int vocabularySize, prunedVocabularySize;
+    private long tokenNum, prunedTokenNum;
+
+    /**
+     * The time spent in Gibbs sampling, in seconds.
+     */
+    private double samplingSeconds;
+
+    /**
+     * The {@link Checkpoint#checksum(java.lang.String) checksum} of the
+     * mallet data file the model was built from, 0 if unknown.
+     */
+    private long dataChecksum;
+
+    /**
+     * The version of this model, used to tell its results apart in
+     * {@link RecommendCache the recommendation cache}, 0 until the model is
+     * {@link TopicModel#publish() published}.
+     */
+    private volatile int version = 0;
+
     /**
      * String for formatting the output.
      */
     private static final String S1 = "  o     ", S2 = "  ✔     ", S3 = "        ";
 
+    /**
+     * The default number of Gibbs sampling iterations.
+     */
+    public static final int DEFAULT_ITERATIONS = 2000;
+
+    /**
+     * The number of Gibbs sampling iterations between two progress reports,
+     * a multiple of the hyperparameter optimization interval of the sampler.
+     */
+    public static final int CHUNK_ITERATIONS = 50;
+
     /**
      * Constructor with parameter, constructing a new <code>TopicModel</code>
      * instance with the number of topics. build up the topic model using the
@@ -89,16 +223,78 @@ public class TopicModel {
      * @param topicsNum the assigned topics number
      */
     public TopicModel(int topicsNum) {
+        this(topicsNum, DEFAULT_ITERATIONS, 1);
+    }
+
+    /**
+     * Constructor with parameter, constructing a new <code>TopicModel</code>
+     * instance with the number of topics, the number of sampling iterations
+     * and the number of sampling threads.
+     *
+     * @param topicsNum the assigned topics number
+     * @param iterations the number of Gibbs sampling iterations
+     * @param threads the number of threads used by the sampler
+     */
+    public TopicModel(int topicsNum, int iterations, int threads) {
+        this(topicsNum, iterations, threads, null);
+    }
+
+    /**
+     * Constructor with parameter, constructing a new <code>TopicModel</code>
+     * instance and reporting the progress of sampling. Sampling runs in
+     * chunks of {@link TopicModel#CHUNK_ITERATIONS CHUNK_ITERATIONS}
+     * iterations, with the same burn-in and hyperparameter optimization
+     * schedule as a single run, and stops between two chunks if the thread
+     * is interrupted.
+     *
+     * @param topicsNum the assigned topics number
+     * @param iterations the number of Gibbs sampling iterations
+     * @param threads the number of threads used by the sampler
+     * @param progress the listener notified after each chunk, or
+     * <code>null</code>
+     * @throws CancellationException if the thread is interrupted before
+     * sampling has finished
+     */
+    public TopicModel(int topicsNum, int iterations, int threads, Progress progress) {
+        this("data/malletData.txt", Collections.emptyMap(), Config.getInt(Config.MIN_INTEREST_FREQUENCY, 1),
+                Config.getDouble(Config.MAX_INTEREST_RATIO, 1.0), topicsNum, iterations, threads, progress);
+    }
+
+    /**
+     * Constructor with parameter, constructing a new <code>TopicModel</code>
+     * instance from a mallet data file written without some interests of some
+     * researchers. Those interests are left out of the queries of the
+     * predictive conditional probability as well. Interests too rare or too
+     * common are {@link TopicModel#prune pruned} before sampling. If
+     * {@link Checkpoint checkpoints} are enabled, sampling resumes from the
+     * checkpoint of an earlier build of the same data and settings, and
+     * saves its own checkpoints until it has finished.
+     *
+     * @param dataFile the path of the mallet data file
+     * @param heldOut the interests left out of the data file, in lower case,
+     * by researcher id
+     * @param minFrequency the minimum number of instances of an interest
+     * @param maxRatio the maximum ratio of instances of an interest
+     * @param topicsNum the assigned topics number
+     * @param iterations the number of Gibbs sampling iterations
+     * @param threads the number of threads used by the sampler
+     * @param progress the listener notified after each chunk, or
+     * <code>null</code>
+     * @throws CancellationException if the thread is interrupted before
+     * sampling has finished
+     */
+    TopicModel(String dataFile, Map<Integer, Set<String>> heldOut, int minFrequency, double maxRatio, int topicsNum, int iterations,
+            int threads, Progress progress) {
+        this.heldOut = heldOut;
         ArrayList<Pipe> pipeList = new ArrayList<>();
         pipeList.add(new CharSequenceLowercase());
         pipeList.add(new CharSequence2TokenSequence(Pattern.compile("\\p{L}[\\p{L}\\p{P}]+\\p{L}")));
         pipeList.add(new TokenSequence2FeatureSequence());
 
-        instancesList = new InstanceList(new SerialPipes(pipeList));
-        dataAlphabet = instancesList.getDataAlphabet();
+        InstanceList instancesList = new InstanceList(new SerialPipes(pipeList));
         try {
             Reader fileReader;
-            fileReader = new InputStreamReader(new FileInputStream(new File("data/malletData.txt")), "UTF-8");
+            fileReader = new InputStreamReader(new FileInputStream(new File(dataFile)), "UTF-8");
             instancesList.addThruPipe(new CsvIterator(fileReader, Pattern.compile("^(\\S*)[\\s,]*(\\S*)[\\s,]*(.*)$"), 3, 2, 1));
         } catch (FileNotFoundException e) {
             System.err.println("File not found.");
@@ -106,22 +302,186 @@ public class TopicModel {
             System.err.println("Failed loading file.");
         }
 
-        model = new ParallelTopicModel(topicsNum, 1.0, 0.01);
-        model.addInstances(instancesList);
-        model.setNumThreads(1);
-        model.setNumIterations(2000);
         try {
-            model.estimate();
-            topicSortedInterests = model.getSortedWords();
+            dataChecksum = Checkpoint.checksum(dataFile);
         } catch (IOException e) {
-            System.err.println("Failed building topic model ");
+            dataChecksum = 0;
+        }
+        instancesList = prune(instancesList, minFrequency, maxRatio);
+        String engine = Config.getString(Config.TOPIC_ENGINE, "mallet");
+        Checkpoint checkpoint = Checkpoint.of(dataFile, engine + "/" + topicsNum + "/" + minFrequency + "/" + maxRatio + "/" + threads);
+        model = checkpoint != null ? checkpoint.load() : null;
+        int done = 0;
+        if (model != null) {
+            done = checkpoint.getIterations();
+            System.err.println("Resuming topic model from a checkpoint after " + done + " iterations");
+        } else {
+            model = TopicEngine.create(engine, instancesList, topicsNum, threads);
+        }
+        long start = System.nanoTime();
+        sample(done, iterations, progress, checkpoint);
+        samplingSeconds = (System.nanoTime() - start) / 1E9;
+        if (checkpoint != null) {
+            checkpoint.delete();
         }
 
+        String[] names = new String[instancesList.size()];
+        double[][] rows = new double[instancesList.size()][];
         for (int i = 0; i < instancesList.size(); i++) {
-            topicDistribution.put(instancesList.get(i).getName().toString(), model.getTopicProbabilities(i));
+            names[i] = instancesList.get(i).getName().toString();
+            rows[i] = model.getTopicProbabilities(i);
         }
-
         this.topicsNum = topicsNum;
+        topicDistribution = new TopicMatrix(names, rows, topicsNum);
+        organize();
+    }
+
+    /**
+     * Constructor with parameter, constructing a new <code>TopicModel</code>
+     * instance from a trained model and the matrix of its topic
+     * distributions.
+     *
+     * @param model the trained model
+     * @param topicDistribution the topic distributions of the model instances
+     * @param heldOut the interests left out of the training data, in lower
+     * case, by researcher id
+     */
+    TopicModel(TopicEngine model, TopicMatrix topicDistribution, Map<Integer, Set<String>> heldOut) {
+        this.model = model;
+        this.heldOut = heldOut;
+        this.topicsNum = model.getNumTopics();
+        this.topicDistribution = topicDistribution;
+        this.dataChecksum = topicDistribution.getDataChecksum();
+        organize();
+    }
+
+    /**
+     * Constructor with parameter, constructing a new <code>TopicModel</code>
+     * instance from the matrix of its topic distributions and the interests
+     * of its topics saved by
+     * {@link TopicModel#storeOffHeap(java.lang.String) storeOffHeap}. The
+     * engine is left in its file until it is needed.
+     *
+     * @param topicDistribution the topic distributions of the model instances
+     * @param fileName the path of the matrix file
+     * @throws IOException if the interests of the topics cannot be read
+     */
+    private TopicModel(TopicMatrix topicDistribution, String fileName) throws IOException {
+        this.heldOut = Collections.emptyMap();
+        this.topicsNum = topicDistribution.getTopicsNum();
+        this.topicDistribution = topicDistribution;
+        this.dataChecksum = topicDistribution.getDataChecksum();
+        this.engineFile = fileName + ".model";
+        Alphabet alphabet = new Alphabet();
+        ArrayList<TreeSet<IDSorter>> sortedInterests = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName + ".topics")))) {
+            if (in.readInt() != topicsNum) {
+                throw new IOException("Topics do not match the topic matrix - " + fileName + ".topics");
+            }
+            for (int i = 0; i < topicsNum; i++) {
+                TreeSet<IDSorter> interests = new TreeSet<>();
+                for (int n = in.readInt(); n > 0; n--) {
+                    interests.add(new IDSorter(alphabet.lookupIndex(in.readUTF()), in.readDouble()));
+                }
+                sortedInterests.add(interests);
+            }
+        }
+        organize(alphabet, sortedInterests);
+    }
+
+    /**
+     * Run Gibbs sampling in chunks of
+     * {@link TopicModel#CHUNK_ITERATIONS CHUNK_ITERATIONS} iterations,
+     * reporting progress and updating a checkpoint after each chunk. If the
+     * thread is interrupted the sampling stops between two chunks, after
+     * saving the checkpoint.
+     *
+     * @param done the number of iterations already done
+     * @param iterations the total number of iterations
+     * @param progress the listener notified after each chunk, or
+     * <code>null</code>
+     * @param checkpoint the checkpoint of the build, or <code>null</code>
+     * @throws CancellationException if the thread is interrupted before
+     * sampling has finished
+     */
+    private void sample(int done, int iterations, Progress progress, Checkpoint checkpoint) {
+        while (done < iterations) {
+            if (Thread.currentThread().isInterrupted()) {
+                if (checkpoint != null) {
+                    checkpoint.save(model, done);
+                }
+                throw new CancellationException("Training cancelled after " + done + " iterations");
+            }
+            int chunk = Math.min(CHUNK_ITERATIONS, iterations - done);
+            model.estimate(chunk);
+            done += chunk;
+            if (checkpoint != null && done < iterations) {
+                checkpoint.update(model, done);
+            }
+            if (progress != null) {
+                progress.report(done, iterations, model.modelLogLikelihood());
+            }
+        }
+    }
+
+    /**
+     * Continue sampling this model for more iterations, starting from its
+     * current state instead of over, and build a new model from the result.
+     * This model keeps its topic distributions, but shares its sampler with
+     * the new model, so its log-likelihood follows the continued sampling.
+     *
+     * @param iterations the number of extra iterations
+     * @param progress the listener notified after each chunk, or
+     * <code>null</code>
+     * @return the new model
+     * @throws CancellationException if the thread is interrupted before
+     * sampling has finished
+     */
+    public TopicModel continueTraining(int iterations, Progress progress) {
+        long start = System.nanoTime();
+        synchronized (getEngine()) {
+            sample(0, iterations, progress, null);
+        }
+        String[] names = new String[topicDistribution.size()];
+        double[][] rows = new double[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = topicDistribution.getName(i);
+            rows[i] = model.getTopicProbabilities(i);
+        }
+        TopicModel tm = new TopicModel(model, new TopicMatrix(names, rows, topicsNum), heldOut);
+        tm.samplingSeconds = (System.nanoTime() - start) / 1E9;
+        tm.dataChecksum = dataChecksum;
+        return tm;
+    }
+
+    /**
+     * Organize the interests of each topic of the engine, see
+     * {@link TopicModel#organize(cc.mallet.types.Alphabet, java.util.ArrayList) organize}.
+     */
+    private void organize() {
+        organize(model.getAlphabet(), model.getSortedWords());
+    }
+
+    /**
+     * Organize the interests of each topic into
+     * {@link TopicModel#interestDistribution interestDistribution}, read the
+     * number of topics probed for candidates and kept by the sparse
+     * approximation, the quantization and the number of scan threads from
+     * {@link Config the settings}.
+     *
+     * @param alphabet the alphabet of the interests
+     * @param sortedInterests the interests of each topic with their number of
+     * tokens, the most frequent first
+     */
+    private void organize(Alphabet alphabet, ArrayList<TreeSet<IDSorter>> sortedInterests) {
+        probeTopics = Config.getInt(Config.PROBE_TOPICS, 0);
+        sparseTopics = Config.getInt(Config.SPARSE_TOPICS, 0);
+        String encoding = Config.getString(Config.QUANTIZATION, "none").toUpperCase();
+        quantization = encoding.equals("INT8") || encoding.equals("FLOAT16") ? QuantizedTopicMatrix.Encoding.valueOf(encoding) : null;
+        rerankCandidates = Config.getInt(Config.RERANK_CANDIDATES, QuantizedTopicMatrix.DEFAULT_CANDIDATES);
+        setScanThreads(Config.getInt(Config.SCAN_THREADS, 1));
+        dataAlphabet = alphabet;
+        topicSortedInterests = sortedInterests;
         for (int i = 0; i < topicsNum; i++) {
             double s = 0;
             for (IDSorter idCountPair : topicSortedInterests.get(i)) {
@@ -134,6 +494,264 @@ public class TopicModel {
         }
     }
 
+    /**
+     * Make this model the one serving queries, so that its results are kept
+     * in {@link RecommendCache the recommendation cache} and the results of
+     * the previous serving model are dropped. Models which are never
+     * published, such as those built for evaluation, bypass the cache. The
+     * structures scans use are {@link TopicModel#prepare() built} first, so
+     * no query, in particular none under a {@link Budget budget}, pays for
+     * building them.
+     */
+    void publish() {
+        prepare();
+        version = RecommendCache.publish(Algorithm.PROBABILITY, Algorithm.KL, Algorithm.JS, Algorithm.COSINE);
+    }
+
+    /**
+     * Build the structures scans use, which are otherwise built by the first
+     * query needing them: the researcher of every row, the
+     * {@link TopicIndex topic index}, the {@link DivergenceEngine divergence
+     * tables}, and the sparse and quantized copies of the topic
+     * distributions if their settings ask for them.
+     */
+    public void prepare() {
+        getCatalog();
+        getTopicIndex();
+        getDivergenceEngine();
+        getSparseMatrix();
+        getQuantizedMatrix();
+    }
+
+    /**
+     * Drop the interests found in fewer than <code>minFrequency</code>
+     * instances, mostly misspellings and one-off phrasings, and those found
+     * in more than <code>maxRatio</code> of the instances, which tell no
+     * topic apart, before the instances are added to the sampler. This
+     * shrinks the alphabet, {@link TopicModel#interestDistribution
+     * interestDistribution} and the tokens sampled in every iteration.
+     * Instances left without interests are kept, so every researcher still
+     * has a topic distribution.
+     *
+     * @param instances the instances read from the mallet data file
+     * @param minFrequency the minimum number of instances of an interest
+     * @param maxRatio the maximum ratio of instances of an interest
+     * @return the pruned instances, or <code>instances</code> if nothing is
+     * pruned
+     */
+    private InstanceList prune(InstanceList instances, int minFrequency, double maxRatio) {
+        Alphabet alphabet = instances.getDataAlphabet();
+        int[] frequency = new int[alphabet.size()], lastSeen = new int[alphabet.size()];
+        for (int n = 0; n < instances.size(); n++) {
+            FeatureSequence tokens = (FeatureSequence) instances.get(n).getData();
+            tokenNum += tokens.getLength();
+            for (int i = 0; i < tokens.getLength(); i++) {
+                int feature = tokens.getIndexAtPosition(i);
+                if (lastSeen[feature] != n + 1) {
+                    lastSeen[feature] = n + 1;
+                    frequency[feature]++;
+                }
+            }
+        }
+        vocabularySize = alphabet.size();
+        double maxFrequency = maxRatio * instances.size();
+        boolean[] kept = new boolean[alphabet.size()];
+        for (int feature = 0; feature < kept.length; feature++) {
+            kept[feature] = frequency[feature] >= minFrequency && frequency[feature] <= maxFrequency;
+            if (kept[feature]) {
+                prunedVocabularySize++;
+            }
+        }
+        if (prunedVocabularySize == vocabularySize) {
+            prunedTokenNum = tokenNum;
+            return instances;
+        }
+        Alphabet prunedAlphabet = new Alphabet();
+        InstanceList pruned = new InstanceList(prunedAlphabet, null);
+        for (Instance instance : instances) {
+            FeatureSequence tokens = (FeatureSequence) instance.getData();
+            FeatureSequence prunedTokens = new FeatureSequence(prunedAlphabet, tokens.getLength());
+            for (int i = 0; i < tokens.getLength(); i++) {
+                if (kept[tokens.getIndexAtPosition(i)]) {
+                    prunedTokens.add(tokens.getObjectAtPosition(i));
+                }
+            }
+            prunedTokenNum += prunedTokens.getLength();
+            pruned.add(new Instance(prunedTokens, instance.getTarget(), instance.getName(), instance.getSource()));
+        }
+        return pruned;
+    }
+
+    /**
+     * Get the number of distinct interests of the training data before
+     * pruning.
+     *
+     * @return the vocabulary size, 0 for a model opened from a file
+     */
+    public int getVocabularySize() {
+        return vocabularySize;
+    }
+
+    /**
+     * Get the number of distinct interests the model was trained on.
+     *
+     * @return the pruned vocabulary size, 0 for a model opened from a file
+     */
+    public int getPrunedVocabularySize() {
+        return prunedVocabularySize;
+    }
+
+    /**
+     * Get the number of interest tokens of the training data before pruning.
+     *
+     * @return the number of tokens, 0 for a model opened from a file
+     */
+    public long getTokenNum() {
+        return tokenNum;
+    }
+
+    /**
+     * Get the number of interest tokens the model was trained on.
+     *
+     * @return the pruned number of tokens, 0 for a model opened from a file
+     */
+    public long getPrunedTokenNum() {
+        return prunedTokenNum;
+    }
+
+    /**
+     * Get the time spent in Gibbs sampling.
+     *
+     * @return the sampling time in seconds, 0 for a model opened from a file
+     */
+    public double getSamplingSeconds() {
+        return samplingSeconds;
+    }
+
+    /**
+     * Move the topic distributions off the Java heap into a memory-mapped
+     * file, and save the interests of the topics and the trained model next
+     * to it so that other processes can
+     * {@link TopicModel#open(java.lang.String) open} this model and share the
+     * mapped distributions instead of holding their own copy.
+     *
+     * @param fileName the path of the matrix file, the interests of the
+     * topics are saved to <code>fileName + ".topics"</code> and the model to
+     * <code>fileName + ".model"</code>; the checksum of the data the model
+     * was built from is saved in the header of the matrix file
+     */
+    public void storeOffHeap(String fileName) {
+        try {
+            getEngine().write(new File(fileName + ".model"));
+            writeTopics(fileName + ".topics");
+            TopicMatrix offHeap = topicDistribution.toOffHeap(fileName, dataChecksum);
+            synchronized (this) {
+                topicDistribution = offHeap;
+                divergence = null;
+            }
+        } catch (IOException e) {
+            System.err.println("Failed mapping topic distributions - " + e.getMessage());
+        }
+    }
+
+    /**
+     * Write the interests of each topic with their number of tokens, the
+     * most frequent first, under a temporary name renamed once complete.
+     *
+     * @param fileName the path of the file
+     * @throws IOException if writing fails
+     */
+    private void writeTopics(String fileName) throws IOException {
+        File tmp = new File(fileName + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(topicsNum);
+            for (TreeSet<IDSorter> interests : topicSortedInterests) {
+                out.writeInt(interests.size());
+                for (IDSorter idCountPair : interests) {
+                    out.writeUTF(dataAlphabet.lookupObject(idCountPair.getID()).toString());
+                    out.writeDouble(idCountPair.getWeight());
+                }
+            }
+        }
+        Files.move(tmp.toPath(), new File(fileName).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Open a topic model saved by
+     * {@link TopicModel#storeOffHeap(java.lang.String) storeOffHeap}, mapping
+     * its topic distributions without loading them onto the heap. Only the
+     * interests of the topics are read; the trained model, which holds the
+     * topic of every interest token, stays in its file until training
+     * continues or its likelihood is asked for, so processes serving queries
+     * from the same file do not each hold a copy of it. Files saved without
+     * the interests of the topics are opened by reading the trained model.
+     *
+     * @param fileName the path of the matrix file
+     * @return the topic model, or <code>null</code> if it cannot be opened
+     */
+    public static TopicModel open(String fileName) {
+        try {
+            if (new File(fileName + ".topics").exists()) {
+                return new TopicModel(TopicMatrix.map(fileName), fileName);
+            }
+            return new TopicModel(TopicEngine.read(new File(fileName + ".model")), TopicMatrix.map(fileName), Collections.emptyMap());
+        } catch (Exception e) {
+            System.err.println("Failed opening topic model - " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Open the shared topic model saved to the <code>topicMatrixFile</code>
+     * of {@link Config the settings} if it exists and was built from the
+     * loaded data, otherwise build a topic model from the loaded data and
+     * save it there if the setting is present. A shared model built from
+     * other data, for example an edited data file, another
+     * <code>dataFile</code> or researchers added by a
+     * {@link DeltaUpdate delta update}, would miss some researchers or map
+     * its rows to the wrong ones, so it is rebuilt. The model is
+     * {@link TopicModel#publish() published}. Progress is reported on the
+     * standard error.
+     *
+     * @return the topic model
+     */
+    public static TopicModel load() {
+        TopicModel tm = null;
+        String matrixFile = Config.getString(Config.TOPIC_MATRIX_FILE, null);
+        Set<Integer> staleIds = Researcher.prepareMalletData();
+        if (matrixFile != null && new File(matrixFile).exists()) {
+            System.err.println("Opening shared topic model " + matrixFile + "......");
+            tm = open(matrixFile);
+            try {
+                if (tm != null && tm.dataChecksum != Checkpoint.checksum("data/malletData.txt")) {
+                    System.err.println("Shared topic model " + matrixFile + " was built from other data, rebuilding it");
+                    tm = null;
+                }
+            } catch (IOException e) {
+                tm = null;
+            }
+        }
+        if (tm == null) {
+            System.err.println("Building topic model......");
+            tm = new TopicModel(Config.getInt(Config.TOPICS_NUM, 30));
+            if (matrixFile != null) {
+                tm.storeOffHeap(matrixFile);
+            }
+        }
+        tm.publish();
+        Researcher.clearStaleIds(staleIds);
+        return tm;
+    }
+
+    /**
+     * Check whether the topic distributions are stored off the Java heap.
+     *
+     * @return <code>true</code> if the distributions are memory-mapped
+     */
+    public boolean isOffHeap() {
+        return topicDistribution.isOffHeap();
+    }
+
     /**
      * Get the topic distribution of a specified instance, providing its
      * researcher name and researcher id, and print the distribution if
@@ -160,30 +778,121 @@ public class TopicModel {
      * @return the topic distribution of a specified instance
      */
     public double[] getTopicDistribution(String instanceName, boolean print) {
+        int row = topicDistribution.indexOf(instanceName);
+        if (row < 0) {
+            return null;
+        }
+        double dist[] = topicDistribution.getRow(row);
         if (!print) {
-            return topicDistribution.get(instanceName);
+            return dist;
         }
-        double dist[] = topicDistribution.get(instanceName);
-        int[] mainTopics = {-1, -1, -1, -1, -1};
+        int[] mainTopics = getMainTopics(dist, 5);
+        for (int i = 0; i < mainTopics.length; i++) {
+            String sFormat = (i == 0) ? "Composition Analysis\t= " : "\t\t\t+ ";
+            System.out.format(S3 + sFormat + "%5.2f%% Topic%d (%s ......)\n", dist[mainTopics[i]] * 100, mainTopics[i], getHottestInterest(mainTopics[i]));
+        }
+        return dist;
+    }
+
+    /**
+     * Get the indices of the <code>n</code> main topics of a topic
+     * distribution, the most probable first. Of two topics with the same
+     * probability the one with the smaller index ranks first.
+     *
+     * @param dist the topic distribution
+     * @param n the number of main topics
+     * @return the indices of the main topics
+     */
+    public static int[] getMainTopics(double[] dist, int n) {
+        int[] mainTopics = new int[Math.min(n, dist.length)];
+        Arrays.fill(mainTopics, -1);
+        int last = mainTopics.length - 1;
         for (int i = 0; i < dist.length; i++) {
             double x = dist[i];
-            int k = 4;
+            int k = last;
             while (k >= 0 && (mainTopics[k] == -1 || x > dist[mainTopics[k]])) {
                 k--;
             }
             k++;
-            for (int j = 4; j > k; j--) {
+            for (int j = last; j > k; j--) {
                 mainTopics[j] = mainTopics[j - 1];
             }
-            if (k <= 4) {
+            if (k <= last) {
                 mainTopics[k] = i;
             }
         }
-        for (int i = 0; i < 5; i++) {
-            String sFormat = (i == 0) ? "Composition Analysis\t= " : "\t\t\t+ ";
-            System.out.format(S3 + sFormat + "%5.2f%% Topic%d (%s ......)\n", dist[mainTopics[i]] * 100, mainTopics[i], getHottestInterest(mainTopics[i]));
+        return mainTopics;
+    }
+
+    /**
+     * Get the number of topics of this model.
+     *
+     * @return the topics number
+     */
+    public int getTopicsNum() {
+        return topicsNum;
+    }
+
+    /**
+     * Get the log-likelihood of the trained model, including both the
+     * topic-interest and the instance-topic terms.
+     *
+     * @return the model log-likelihood
+     */
+    public double getLogLikelihood() {
+        return getEngine().modelLogLikelihood();
+    }
+
+    /**
+     * Get the perplexity of the sampled state over the training interests,
+     * that is <code>exp(-logLikelihood / tokens)</code> of the joint
+     * log-likelihood of interests and topics. It tracks the convergence of
+     * one model, but it is not a held-out measure and cannot be compared
+     * across numbers of topics.
+     *
+     * @return the training perplexity per interest token
+     */
+    public double getTrainingPerplexity() {
+        return Math.exp(-getLogLikelihood() / Math.max(1, getEngine().getTotalTokens()));
+    }
+
+    /**
+     * Get the perplexity of the interests held out of the training data,
+     * each predicted from the topic distribution of its researcher, that is
+     * <code>exp(-sum(log p(w|d)) / tokens)</code> with
+     * <code>p(w|d) = sum_t p(t|d) p(w|t)</code>. Held-out interests which are
+     * not in the vocabulary of the model are left out, so models trained on
+     * the same data and pruning can be compared, whatever their number of
+     * topics. Lower is better.
+     *
+     * @return the held-out perplexity per interest token, or
+     * <code>NaN</code> if no held-out interest is in the vocabulary
+     */
+    public double getHeldOutPerplexity() {
+        double logLikelihood = 0;
+        long tokens = 0;
+        for (Map.Entry<Integer, Set<String>> entry : heldOut.entrySet()) {
+            Researcher r = Researcher.getResearcherById(entry.getKey());
+            int row = r == null ? -1 : getRow(r);
+            if (row < 0) {
+                continue;
+            }
+            for (String interest : entry.getValue()) {
+                String word = interest.replaceAll(" ", "");
+                double p = 0;
+                for (int j = 0; j < topicsNum; j++) {
+                    Double weight = interestDistribution.get(j).get(word);
+                    if (weight != null) {
+                        p += weight * topicDistribution.get(row, j);
+                    }
+                }
+                if (p > 0) {
+                    logLikelihood += Math.log(p);
+                    tokens++;
+                }
+            }
         }
-        return topicDistribution.get(instanceName);
+        return tokens == 0 ? Double.NaN : Math.exp(-logLikelihood / tokens);
     }
 
     /**
@@ -212,7 +921,7 @@ public class TopicModel {
      * @param id the id number of a researcher
      * @return the corresponding instance name of this researcher
      */
-    private static String toInstanceName(String name, int id) {
+    static String toInstanceName(String name, int id) {
         return (name + "/" + id).replaceAll(" ", "@").toLowerCase();
     }
 
@@ -243,24 +952,7 @@ public class TopicModel {
      * @param researcher the specified researcher requiring recommendation.
      */
     public void recommend(Researcher researcher) {
-        LinkedHashSet<String> interestList = researcher.getInterests();
-        RecommendResult result = new RecommendResult(researcher, false);
-        for (HashMap.Entry<String, double[]> topicDistEntry : topicDistribution.entrySet()) {
-            double p = 1;
-            for (String interest : interestList) {
-                interest = interest.toLowerCase().replaceAll(" ", "");
-                double s = 1E-8;
-                double[] dist = topicDistEntry.getValue();
-                for (int j = 0; j < dist.length; j++) {
-                    if (interestDistribution.get(j).get(interest) != null) {
-                        s += interestDistribution.get(j).get(interest) * topicDistribution.get(topicDistEntry.getKey())[j];
-                    }
-                }
-                p = p * s;
-            }
-            result.add(getResearcherByInstance(topicDistEntry.getKey()), p);
-        }
-        result.output("predictive conditional probability", "Probability");
+        output(getRecommendResult(researcher, Algorithm.PROBABILITY, RecommendResult.DEFAULT_LEN));
     }
 
     /**
@@ -270,33 +962,749 @@ public class TopicModel {
      * @param researcher the specified researcher requiring recommendation
      */
     public void recommend_KL(Researcher researcher) {
-        double[] p = topicDistribution.get(toInstanceName(researcher.getName(), researcher.getId()));
-        RecommendResult result = new RecommendResult(researcher, true);
-        for (HashMap.Entry<String, double[]> topicDistEntry : topicDistribution.entrySet()) {
-            double kl = Similarity.calKL(p, topicDistEntry.getValue());
-            result.add(getResearcherByInstance(topicDistEntry.getKey()), kl);
-        }
-        result.output("KL divergence (asymmetric)", "KL value");
+        output(getRecommendResult(researcher, Algorithm.KL, RecommendResult.DEFAULT_LEN));
     }
 
     /**
      * Recommend and print out similar researchers of a specified researcher,
-     * measure similarity using Cosine similarity.
+     * measure similarity using Jensen-Shannon divergence.
      *
      * @param researcher the specified researcher requiring recommendation
      */
-    public void recommend_Cosine(Researcher researcher) {
-        double[] p = topicDistribution.get(toInstanceName(researcher.getName(), researcher.getId()));
-        RecommendResult result = new RecommendResult(researcher, false);
-        for (HashMap.Entry<String, double[]> topicDistEntry : topicDistribution.entrySet()) {
-            double kl = Similarity.calCosineSimilarity(p, topicDistEntry.getValue());
-            result.add(getResearcherByInstance(topicDistEntry.getKey()), kl);
-        }
-        result.output("cosine similarity", "Cos-similarity");
+    public void recommend_JS(Researcher researcher) {
+        output(getRecommendResult(researcher, Algorithm.JS, RecommendResult.DEFAULT_LEN));
     }
 
     /**
-     * Write the information containing in the topic model into an Arff file, in
+     * Recommend and print out similar researchers of a specified researcher,
+     * measure similarity using Cosine similarity.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     */
+    public void recommend_Cosine(Researcher researcher) {
+        output(getRecommendResult(researcher, Algorithm.COSINE, RecommendResult.DEFAULT_LEN));
+    }
+
+    /**
+     * Print out the first page of a cursor as the recommendation list, so
+     * that further pages taken from the same cursor continue exactly this
+     * ranking.
+     *
+     * @param cursor the cursor opened by
+     * {@link TopicModel#getRankedCursor getRankedCursor} on this model
+     */
+    public void recommend(RankedCursor cursor) {
+        output(cursor.nextPage(RecommendResult.DEFAULT_LEN));
+    }
+
+    /**
+     * Get the top <code>k</code> similar researchers of a specified
+     * researcher without printing them. The result is served from
+     * {@link RecommendCache the recommendation cache} when this model is
+     * published and has answered the same query before. Approximate results
+     * of {@link TopicModel#getCandidateResult candidate generation}, used
+     * when the <code>probeTopics</code> setting is positive, are never
+     * cached.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm one of {@link Algorithm#PROBABILITY},
+     * {@link Algorithm#KL}, {@link Algorithm#JS} and {@link Algorithm#COSINE}
+     * @param k the number of researchers to be recommended
+     * @return the recommendation result
+     * @throws IllegalArgumentException if the researcher is not in the model
+     */
+    public RecommendResult getRecommendResult(Researcher researcher, Algorithm algorithm, int k) {
+        int version = this.version;
+        if (version == 0 || probeTopics > 0) {
+            return scan(researcher, algorithm, k);
+        }
+        RecommendResult result = RecommendCache.get(researcher.getId(), algorithm, k, version);
+        if (result == null) {
+            result = scan(researcher, algorithm, k);
+            RecommendCache.put(researcher.getId(), k, version, result);
+        }
+        return result;
+    }
+
+    /**
+     * Score the instances of the model against a specified researcher and
+     * keep the top <code>k</code> of them. Every instance is scored unless
+     * the <code>probeTopics</code> setting asks for
+     * {@link TopicModel#getCandidateResult candidate generation}.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @return the recommendation result
+     */
+    private RecommendResult scan(Researcher researcher, Algorithm algorithm, int k) {
+        if (probeTopics > 0) {
+            return getCandidateResult(researcher, algorithm, k, probeTopics);
+        }
+        Scorer scorer = new Scorer(researcher, algorithm);
+        if (algorithm == Algorithm.COSINE && scorer.sparse == null && quantization != null) {
+            return rerank(scorer, researcher, k, getQuantizedMatrix(), rerankCandidates);
+        }
+        return rank(scorer, researcher, k, null, scorer.matrix.size());
+    }
+
+    /**
+     * Open a cursor producing the similar researchers of a specified
+     * researcher in ranking order, for as many pages as needed. Every row is
+     * scored once, in parallel if {@link TopicModel#setScanThreads(int) scan
+     * threads} are set, bypassing {@link RecommendCache the recommendation
+     * cache}.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm one of {@link Algorithm#PROBABILITY},
+     * {@link Algorithm#KL}, {@link Algorithm#JS} and {@link Algorithm#COSINE}
+     * @return the cursor
+     * @throws IllegalArgumentException if the researcher is not in the model
+     */
+    public RankedCursor getRankedCursor(Researcher researcher, Algorithm algorithm) {
+        Scorer scorer = new Scorer(researcher, algorithm);
+        double[] scores = new double[scorer.matrix.size()];
+        ForkJoinPool pool = scanPool;
+        if (pool != null && scores.length > SPLIT_ROWS) {
+            pool.submit(() -> IntStream.range(0, scores.length).parallel().forEach(row -> scores[row] = scorer.score(row))).join();
+        } else {
+            for (int row = 0; row < scores.length; row++) {
+                scores[row] = scorer.score(row);
+            }
+        }
+        return new RankedCursor(this, researcher, algorithm, scores);
+    }
+
+    /**
+     * Set the number of threads scanning rows for all topic models. With
+     * more than one thread, large scans are split across a fork-join pool,
+     * each part keeping its own top <code>k</code>, and the parts are merged
+     * in row order, so the ranking is identical to a scan on the caller's
+     * thread, ties included.
+     *
+     * @param threads the number of threads, 1 to scan on the caller's thread
+     */
+    public static synchronized void setScanThreads(int threads) {
+        if (scanPool != null && scanPool.getParallelism() == threads) {
+            return;
+        }
+        if (scanPool != null) {
+            scanPool.shutdown();
+        }
+        scanPool = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    /**
+     * Score rows against a specified researcher and keep the top
+     * <code>k</code> of them, in parallel if
+     * {@link TopicModel#setScanThreads(int) scan threads} are set and there
+     * are enough rows. Rows whose researcher has been removed since the model
+     * was built are skipped.
+     *
+     * @param scorer the scorer of the query
+     * @param researcher the specified researcher requiring recommendation
+     * @param k the number of researchers to be recommended
+     * @param rows the sorted rows to be scored, or <code>null</code> for the
+     * rows <code>0</code> to <code>n - 1</code>
+     * @param n the number of rows to be scored
+     * @return the recommendation result
+     */
+    private RecommendResult rank(Scorer scorer, Researcher researcher, int k, int[] rows, int n) {
+        ForkJoinPool pool = scanPool;
+        if (pool != null && n > SPLIT_ROWS) {
+            return pool.invoke(new ScanTask(scorer, researcher, k, rows, 0, n));
+        }
+        return rankRange(scorer, researcher, k, rows, 0, n);
+    }
+
+    /**
+     * Score a range of rows on the caller's thread and keep the top
+     * <code>k</code> of them.
+     *
+     * @param scorer the scorer of the query
+     * @param researcher the specified researcher requiring recommendation
+     * @param k the number of researchers to be recommended
+     * @param rows the sorted rows, or <code>null</code> for the row indices
+     * themselves
+     * @param from the first index of the range
+     * @param to the index after the range
+     * @return the recommendation result of the range
+     */
+    private RecommendResult rankRange(Scorer scorer, Researcher researcher, int k, int[] rows, int from, int to) {
+        RecommendResult result = new RecommendResult(researcher, scorer.algorithm, k);
+        Researcher[] researchers = getCatalog();
+        for (int i = from; i < to; i++) {
+            int row = rows == null ? i : rows[i];
+            Researcher r = researchers[row];
+            if (r != null && !r.isRemoved()) {
+                result.add(r, scorer.score(row));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Score only the instances sharing a main topic with the
+     * <code>probe</code> main topics of a specified researcher, found through
+     * {@link TopicIndex the topic index}, and keep the top <code>k</code> of
+     * them, bypassing {@link RecommendCache the recommendation cache}.
+     * Candidates are scored exactly and in row order, so a researcher found
+     * this way ranks exactly as in a full scan.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @param probe the number of main topics of the researcher probed
+     * @return the recommendation result
+     */
+    public RecommendResult getCandidateResult(Researcher researcher, Algorithm algorithm, int k, int probe) {
+        Scorer scorer = new Scorer(researcher, algorithm);
+        int[] candidates = getTopicIndex().getCandidates(scorer.p, probe, k + 1);
+        return rank(scorer, researcher, k, candidates, candidates.length);
+    }
+
+    /**
+     * Score the instances of the model against a specified researcher until a
+     * budget is exhausted and keep the best <code>k</code> of those scored,
+     * bypassing {@link RecommendCache the recommendation cache}. Instances
+     * are scored by priority: first those for which the most probable topic
+     * of the researcher is a main topic, found through
+     * {@link TopicIndex the topic index}, then those of the next topic, and
+     * so on, then any instance left. The best researchers are therefore
+     * usually found early, and the
+     * {@link RecommendResult#getCoverage() coverage} of the result tells the
+     * fraction of instances scored. A complete result holds the same
+     * researchers as a full scan, though ties may rank in another order.
+     * The budget only covers scoring: the structures the query reads are
+     * built when the model is {@link TopicModel#publish() published} or
+     * {@link TopicModel#prepare() prepared}, and an unprepared model builds
+     * them first, however long that takes.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm one of {@link Algorithm#PROBABILITY},
+     * {@link Algorithm#KL}, {@link Algorithm#JS} and {@link Algorithm#COSINE}
+     * @param k the number of researchers to be recommended
+     * @param budget the budget of the query
+     * @return the best researchers found within the budget
+     */
+    public RecommendResult getBudgetResult(Researcher researcher, Algorithm algorithm, int k, Budget budget) {
+        Scorer scorer = new Scorer(researcher, algorithm);
+        TopicIndex index = getTopicIndex();
+        RecommendResult result = new RecommendResult(researcher, algorithm, k);
+        int size = scorer.matrix.size();
+        boolean[] scored = new boolean[size];
+        Researcher[] researchers = getCatalog();
+        int scoredNum = 0;
+        int[] topics = getMainTopics(scorer.p, scorer.p.length);
+        for (int t = 0; t <= topics.length && !budget.isExhausted(scoredNum); t++) {
+            int[] rows = t < topics.length ? index.getPosting(topics[t]) : null;
+            int n = rows != null ? rows.length : size;
+            for (int i = 0; i < n; i++) {
+                int row = rows != null ? rows[i] : i;
+                if (scored[row]) {
+                    continue;
+                }
+                if (budget.isExhausted(scoredNum)) {
+                    break;
+                }
+                scored[row] = true;
+                scoredNum++;
+                Researcher r = researchers[row];
+                if (r != null && !r.isRemoved()) {
+                    result.add(r, scorer.score(row));
+                }
+            }
+        }
+        result.setCoverage(size == 0 ? 1 : (double) scoredNum / size);
+        return result;
+    }
+
+    /**
+     * Scan a quantized copy of the topic distributions with the cosine kernel
+     * and rerank the best candidates exactly, bypassing
+     * {@link RecommendCache the recommendation cache}. A row left out of the
+     * candidates scores at most its quantized value plus its
+     * {@link QuantizedTopicMatrix#getBound(int) error bound}, so the rows
+     * whose bound reaches the <code>k</code>-th exact score are reranked as
+     * well and the result is exactly the result of a full scan, ties
+     * included.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param k the number of researchers to be recommended
+     * @param quantized the quantized copy of the topic distributions
+     * @param candidates the number of candidates reranked exactly
+     * @return the recommendation result
+     */
+    public RecommendResult getQuantizedResult(Researcher researcher, int k, QuantizedTopicMatrix quantized, int candidates) {
+        return rerank(new Scorer(researcher, Algorithm.COSINE), researcher, k, quantized, candidates);
+    }
+
+    /**
+     * Scan a quantized copy of the topic distributions with the cosine kernel
+     * and rerank the best candidates with a scorer.
+     *
+     * @param scorer the cosine scorer of the query
+     * @param researcher the specified researcher requiring recommendation
+     * @param k the number of researchers to be recommended
+     * @param quantized the quantized copy of the topic distributions
+     * @param candidates the number of candidates reranked exactly
+     * @return the recommendation result
+     */
+    private RecommendResult rerank(Scorer scorer, Researcher researcher, int k, QuantizedTopicMatrix quantized, int candidates) {
+        int n = Math.max(k, candidates);
+        double[] a = QuantizedTopicMatrix.transform(scorer.p);
+        double aSum = 0, aNorm = 0;
+        for (double x : a) {
+            aSum += x;
+            aNorm += x * x;
+        }
+        aNorm = Math.sqrt(aNorm);
+        double[] values = new double[quantized.size()];
+        Researcher[] researchers = getCatalog();
+        // a heap of the candidates whose first one has the lowest quantized value
+        int[] heap = new int[n];
+        int size = 0;
+        for (int row = 0; row < values.length; row++) {
+            Researcher r = researchers[row];
+            if (r == null || r.isRemoved()) {
+                values[row] = Double.NaN;
+                continue;
+            }
+            double value = values[row] = quantized.calCosineSimilarity(a, aSum, aNorm, row);
+            if (size < n) {
+                int i = size++;
+                while (i > 0 && values[heap[(i - 1) / 2]] > value) {
+                    heap[i] = heap[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                heap[i] = row;
+            } else if (value > values[heap[0]]) {
+                int i = 0;
+                while (2 * i + 1 < n) {
+                    int child = 2 * i + 1;
+                    if (child + 1 < n && values[heap[child + 1]] < values[heap[child]]) {
+                        child++;
+                    }
+                    if (values[heap[child]] >= value) {
+                        break;
+                    }
+                    heap[i] = heap[child];
+                    i = child;
+                }
+                heap[i] = row;
+            }
+        }
+        int[] rows = Arrays.copyOf(heap, size);
+        Arrays.sort(rows);
+        RecommendResult result = rank(scorer, researcher, k, rows, size);
+        if (result.size() < k) {
+            return result;
+        }
+        // rows left out may still reach the k-th exact score within their bound
+        double threshold = result.getValues().get(k - 1);
+        boolean[] candidate = new boolean[values.length];
+        for (int row : rows) {
+            candidate[row] = true;
+        }
+        int[] extended = Arrays.copyOf(rows, values.length);
+        int extra = 0;
+        for (int row = 0; row < values.length; row++) {
+            if (!candidate[row] && values[row] + quantized.getBound(row) >= threshold) {
+                extended[size + extra++] = row;
+            }
+        }
+        if (extra == 0) {
+            return result;
+        }
+        rerankExtraRows.addAndGet(extra);
+        Arrays.sort(extended, 0, size + extra);
+        return rank(scorer, researcher, k, extended, size + extra);
+    }
+
+    /**
+     * Get the number of rows outside the candidates of quantized scans
+     * reranked exactly because their error bound reached the result.
+     *
+     * @return the number of extra rows
+     */
+    public long getRerankExtraRows() {
+        return rerankExtraRows.get();
+    }
+
+    /**
+     * Score only the instances of a set of researchers, such as the
+     * researchers of one university from {@link Facets the facets}, and keep
+     * the top <code>k</code> of them, bypassing
+     * {@link RecommendCache the recommendation cache}. The cost depends on
+     * the size of the set, not of the model, and the researchers are scored
+     * in row order so ties rank as in a full scan.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @param ids the ids of the researchers which may be recommended
+     * @return the recommendation result
+     */
+    public RecommendResult getFilteredResult(Researcher researcher, Algorithm algorithm, int k, int[] ids) {
+        Scorer scorer = new Scorer(researcher, algorithm);
+        int[] rows = new int[ids.length];
+        int n = 0;
+        for (int id : ids) {
+            Researcher r = Researcher.getResearcherById(id);
+            int row = r == null ? -1 : getRow(r);
+            if (row >= 0) {
+                rows[n++] = row;
+            }
+        }
+        Arrays.sort(rows, 0, n);
+        return rank(scorer, researcher, k, rows, n);
+    }
+
+    /**
+     * Get the top <code>k</code> researchers similar to a whole group, such
+     * as a team, excluding the members themselves, bypassing
+     * {@link RecommendCache the recommendation cache}. Every row is scored
+     * against all members in a single scan: each row is read once and
+     * compared with every member while it is in cache, so a group query
+     * costs one pass over the matrix rather than one per member. Members
+     * which are not in the model are ignored.
+     *
+     * @param group the members of the group, the first one owning the
+     * result
+     * @param algorithm the algorithm used to measure similarity
+     * @param aggregation the way of combining the similarities to the
+     * members
+     * @param k the number of researchers to be recommended
+     * @return the recommendation result
+     * @throws IllegalArgumentException if no member is in the model
+     */
+    public RecommendResult getGroupResult(List<Researcher> group, Algorithm algorithm, Aggregation aggregation, int k) {
+        ArrayList<Researcher> members = new ArrayList<>();
+        for (Researcher r : group) {
+            if (getRow(r) >= 0 && !members.contains(r)) {
+                members.add(r);
+            }
+        }
+        if (members.isEmpty()) {
+            throw new IllegalArgumentException("No member of the group is in the topic model");
+        }
+        double[] centroid = new double[topicsNum];
+        ArrayList<String> interests = new ArrayList<>();
+        Scorer[] scorers = new Scorer[aggregation == Aggregation.CENTROID ? 0 : members.size()];
+        for (int i = 0; i < members.size(); i++) {
+            Researcher r = members.get(i);
+            double[] dist = getTopicDistribution(r.getName(), r.getId(), false);
+            for (int j = 0; j < topicsNum; j++) {
+                centroid[j] += dist[j] / members.size();
+            }
+            interests.addAll(getQueryInterests(r));
+            if (i < scorers.length) {
+                scorers[i] = new Scorer(r, algorithm);
+            }
+        }
+        Scorer scorer = new GroupScorer(algorithm, centroid, interests, scorers, aggregation);
+        RecommendResult ranked = rank(scorer, members.get(0), k + members.size(), null, scorer.matrix.size());
+        RecommendResult result = new RecommendResult(members.get(0), algorithm, k);
+        for (int i = 0; i < ranked.size(); i++) {
+            if (!members.contains(ranked.getResearchers().get(i))) {
+                result.add(ranked.getResearchers().get(i), ranked.getValues().get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Score the instances of one shard of the model against a specified
+     * researcher and keep the top <code>k</code> of them, bypassing
+     * {@link RecommendCache the recommendation cache}. Shard <code>s</code>
+     * of <code>n</code> holds the rows <code>s, s + n, s + 2n, ...</code> of
+     * the topic distribution matrix, so merging the results of all shards by
+     * value, then by {@link TopicModel#getRow(researcherInfoSys.Researcher)
+     * row}, gives the same ranking as a single scan.
+     *
+     * @param researcher the specified researcher requiring recommendation
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of researchers to be recommended
+     * @param shard the index of the shard
+     * @param shards the number of shards
+     * @return the recommendation result of the shard
+     */
+    public RecommendResult getShardResult(Researcher researcher, Algorithm algorithm, int k, int shard, int shards) {
+        RecommendResult result = new RecommendResult(researcher, algorithm, k);
+        Scorer scorer = new Scorer(researcher, algorithm);
+        Researcher[] researchers = getCatalog();
+        for (int i = shard; i < scorer.matrix.size(); i += shards) {
+            Researcher r = researchers[i];
+            if (r != null && !r.isRemoved()) {
+                result.add(r, scorer.score(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Score the rows of one shard of the model against another row, keeping
+     * the top <code>k</code> of them, without resolving any researcher. This
+     * serves {@link ShardWorker shard workers}, which do not load the data
+     * file: rows of researchers removed since the model was built are scored
+     * as well, and skipped by the caller. Rows with equal values rank by row,
+     * as in a single scan.
+     *
+     * @param row the row of the researcher requiring recommendation
+     * @param interests the interests of the researcher, in lower case without
+     * blanks, scored by the predictive conditional probability
+     * @param algorithm the algorithm used to measure similarity
+     * @param k the number of rows to be kept
+     * @param shard the index of the shard
+     * @param shards the number of shards
+     * @return the (row, value) pairs of the shard, the best first
+     * @throws IllegalArgumentException if the row is not in the model
+     */
+    public ArrayList<double[]> getShardRows(int row, List<String> interests, Algorithm algorithm, int k, int shard, int shards) {
+        if (row < 0 || row >= topicDistribution.size()) {
+            throw new IllegalArgumentException("No such row in the topic model - " + row);
+        }
+        Scorer scorer = new Scorer(algorithm, topicDistribution.getRow(row), interests);
+        Comparator<double[]> order = getRowOrder(algorithm);
+        PriorityQueue<double[]> top = new PriorityQueue<>(k + 1, order.reversed());
+        for (int i = shard; i < scorer.matrix.size() && k > 0; i += shards) {
+            double[] candidate = {i, scorer.score(i)};
+            if (top.size() < k) {
+                top.add(candidate);
+            } else if (order.compare(candidate, top.peek()) < 0) {
+                top.poll();
+                top.add(candidate);
+            }
+        }
+        ArrayList<double[]> candidates = new ArrayList<>(top);
+        candidates.sort(order);
+        return candidates;
+    }
+
+    /**
+     * Get the order of (row, value) pairs in a ranking: the better value
+     * first, then the smaller row.
+     *
+     * @param algorithm the algorithm which produced the values
+     * @return the order of the pairs
+     */
+    static Comparator<double[]> getRowOrder(Algorithm algorithm) {
+        boolean isAscend = algorithm.isAscend();
+        return (a, b) -> a[1] != b[1] ? (isAscend ? Double.compare(a[1], b[1]) : Double.compare(b[1], a[1])) : Double.compare(a[0], b[0]);
+    }
+
+    /**
+     * Count the rows of one shard of the model whose researcher was not found
+     * or has been removed, which scans skip.
+     *
+     * @param shard the index of the shard
+     * @param shards the number of shards
+     * @return the number of rows skipped in the shard
+     */
+    public int getMissingRows(int shard, int shards) {
+        Researcher[] researchers = getCatalog();
+        int missing = 0;
+        for (int i = shard; i < researchers.length; i += shards) {
+            if (researchers[i] == null || researchers[i].isRemoved()) {
+                missing++;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Get the row of a researcher in the topic distribution matrix.
+     *
+     * @param researcher the researcher
+     * @return the row index, or -1 if the researcher is not in the model
+     */
+    public int getRow(Researcher researcher) {
+        return topicDistribution.indexOf(toInstanceName(researcher.getName(), researcher.getId()));
+    }
+
+    /**
+     * Get the researcher of a row in the topic distribution matrix.
+     *
+     * @param row the row index
+     * @return the researcher, or <code>null</code> if it has been removed
+     */
+    public Researcher getResearcher(int row) {
+        Researcher r = getCatalog()[row];
+        return r == null || r.isRemoved() ? null : r;
+    }
+
+    /**
+     * Get the researcher of every row of the topic distribution matrix,
+     * resolving the instance names on first use, so that scans check a row
+     * with an array read instead of parsing its name. The catalog never goes
+     * stale: rows are named after researcher ids, which are never reused, and
+     * a researcher removed by a {@link DeltaUpdate delta update} is the same
+     * object, now {@link Researcher#isRemoved() marked as removed}, which
+     * scans skip. Once resolved, the catalog is returned without taking the
+     * lock of the model, so concurrent scans do not queue behind each other
+     * or behind a structure being built by {@link TopicModel#prepare()
+     * prepare}.
+     *
+     * @return the researchers by row, <code>null</code> for rows whose
+     * researcher was not found
+     */
+    private Researcher[] getCatalog() {
+        Researcher[] researchers = catalog;
+        if (researchers == null) {
+            synchronized (this) {
+                researchers = catalog;
+                if (researchers == null) {
+                    researchers = new Researcher[topicDistribution.size()];
+                    for (int row = 0; row < researchers.length; row++) {
+                        researchers[row] = getResearcherByInstance(topicDistribution.getName(row));
+                    }
+                    catalog = researchers;
+                }
+            }
+        }
+        return researchers;
+    }
+
+    /**
+     * Get the matrix of the topic distributions.
+     *
+     * @return the topic distribution matrix
+     */
+    TopicMatrix getTopicMatrix() {
+        return topicDistribution;
+    }
+
+    /**
+     * Get the number of instances of the model.
+     *
+     * @return the number of rows of the topic distribution matrix
+     */
+    public int size() {
+        return topicDistribution.size();
+    }
+
+    /**
+     * Get the engine of the model, reading it from its file on first use if
+     * the model was opened from a file.
+     *
+     * @return the engine
+     * @throws IllegalStateException if the engine cannot be read
+     */
+    private synchronized TopicEngine getEngine() {
+        if (model == null) {
+            try {
+                model = TopicEngine.read(new File(engineFile));
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed reading topic engine " + engineFile + " - " + e.getMessage(), e);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Get the divergence engine of the topic distributions, computing its
+     * tables on first use, or reading them in place from the file of an
+     * off-heap matrix.
+     *
+     * @return the divergence engine
+     */
+    private synchronized DivergenceEngine getDivergenceEngine() {
+        if (divergence == null) {
+            divergence = new DivergenceEngine(topicDistribution);
+        }
+        return divergence;
+    }
+
+    /**
+     * Get the topic index of the topic distributions, building it on first
+     * use with the number of main topics in the <code>indexedTopics</code>
+     * setting.
+     *
+     * @return the topic index
+     */
+    synchronized TopicIndex getTopicIndex() {
+        if (topicIndex == null) {
+            topicIndex = new TopicIndex(topicDistribution, Config.getInt(Config.INDEXED_TOPICS, TopicIndex.DEFAULT_INDEXED));
+        }
+        return topicIndex;
+    }
+
+    /**
+     * Get the sparse approximation of the topic distributions, building it
+     * on first use with the number of main topics in the
+     * <code>sparseTopics</code> setting.
+     *
+     * @return the sparse approximation, or <code>null</code> if the setting
+     * is 0
+     */
+    synchronized SparseTopicMatrix getSparseMatrix() {
+        if (sparseDistribution == null && sparseTopics > 0) {
+            sparseDistribution = new SparseTopicMatrix(topicDistribution, sparseTopics);
+        }
+        return sparseDistribution;
+    }
+
+    /**
+     * Get the quantized copy of the topic distributions, building it on first
+     * use with the encoding in the <code>quantization</code> setting.
+     *
+     * @return the quantized copy, <code>null</code> if the setting is
+     * <code>none</code>
+     */
+    synchronized QuantizedTopicMatrix getQuantizedMatrix() {
+        if (quantizedDistribution == null && quantization != null) {
+            quantizedDistribution = new QuantizedTopicMatrix(topicDistribution, quantization);
+        }
+        return quantizedDistribution;
+    }
+
+    /**
+     * Calculate the predictive conditional probability of a list of interests
+     * given the topic distribution of an instance.
+     *
+     * @param interestList the interests, in lower case without blanks
+     * @param row the row of the instance in the topic distribution matrix
+     * @return the predictive conditional probability
+     */
+    private double calProbability(ArrayList<String> interestList, int row) {
+        double p = 1;
+        for (String interest : interestList) {
+            double s = 1E-8;
+            for (int j = 0; j < topicsNum; j++) {
+                Double weight = interestDistribution.get(j).get(interest);
+                if (weight != null) {
+                    s += weight * topicDistribution.get(row, j);
+                }
+            }
+            p = p * s;
+        }
+        return p;
+    }
+
+    /**
+     * Print out the recommend list to the command line window.
+     *
+     * @param result the recommendation result to be printed
+     */
+    private void output(RecommendResult result) {
+        Researcher owner = result.getOwner();
+        System.out.println("\n" + S3 + "\t\t\t\t----Measure similarity using " + result.getAlgorithm().getTitle() + "----");
+        System.out.println(S1 + "Your Information");
+        System.out.format(S3 + "%s (%s - %s)\n" + S3 + "Interests\t\t%s\n", owner.getName(), owner.getUniversity(), owner.getDepartment(), owner.getInterestsStr());
+        getTopicDistribution(owner.getName(), owner.getId(), true);
+        System.out.println(S2 + "Recommendation List");
+        for (int i = 0; i < result.size(); i++) {
+            Researcher r = result.getResearchers().get(i);
+            System.out.format(" [%d]    %s (%s - %s)\n", i + 1, r.getName(), r.getUniversity(), r.getDepartment());
+            System.out.println(S3 + result.getAlgorithm().getIndicator() + "\t\t" + result.getValues().get(i));
+            System.out.println(S3 + "Interests\t\t" + r.getInterestsStr());
+            getTopicDistribution(r.getName(), r.getId(), true);
+            System.out.println();
+        }
+    }
+
+    /**
+     * Write the information containing in the topic model into an Arff file, in
      * the format required by the weka API for further processing.
      *
      * @param fileName the path of the Arff file needed to be written data into
@@ -304,7 +1712,7 @@ public class TopicModel {
      * conveniently.
      */
     public Researcher[] createArff(String fileName) {
-        Researcher[] researcherList = new Researcher[topicDistribution.entrySet().size()];
+        Researcher[] researcherList = new Researcher[topicDistribution.size()];
         try {
             File file = new File(fileName);
             file.createNewFile();
@@ -314,12 +1722,10 @@ public class TopicModel {
                 fw.write("@ATTRIBUTE " + i + " REAL\n");
             }
             fw.write("@DATA\n");
-            int i = 0;
-            for (HashMap.Entry<String, double[]> topicDistEntry : topicDistribution.entrySet()) {
-                researcherList[i] = getResearcherByInstance(topicDistEntry.getKey());
-                i++;
-                for (double k : topicDistEntry.getValue()) {
-                    fw.write(k + " ");
+            for (int i = 0; i < topicDistribution.size(); i++) {
+                researcherList[i] = getResearcherByInstance(topicDistribution.getName(i));
+                for (int j = 0; j < topicsNum; j++) {
+                    fw.write(topicDistribution.get(i, j) + " ");
                 }
                 fw.write("\n");
             }
@@ -332,95 +1738,270 @@ public class TopicModel {
     }
 
     /**
-     * An inner class which mainly stores the recommended researchers list and
-     * indicator value of each researcher.
+     * A task scoring a range of rows, split in halves until the ranges are
+     * small enough.
+     */
+    private class ScanTask extends RecursiveTask<RecommendResult> {
+
+        /**
+         * The version of the serialized form, required as fork-join tasks
+         * are serializable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The scorer of the query.
+         */
+        private final Scorer scorer;
+
+        /**
+         * The specified researcher requiring recommendation.
+         */
+        private final Researcher researcher;
+
+        /**
+         * The number of researchers to be recommended, and the range of
+         * indices scored.
+         */
+        private final int k, from, to;
+
+        /**
+         * The sorted rows, or <code>null</code> for the row indices
+         * themselves.
+         */
+        private final int[] rows;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param scorer the scorer of the query
+         * @param researcher the specified researcher requiring recommendation
+         * @param k the number of researchers to be recommended
+         * @param rows the sorted rows, or <code>null</code> for the row
+         * indices themselves
+         * @param from the first index of the range
+         * @param to the index after the range
+         */
+        ScanTask(Scorer scorer, Researcher researcher, int k, int[] rows, int from, int to) {
+            this.scorer = scorer;
+            this.researcher = researcher;
+            this.k = k;
+            this.rows = rows;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RecommendResult compute() {
+            if (to - from <= SPLIT_ROWS) {
+                return rankRange(scorer, researcher, k, rows, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ScanTask left = new ScanTask(scorer, researcher, k, rows, from, mid);
+            left.fork();
+            RecommendResult right = new ScanTask(scorer, researcher, k, rows, mid, to).compute();
+            RecommendResult result = new RecommendResult(researcher, scorer.algorithm, k);
+            result.addAll(left.join());
+            result.addAll(right);
+            return result;
+        }
+    }
+
+    /**
+     * A listener notified of the progress of sampling.
      */
-    private class RecommendResult {
+    public interface Progress {
 
         /**
-         * It is <code> true </code> if the recommend list is arranged in the way
-         * that indicator values are ascending.
+         * Report the progress of sampling.
+         *
+         * @param iteration the number of iterations done
+         * @param iterations the total number of iterations
+         * @param logLikelihood the log-likelihood of the model so far
          */
-        private boolean isAscend;
+        void report(int iteration, int iterations, double logLikelihood);
+    }
+
+    /**
+     * Get the interests of a researcher used by the predictive conditional
+     * probability, leaving out those held out of the training data.
+     *
+     * @param researcher the researcher
+     * @return the interests, in lower case without blanks
+     */
+    List<String> getQueryInterests(Researcher researcher) {
+        ArrayList<String> interests = new ArrayList<>();
+        Set<String> held = heldOut.getOrDefault(researcher.getId(), Collections.emptySet());
+        for (String interest : researcher.getInterests()) {
+            if (!held.contains(interest.toLowerCase())) {
+                interests.add(interest.toLowerCase().replaceAll(" ", ""));
+            }
+        }
+        return interests;
+    }
+
+    /**
+     * Get the topic distribution of a researcher a query is scored against.
+     *
+     * @param researcher the researcher
+     * @return the topic distribution
+     * @throws IllegalArgumentException if the researcher is not in the model,
+     * for example because it was added after the model was built
+     */
+    private double[] getQueryDistribution(Researcher researcher) {
+        double[] p = getTopicDistribution(researcher.getName(), researcher.getId(), false);
+        if (p == null) {
+            throw new IllegalArgumentException("Not in the topic model - " + researcher.getName() + " (" + researcher.getId() + ")");
+        }
+        return p;
+    }
+
+    /**
+     * An inner class which scores rows of the topic distribution matrix
+     * against one researcher, holding what can be computed once per query.
+     */
+    class Scorer {
 
         /**
-         * The specified researcher needing for recommendation.
+         * The algorithm used to measure similarity.
          */
-        private Researcher owner;
+        final Algorithm algorithm;
 
         /**
-         * The number of researchers to be recommended.
+         * The matrix scored, fixed for the whole query.
          */
-        private static final int LEN = 5;
+        final TopicMatrix matrix = topicDistribution;
 
         /**
-         * List of researchers to be recommended.
+         * The topic distribution of the researcher.
          */
-        private ArrayList<Researcher> recommendList = new ArrayList<>();
+        final double[] p;
 
         /**
-         * The indicator value of each researcher.
+         * The entropy of the topic distribution of the researcher.
          */
-        private ArrayList<Double> valueList = new ArrayList<>();
+        private final double pEntropy;
 
         /**
-         * Constructor with parameter, constructing a new
-         * <code>RecommendResult</code> instance with the specified researcher
-         * and whether it is ascending.
+         * The divergence engine, <code>null</code> unless the algorithm is a
+         * divergence.
+         */
+        private final DivergenceEngine engine;
+
+        /**
+         * The sparse approximation scored by the cosine and KL kernels,
+         * <code>null</code> to score the dense matrix.
+         */
+        private final SparseTopicMatrix sparse;
+
+        /**
+         * The norm of the topic distribution of the researcher for the sparse
+         * cosine kernel.
+         */
+        private final double pNorm;
+
+        /**
+         * The interests of the researcher, in lower case without blanks.
+         */
+        private final ArrayList<String> interestList = new ArrayList<>();
+
+        /**
+         * Constructor with parameter.
          *
-         * @param r the specified researcher
-         * @param isAscend is <code>true</code> if the recommed list is arranged
-         * in the way that indicator values are ascending
+         * @param researcher the specified researcher requiring recommendation
+         * @param algorithm the algorithm used to measure similarity
+         * @throws IllegalArgumentException if the researcher is not in the
+         * model
          */
-        public RecommendResult(Researcher r, boolean isAscend) {
-            owner = r;
-            this.isAscend = isAscend;
+        Scorer(Researcher researcher, Algorithm algorithm) {
+            this(algorithm, getQueryDistribution(researcher), getQueryInterests(researcher));
         }
 
         /**
-         * Insert a researcher to the appropriate position in the list.
+         * Constructor with parameter, scoring against a topic distribution and
+         * a list of interests which need not belong to one researcher.
          *
-         * @param researcher the researcher to be inserted
-         * @param value the indicator value of the researcher
+         * @param algorithm the algorithm used to measure similarity
+         * @param p the topic distribution of the query
+         * @param interests the interests of the query, in lower case without
+         * blanks
          */
-        public void add(Researcher researcher, double value) {
-            if (valueList.size() < LEN || (!isAscend && value > valueList.get(LEN - 1)) || (isAscend && value < valueList.get(LEN - 1))) {
-                int indexInsert = LEN - 1;
-                if (valueList.size() == LEN) {
-                    while (indexInsert >= 0 && ((!isAscend && value > valueList.get(indexInsert)) || (isAscend && value < valueList.get(indexInsert)))) {
-                        indexInsert--;
-                    }
-                    indexInsert++;
-                    valueList.remove(LEN - 1);
-                    recommendList.remove(LEN - 1);
-                } else {
-                    indexInsert = valueList.size();
-                }
-                valueList.add(indexInsert, value);
-                recommendList.add(indexInsert, researcher);
+        Scorer(Algorithm algorithm, double[] p, List<String> interests) {
+            if (algorithm == Algorithm.KMEANS) {
+                throw new IllegalArgumentException("Algorithm not supported by topic model - " + algorithm);
             }
+            this.algorithm = algorithm;
+            this.p = p;
+            sparse = algorithm == Algorithm.KL || algorithm == Algorithm.COSINE ? getSparseMatrix() : null;
+            engine = sparse == null && (algorithm == Algorithm.KL || algorithm == Algorithm.JS) ? getDivergenceEngine() : null;
+            pEntropy = engine != null || sparse != null ? DivergenceEngine.calEntropy(p) : 0;
+            pNorm = sparse != null ? SparseTopicMatrix.calNorm(p) : 0;
+            interestList.addAll(interests);
         }
 
         /**
-         * Print out the recommend list to the command line window.
+         * Score a row.
          *
-         * @param algorithmStr the algorithm title to be displayed
-         * @param indicatorStr the indicator title to be displayed
+         * @param row the row index
+         * @return the indicator value of the row
          */
-        public void output(String algorithmStr, String indicatorStr) {
-            System.out.println("\n" + S3 + "\t\t\t\t----Measure similarity using " + algorithmStr + "----");
-            System.out.println(S1 + "Your Information");
-            System.out.format(S3 + "%s (%s - %s)\n" + S3 + "Interests\t\t%s\n", owner.getName(), owner.getUniversity(), owner.getDepartment(), owner.getInterestsStr());
-            getTopicDistribution(owner.getName(), owner.getId(), true);
-            System.out.println(S2 + "Recommendation List");
-            for (int i = 0; i < LEN; i++) {
-                Researcher r = recommendList.get(i);
-                System.out.format(" [%d]    %s (%s - %s)\n", i + 1, r.getName(), r.getUniversity(), r.getDepartment());
-                System.out.println(S3 + indicatorStr + "\t\t" + valueList.get(i));
-                System.out.println(S3 + "Interests\t\t" + r.getInterestsStr());
-                getTopicDistribution(r.getName(), r.getId(), true);
-                System.out.println();
+        double score(int row) {
+            switch (algorithm) {
+                case PROBABILITY:
+                    return calProbability(interestList, row);
+                case KL:
+                    return sparse != null ? sparse.calKL(p, pEntropy, row) : engine.calKL(p, pEntropy, row);
+                case JS:
+                    return engine.calJS(p, pEntropy, row);
+                default:
+                    return sparse != null ? sparse.calCosineSimilarity(p, pNorm, row) : matrix.calCosineSimilarity(p, row);
+            }
+        }
+    }
+
+    /**
+     * A scorer of a group query, combining the scores of the members of a
+     * group or scoring against their centroid.
+     */
+    private class GroupScorer extends Scorer {
+
+        /**
+         * The scorers of the members, empty for the centroid.
+         */
+        private final Scorer[] members;
+
+        /**
+         * Whether the larger score of the members is kept.
+         */
+        private final boolean larger;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param algorithm the algorithm used to measure similarity
+         * @param centroid the mean topic distribution of the members
+         * @param interests the interests of all members, in lower case
+         * without blanks
+         * @param members the scorers of the members, empty for the centroid
+         * @param aggregation the way of combining the scores of the members
+         */
+        GroupScorer(Algorithm algorithm, double[] centroid, List<String> interests, Scorer[] members, Aggregation aggregation) {
+            super(algorithm, centroid, interests);
+            this.members = members;
+            larger = (aggregation == Aggregation.MAX) != algorithm.isAscend();
+        }
+
+        @Override
+        double score(int row) {
+            if (members.length == 0) {
+                return super.score(row);
+            }
+            double value = members[0].score(row);
+            for (int i = 1; i < members.length; i++) {
+                double s = members[i].score(row);
+                value = larger ? Math.max(value, s) : Math.min(value, s);
             }
+            return value;
         }
     }
 }
@@ -0,0 +1,82 @@
+package researcherInfoSys;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Builds the structures derived from the repository in parallel right after
+ * loading, so that the first queries do not pay for them. Every structure is
+ * otherwise built lazily on first use and kept until the repository changes;
+ * warming up only moves the work earlier. The <code>warmUp</code> setting of
+ * {@link Config the settings file} selects what is built:
+ * <ul>
+ * <li><code>none</code>, the default - nothing</li>
+ * <li><code>basic</code> - the interest postings, the
+ * {@link Facets facets}, the {@link InterestGraph interest graph} and the
+ * mallet data file, enough for tasks 1-5</li>
+ * <li><code>all</code> - as <code>basic</code>, and the topic model is built
+ * in the background by the caller</li>
+ * </ul>
+ *
+ * @author james
+ */
+public class WarmUp {
+
+    /**
+     * The state of the warm-up.
+     */
+    private static volatile String status = "No warm-up started";
+
+    /**
+     * Get the warm-up level of the settings.
+     *
+     * @return <code>none</code>, <code>basic</code> or <code>all</code>
+     */
+    public static String getLevel() {
+        String level = Config.getString(Config.WARM_UP, "none").toLowerCase();
+        return level.equals("basic") || level.equals("all") ? level : "none";
+    }
+
+    /**
+     * Start building the structures needed by tasks 1-5 on daemon threads.
+     * The repository must not change until the warm-up has finished.
+     *
+     * @return the warm-up, complete when every structure is built
+     */
+    public static CompletableFuture<Void> start() {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(4, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "warm-up");
+            t.setDaemon(true);
+            return t;
+        });
+        long start = System.nanoTime();
+        status = "Warming up";
+        CompletableFuture<Void> warmUp = CompletableFuture.allOf(
+                CompletableFuture.runAsync(() -> {
+                    Researcher.getAllIds();
+                    for (String interest : Researcher.getInterestNames()) {
+                        Researcher.getPosting(interest);
+                    }
+                }, pool),
+                CompletableFuture.runAsync(Facets::get, pool),
+                CompletableFuture.runAsync(InterestGraph::get, pool),
+                CompletableFuture.runAsync(Researcher::prepareMalletData, pool));
+        return warmUp.whenComplete((result, e) -> {
+            pool.shutdown();
+            status = e != null ? "Warm-up failed - " + e.getCause()
+                    : String.format("Warm-up finished in %.3fs", (System.nanoTime() - start) / 1E9);
+        });
+    }
+
+    /**
+     * Get the state of the warm-up, which is not printed by the threads
+     * building the structures so that it never interrupts the command line
+     * menu.
+     *
+     * @return the state, as a String
+     */
+    public static String getStatus() {
+        return status;
+    }
+}
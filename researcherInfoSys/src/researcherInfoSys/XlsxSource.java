@@ -0,0 +1,101 @@
+package researcherInfoSys;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * A {@link RecordSource record source} reading the first sheet of an Excel
+ * file. The first row is the header. Unlike the text sources, the whole
+ * workbook is loaded into memory when the source is opened.
+ *
+ * @author james
+ */
+public class XlsxSource implements RecordSource {
+
+    /**
+     * Missing policy parameter used when reading Excel file.
+     */
+    private static final Row.MissingCellPolicy MP = Row.MissingCellPolicy.RETURN_BLANK_AS_NULL;
+
+    /**
+     * Formatter turning cells into Strings.
+     */
+    private final DataFormatter formatter = new DataFormatter();
+
+    /**
+     * The sheet being read.
+     */
+    private final Sheet sheet;
+
+    /**
+     * The column number of each attribute.
+     */
+    private final int[] indices;
+
+    /**
+     * The row number of the last record.
+     */
+    private int rowNum = 0;
+
+    /**
+     * Constructor with parameter, loading an Excel file.
+     *
+     * @param filePath the path of the Excel file
+     * @param mapping the column mapping, by column number or header name
+     * @throws IOException if the file cannot be read or is not a valid Excel
+     * file
+     */
+    public XlsxSource(String filePath, ColumnMapping mapping) throws IOException {
+        try {
+            OPCPackage pkg = OPCPackage.open(new File(filePath));
+            sheet = new XSSFWorkbook(pkg).getSheetAt(0);
+            pkg.close();
+        } catch (InvalidFormatException e) {
+            throw new IOException("Invalid file format - " + e.getMessage(), e);
+        }
+        String[] header = null;
+        if (mapping.needsHeader() && sheet.getRow(0) != null) {
+            Row row = sheet.getRow(0);
+            header = new String[Math.max(0, row.getLastCellNum())];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = formatter.formatCellValue(row.getCell(i, MP));
+            }
+        }
+        try {
+            indices = mapping.resolve(header);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String[] next() {
+        Row row = null;
+        while (row == null && rowNum < sheet.getLastRowNum()) {
+            row = sheet.getRow(++rowNum);
+        }
+        if (row == null) {
+            return null;
+        }
+        String[] fields = new String[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            fields[i] = formatter.formatCellValue(row.getCell(indices[i], MP));
+        }
+        return fields;
+    }
+
+    @Override
+    public int getRowNum() {
+        return rowNum;
+    }
+
+    @Override
+    public void close() {
+    }
+}
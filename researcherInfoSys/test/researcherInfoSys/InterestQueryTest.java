@@ -0,0 +1,159 @@
+package researcherInfoSys;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of {@link InterestQuery}, comparing the ids matched by random
+ * queries of <code>AND</code>, <code>OR</code> and <code>NOT</code> with
+ * those of a brute-force evaluator checking the interests of every
+ * researcher.
+ *
+ * @author james
+ */
+public class InterestQueryTest {
+
+    /**
+     * The interests of the queries, of several words.
+     */
+    private static final String[] VOCABULARY = {"query alpha", "query beta", "query gamma", "query delta", "query epsilon",
+        "query zeta"};
+
+    /**
+     * The interests of every researcher in the repository, in lower case.
+     */
+    private static final HashMap<Integer, Set<String>> INTERESTS = new HashMap<>();
+
+    @BeforeClass
+    public static void setUpClass() {
+        Random random = new Random(4);
+        for (int i = 0; i < 400; i++) {
+            Researcher r = Researcher.add(new Researcher("Query Researcher " + i, "Synthetic University", "Department " + i % 3,
+                    Researcher.nextId()));
+            StringBuilder interests = new StringBuilder("query other" + i);
+            for (String interest : VOCABULARY) {
+                if (random.nextInt(3) == 0) {
+                    interests.append(", ").append(random.nextBoolean() ? interest : interest.toUpperCase());
+                }
+            }
+            r.addToInterests(interests.toString());
+        }
+        for (int id : Researcher.getAllIds()) {
+            Set<String> interests = new HashSet<>();
+            for (String interest : Researcher.getResearcherById(id).getInterests()) {
+                interests.add(interest.toLowerCase());
+            }
+            INTERESTS.put(id, interests);
+        }
+    }
+
+    /**
+     * Test of random queries, fully parenthesized so that the brute-force
+     * evaluator needs no parser.
+     */
+    @Test
+    public void testRandomQueries() {
+        Random random = new Random(5);
+        for (int i = 0; i < 500; i++) {
+            Query query = randomQuery(random, 3);
+            assertArrayEquals(query.text, bruteForce(query.test), new InterestQuery(query.text).evaluate());
+        }
+    }
+
+    /**
+     * Test of the precedence of the operators: <code>AND</code> binds tighter
+     * than <code>OR</code>, <code>A NOT B</code> means
+     * <code>A AND NOT B</code> and <code>AND</code> may be left out before
+     * <code>NOT</code>.
+     */
+    @Test
+    public void testPrecedence() {
+        Predicate<Set<String>> alpha = s -> s.contains("query alpha"), beta = s -> s.contains("query beta"),
+                gamma = s -> s.contains("query gamma");
+        assertArrayEquals(bruteForce(alpha.or(beta.and(gamma))),
+                new InterestQuery("query alpha OR query beta AND query gamma").evaluate());
+        assertArrayEquals(bruteForce(alpha.and(beta.negate())), new InterestQuery("query alpha NOT query beta").evaluate());
+        assertArrayEquals(bruteForce(alpha.and(beta.negate()).or(gamma)),
+                new InterestQuery("query alpha AND NOT query beta OR query gamma").evaluate());
+        assertArrayEquals(bruteForce(beta.negate()), new InterestQuery("NOT query beta").evaluate());
+    }
+
+    /**
+     * Generate a random query with the predicate it stands for.
+     *
+     * @param random the random numbers
+     * @param depth the maximum depth of the query
+     * @return the query
+     */
+    private static Query randomQuery(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            String interest = VOCABULARY[random.nextInt(VOCABULARY.length)];
+            return new Query(random.nextBoolean() ? interest : "\"" + interest.toUpperCase() + "\"", s -> s.contains(interest));
+        }
+        Query a = randomQuery(random, depth - 1);
+        switch (random.nextInt(4)) {
+            case 0:
+                return new Query("NOT (" + a.text + ")", a.test.negate());
+            case 1:
+                Query b = randomQuery(random, depth - 1);
+                return new Query("(" + a.text + ") AND (" + b.text + ")", a.test.and(b.test));
+            case 2:
+                b = randomQuery(random, depth - 1);
+                return new Query("(" + a.text + ") OR (" + b.text + ")", a.test.or(b.test));
+            default:
+                b = randomQuery(random, depth - 1);
+                return new Query("(" + a.text + ") NOT (" + b.text + ")", a.test.and(b.test.negate()));
+        }
+    }
+
+    /**
+     * Evaluate a predicate on the interests of every researcher.
+     *
+     * @param test the predicate
+     * @return the sorted ids of the researchers matching it
+     */
+    private static int[] bruteForce(Predicate<Set<String>> test) {
+        ArrayList<Integer> ids = new ArrayList<>();
+        for (int id : Researcher.getAllIds()) {
+            if (test.test(INTERESTS.get(id))) {
+                ids.add(id);
+            }
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * A query with the predicate it stands for.
+     */
+    private static class Query {
+
+        /**
+         * The text of the query.
+         */
+        private final String text;
+
+        /**
+         * The predicate on the interests of a researcher, in lower case.
+         */
+        private final Predicate<Set<String>> test;
+
+        /**
+         * Constructor with parameter.
+         *
+         * @param text the text of the query
+         * @param test the predicate on the interests of a researcher
+         */
+        Query(String text, Predicate<Set<String>> test) {
+            this.text = text;
+            this.test = test;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package researcherInfoSys;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of {@link ShardCoordinator}, merging the answers of
+ * {@link ShardWorker shard workers} served on local ports by threads of this
+ * process. The merged ranking must be the ranking of a full scan, also once
+ * top researchers have been removed.
+ *
+ * @author james
+ */
+public class ShardCoordinatorTest {
+
+    /**
+     * The number of shards.
+     */
+    private static final int SHARDS = 3;
+
+    /**
+     * The model scanned by the workers and the coordinator.
+     */
+    private static SyntheticModel model;
+
+    /**
+     * The coordinator of the workers.
+     */
+    private static ShardCoordinator coordinator;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        model = new SyntheticModel("Sharded", 2000, 40, 8, 3);
+        int[] ports = new int[SHARDS];
+        for (int shard = 0; shard < SHARDS; shard++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports[shard] = socket.getLocalPort();
+            }
+            ShardWorker worker = new ShardWorker(model.tm, shard, SHARDS);
+            int port = ports[shard];
+            Thread t = new Thread(() -> {
+                try {
+                    worker.serve(port);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }, "shard-worker-" + shard);
+            t.setDaemon(true);
+            t.start();
+        }
+        coordinator = new ShardCoordinator(model.tm, ports);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        coordinator.close();
+    }
+
+    /**
+     * Test of merging the shards, which must give the result of a full scan
+     * for every algorithm without falling back to local scans.
+     */
+    @Test
+    public void testMerge() {
+        assertMerged(10);
+        assertMerged(150);
+        assertEquals(0, coordinator.getFallbacks());
+    }
+
+    /**
+     * Test of merging the shards after the best researchers of a query are
+     * removed, which workers still score: the result must skip them and still
+     * hold <code>k</code> researchers.
+     */
+    @Test
+    public void testMergeAfterRemoval() {
+        Researcher owner = model.researchers[7];
+        RecommendResult before = model.tm.getShardResult(owner, Algorithm.COSINE, 30, 0, 1);
+        for (int i = 1; i < before.size(); i += 2) {
+            Researcher.remove(before.getResearchers().get(i));
+        }
+        assertMerged(10);
+        RecommendResult merged = coordinator.getRecommendResult(owner, Algorithm.COSINE, 10);
+        assertEquals(10, merged.size());
+        for (Researcher r : merged.getResearchers()) {
+            assertEquals(false, r.isRemoved());
+        }
+        assertEquals(0, coordinator.getFallbacks());
+    }
+
+    /**
+     * Check that the merged results of some queries are those of a full scan.
+     *
+     * @param k the number of researchers to be recommended
+     */
+    private static void assertMerged(int k) {
+        for (Algorithm algorithm : new Algorithm[]{Algorithm.PROBABILITY, Algorithm.KL, Algorithm.JS, Algorithm.COSINE}) {
+            for (int i = 0; i < model.researchers.length; i += 173) {
+                Researcher owner = model.researchers[i];
+                if (owner.isRemoved()) {
+                    continue;
+                }
+                RecommendResult full = model.tm.getShardResult(owner, algorithm, k, 0, 1);
+                RecommendResult merged = coordinator.getRecommendResult(owner, algorithm, k);
+                String message = algorithm + " for " + owner.getName() + ", k = " + k;
+                assertEquals(message, full.getResearchers(), merged.getResearchers());
+                assertEquals(message, full.getValues(), merged.getValues());
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package researcherInfoSys;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.IDSorter;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.Test;
+
+/**
+ * Tests of {@link SparseLdaEngine}: whatever the number of threads, the
+ * counts kept after sampling must agree with the topics of the tokens.
+ *
+ * @author james
+ */
+public class SparseLdaEngineTest {
+
+    /**
+     * The number of topics and of interests.
+     */
+    private static final int TOPICS = 12, TYPES = 200;
+
+    /**
+     * Test of the counts after sampling on one thread.
+     */
+    @Test
+    public void testCountsOneThread() {
+        assertCounts(1);
+    }
+
+    /**
+     * Test of the counts after sampling on several threads, whose copies of
+     * the counts are merged after every iteration.
+     */
+    @Test
+    public void testCountsThreads() {
+        assertCounts(4);
+    }
+
+    /**
+     * Sample random instances and check that the number of tokens of every
+     * interest, of every topic and of every instance add up.
+     *
+     * @param threads the number of sampling threads
+     */
+    private static void assertCounts(int threads) {
+        Random random = new Random(threads);
+        Alphabet alphabet = new Alphabet();
+        for (int i = 0; i < TYPES; i++) {
+            alphabet.lookupIndex("interest" + i);
+        }
+        InstanceList instances = new InstanceList(alphabet, null);
+        int[] typeCounts = new int[TYPES];
+        int tokens = 0;
+        for (int d = 0; d < 3000; d++) {
+            int[] features = new int[1 + random.nextInt(8)];
+            for (int i = 0; i < features.length; i++) {
+                features[i] = random.nextInt(TYPES);
+                typeCounts[features[i]]++;
+            }
+            tokens += features.length;
+            instances.add(new Instance(new FeatureSequence(alphabet, features), null, "instance" + d, null));
+        }
+        SparseLdaEngine engine = new SparseLdaEngine(instances, TOPICS, threads);
+        engine.estimate(10);
+        engine.estimate(5);
+        assertEquals(tokens, engine.getTotalTokens());
+
+        int[] byType = new int[TYPES], byTopic = new int[TOPICS];
+        ArrayList<TreeSet<IDSorter>> sortedWords = engine.getSortedWords();
+        for (int t = 0; t < TOPICS; t++) {
+            for (IDSorter pair : sortedWords.get(t)) {
+                int count = (int) pair.getWeight();
+                assertTrue(count > 0);
+                byType[pair.getID()] += count;
+                byTopic[t] += count;
+            }
+        }
+        for (int type = 0; type < TYPES; type++) {
+            assertEquals("interest" + type, typeCounts[type], byType[type]);
+        }
+
+        int[] topicsOfInstances = new int[TOPICS];
+        for (int d = 0; d < instances.size(); d++) {
+            int length = ((FeatureSequence) instances.get(d).getData()).getLength(), sum = 0;
+            double[] dist = engine.getTopicProbabilities(d);
+            for (int t = 0; t < TOPICS; t++) {
+                long count = Math.round(dist[t] * (length + TopicEngine.ALPHA_SUM) - TopicEngine.ALPHA_SUM / TOPICS);
+                assertTrue(count >= 0);
+                sum += count;
+                topicsOfInstances[t] += count;
+            }
+            assertEquals("instance" + d, length, sum);
+        }
+        for (int t = 0; t < TOPICS; t++) {
+            assertEquals("topic" + t, byTopic[t], topicsOfInstances[t]);
+        }
+        assertTrue(Double.isFinite(engine.modelLogLikelihood()));
+    }
+}
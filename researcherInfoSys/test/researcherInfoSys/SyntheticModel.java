@@ -0,0 +1,91 @@
+package researcherInfoSys;
+
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * A topic model over researchers made up for tests. The topic distributions
+ * are drawn from a few distinct rows, so that many researchers tie, and every
+ * researcher has a few interests out of a small vocabulary, so that the
+ * predictive conditional probability ties as well. The researchers are added
+ * to the repository under names starting with a prefix of the test.
+ *
+ * @author james
+ */
+class SyntheticModel {
+
+    /**
+     * The topic model.
+     */
+    final TopicModel tm;
+
+    /**
+     * The researcher of every row of the model.
+     */
+    final Researcher[] researchers;
+
+    /**
+     * Constructor with parameter, adding the researchers to the repository
+     * and building a model over them.
+     *
+     * @param prefix the prefix of the names and interests, without blanks
+     * @param size the number of researchers
+     * @param distinct the number of distinct topic distributions
+     * @param topicsNum the number of topics
+     * @param seed the seed of the random numbers
+     */
+    SyntheticModel(String prefix, int size, int distinct, int topicsNum, long seed) {
+        Random random = new Random(seed);
+        double[][] patterns = new double[distinct][topicsNum];
+        for (double[] pattern : patterns) {
+            double sum = 0;
+            for (int t = 0; t < topicsNum; t++) {
+                pattern[t] = random.nextInt(4) == 0 ? 0 : random.nextDouble();
+                sum += pattern[t];
+            }
+            for (int t = 0; t < topicsNum; t++) {
+                pattern[t] = sum == 0 ? 1.0 / topicsNum : pattern[t] / sum;
+            }
+        }
+        String[] vocabulary = new String[8];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = prefix.toLowerCase() + "interest" + i;
+        }
+        Alphabet alphabet = new Alphabet();
+        for (String interest : vocabulary) {
+            alphabet.lookupIndex(interest);
+        }
+        InstanceList instances = new InstanceList(alphabet, null);
+        researchers = new Researcher[size];
+        String[] names = new String[size];
+        double[][] rows = new double[size][];
+        for (int i = 0; i < size; i++) {
+            Researcher r = Researcher.add(new Researcher(prefix + " Researcher " + i, "Synthetic University", "Department " + i % 5,
+                    Researcher.nextId()));
+            ArrayList<Integer> chosen = new ArrayList<>();
+            for (int j = 0; j < vocabulary.length; j++) {
+                chosen.add(j);
+            }
+            Collections.shuffle(chosen, random);
+            int[] features = new int[1 + random.nextInt(3)];
+            StringBuilder interests = new StringBuilder();
+            for (int j = 0; j < features.length; j++) {
+                features[j] = chosen.get(j);
+                interests.append(j > 0 ? ", " : "").append(vocabulary[features[j]]);
+            }
+            r.addToInterests(interests.toString());
+            researchers[i] = r;
+            names[i] = TopicModel.toInstanceName(r.getName(), r.getId());
+            rows[i] = patterns[random.nextInt(distinct)].clone();
+            instances.add(new Instance(new FeatureSequence(alphabet, features), null, names[i], null));
+        }
+        SparseLdaEngine engine = new SparseLdaEngine(instances, topicsNum, 1);
+        engine.estimate(5);
+        tm = new TopicModel(engine, new TopicMatrix(names, rows, topicsNum), Collections.emptyMap());
+    }
+}
@@ -0,0 +1,111 @@
+package researcherInfoSys;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the scans of {@link TopicModel}: a scan split across threads and
+ * a quantized scan reranked exactly must both give the ranking of a single
+ * full scan, ties included.
+ *
+ * @author james
+ */
+public class TopicModelTest {
+
+    /**
+     * The algorithms scanned by a topic model.
+     */
+    private static final Algorithm[] ALGORITHMS = {Algorithm.PROBABILITY, Algorithm.KL, Algorithm.JS, Algorithm.COSINE};
+
+    /**
+     * A model of a few distinct rows repeated, large enough to be split into
+     * several parts.
+     */
+    private static SyntheticModel tied;
+
+    /**
+     * A model of rows which are mostly distinct.
+     */
+    private static SyntheticModel varied;
+
+    @BeforeClass
+    public static void setUpClass() {
+        tied = new SyntheticModel("Tied", 5000, 12, 8, 1);
+        varied = new SyntheticModel("Varied", 3000, 2500, 12, 2);
+    }
+
+    @After
+    public void tearDown() {
+        TopicModel.setScanThreads(1);
+    }
+
+    /**
+     * Test of a scan split across threads, which must rank exactly like a
+     * scan on the caller's thread, including the order of tied researchers.
+     */
+    @Test
+    public void testParallelRank() {
+        for (Algorithm algorithm : ALGORITHMS) {
+            for (int i = 0; i < tied.researchers.length; i += 499) {
+                Researcher owner = tied.researchers[i];
+                for (int k : new int[]{10, 700}) {
+                    TopicModel.setScanThreads(1);
+                    RecommendResult sequential = tied.tm.getRecommendResult(owner, algorithm, k);
+                    TopicModel.setScanThreads(4);
+                    RecommendResult parallel = tied.tm.getRecommendResult(owner, algorithm, k);
+                    String message = algorithm + " for " + owner.getName() + ", k = " + k;
+                    assertEquals(message, k, sequential.size());
+                    assertEquals(message, sequential.getResearchers(), parallel.getResearchers());
+                    assertEquals(message, sequential.getValues(), parallel.getValues());
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of the ranked cursor, whose first pages must be the ranking of a
+     * scan, with one thread and with several.
+     */
+    @Test
+    public void testRankedCursor() {
+        for (int threads : new int[]{1, 4}) {
+            TopicModel.setScanThreads(threads);
+            for (Algorithm algorithm : ALGORITHMS) {
+                Researcher owner = tied.researchers[42];
+                RecommendResult scan = tied.tm.getRecommendResult(owner, algorithm, 60);
+                RankedCursor cursor = tied.tm.getRankedCursor(owner, algorithm);
+                RecommendResult first = cursor.nextPage(20), second = cursor.nextPage(40);
+                assertEquals(scan.getResearchers().subList(0, 20), first.getResearchers());
+                assertEquals(scan.getResearchers().subList(20, 60), second.getResearchers());
+                assertEquals(60, cursor.getPosition());
+            }
+        }
+    }
+
+    /**
+     * Test of quantized cosine scans, whose reranked result must be the
+     * result of a full scan for both encodings, however few candidates are
+     * reranked.
+     */
+    @Test
+    public void testRerank() {
+        for (SyntheticModel model : new SyntheticModel[]{tied, varied}) {
+            for (QuantizedTopicMatrix.Encoding encoding : QuantizedTopicMatrix.Encoding.values()) {
+                QuantizedTopicMatrix quantized = new QuantizedTopicMatrix(model.tm.getTopicMatrix(), encoding);
+                for (int i = 0; i < model.researchers.length; i += 301) {
+                    Researcher owner = model.researchers[i];
+                    RecommendResult full = model.tm.getShardResult(owner, Algorithm.COSINE, 10, 0, 1);
+                    for (int candidates : new int[]{10, 50, QuantizedTopicMatrix.DEFAULT_CANDIDATES}) {
+                        RecommendResult reranked = model.tm.getQuantizedResult(owner, 10, quantized, candidates);
+                        String message = encoding + " for " + owner.getName() + " with " + candidates + " candidates";
+                        assertEquals(message, full.getResearchers(), reranked.getResearchers());
+                        assertEquals(message, full.getValues(), reranked.getValues());
+                    }
+                }
+            }
+        }
+    }
+}